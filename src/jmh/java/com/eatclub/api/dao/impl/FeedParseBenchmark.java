@@ -0,0 +1,68 @@
+package com.eatclub.api.dao.impl;
+
+import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.testdata.SyntheticFeed;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ingestion of one upstream response before the snapshot is compiled:
+ * the fastjson2 parse of the feed, and the FeedBlock the restaurants of a source are kept in.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class FeedParseBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int deals;
+
+    private byte[] json;
+    private List<Restaurant> restaurants;
+    private ByteBuffer block;
+    private ByteBuffer spare;
+
+    @Setup
+    public void setUp() {
+        restaurants = SyntheticFeed.restaurants(deals, SyntheticFeed.DEFAULT_SEED);
+        json = SyntheticFeed.json(restaurants);
+        block = FeedBlock.encode(restaurants, null);
+        spare = FeedBlock.encode(restaurants, null);
+    }
+
+    @Benchmark
+    public int readRestaurants(Blackhole blackhole) {
+        return DealFeedReader.readRestaurants(new ByteArrayInputStream(json), blackhole::consume);
+    }
+
+    /**
+     * Into the block of the previous response, as a refresh does.
+     */
+    @Benchmark
+    public ByteBuffer encodeFeedBlock() {
+        return FeedBlock.encode(restaurants, spare);
+    }
+
+    @Benchmark
+    public List<Restaurant> decodeFeedBlock() {
+        return FeedBlock.decode(block);
+    }
+}
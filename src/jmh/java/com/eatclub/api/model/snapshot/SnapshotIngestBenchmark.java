@@ -0,0 +1,61 @@
+package com.eatclub.api.model.snapshot;
+
+import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.testdata.SyntheticFeed;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the snapshot a refresh swaps in: a full compile, and the patch of the previous snapshot
+ * when 1% of the deals changed (the usual refresh) or none did.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SnapshotIngestBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int deals;
+
+    private List<Restaurant> restaurants;
+    private List<Restaurant> changed;
+    private DealSnapshot previous;
+
+    @Setup
+    public void setUp() {
+        restaurants = SyntheticFeed.restaurants(deals, SyntheticFeed.DEFAULT_SEED);
+        changed = SyntheticFeed.restaurants(deals, SyntheticFeed.DEFAULT_SEED);
+        SyntheticFeed.mutate(changed, 0.01, SyntheticFeed.DEFAULT_SEED);
+        previous = DealSnapshot.compile(restaurants, 1L);
+    }
+
+    @Benchmark
+    public DealSnapshot compile() {
+        return DealSnapshot.compile(restaurants, 2L);
+    }
+
+    @Benchmark
+    public DealSnapshot updateChanged() {
+        return DealSnapshot.update(previous, changed, 2L);
+    }
+
+    @Benchmark
+    public DealSnapshot updateUnchanged() {
+        return DealSnapshot.update(previous, restaurants, 2L);
+    }
+}
@@ -0,0 +1,125 @@
+package com.eatclub.api.service.impl;
+
+import com.eatclub.api.cache.DealResponseCache;
+import com.eatclub.api.dao.IDealDao;
+import com.eatclub.api.dto.DealResponse;
+import com.eatclub.api.dto.EncodedResponse;
+import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.model.snapshot.DealFilter;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import com.eatclub.api.model.snapshot.RefreshStats;
+import com.eatclub.api.testdata.SyntheticFeed;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The /deals query paths over one snapshot:
+ * 1) queryActiveDealsByTime: parse the time and build the response objects, nothing cached.
+ * 2) queryEncodedActiveDeals: one minute, served from the per-snapshot body cache once warm.
+ * 3) queryEncodedFilteredRange: an hour long range with a filter, visited and encoded on every call.
+ * The query times cycle over the whole day, the busy evening minutes included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class DealQueryBenchmark {
+
+    private static final int TIMES = 1024;
+    private static final DealFilter FILTER = new DealFilter("Melbourne CBD", true, null, null);
+
+    @Param({"1000", "100000", "1000000"})
+    private int deals;
+
+    private DealSnapshot snapshot;
+    private DealServiceImpl dealService;
+    private String[] times;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        List<Restaurant> restaurants = SyntheticFeed.restaurants(deals, SyntheticFeed.DEFAULT_SEED);
+        snapshot = DealSnapshot.compile(restaurants, 1L);
+        dealService = new DealServiceImpl(new FixedDealDao(snapshot),
+                new DealResponseCache(new SimpleMeterRegistry()), new ObjectMapper());
+        times = SyntheticFeed.queryTimes(TIMES, SyntheticFeed.DEFAULT_SEED);
+    }
+
+    /**
+     * Benchmark threads share the counter, a lost update only repeats an input.
+     */
+    private int next() {
+        return next++ & (TIMES - 1);
+    }
+
+    @Benchmark
+    public DealResponse queryActiveDealsByTime() {
+        return dealService.queryActiveDealsByTime(times[next()]);
+    }
+
+    @Benchmark
+    public EncodedResponse queryEncodedActiveDeals() {
+        return dealService.queryEncodedActiveDeals(snapshot, next() * DealSnapshot.MINUTES_OF_DAY / TIMES);
+    }
+
+    @Benchmark
+    public EncodedResponse queryEncodedFilteredRange() {
+        int from = next() * (DealSnapshot.MINUTES_OF_DAY - 60) / TIMES;
+        return dealService.queryEncodedActiveDeals(snapshot, from, from + 60, FILTER);
+    }
+
+    /**
+     * Always the same snapshot, no refresh.
+     */
+    static final class FixedDealDao implements IDealDao {
+
+        private final DealSnapshot snapshot;
+
+        FixedDealDao(DealSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public List<Restaurant> getRestaurants() {
+            return snapshot.getRestaurants();
+        }
+
+        @Override
+        public DealSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        @Override
+        public DealSnapshot acquireSnapshot() {
+            snapshot.retain();
+            return snapshot;
+        }
+
+        @Override
+        public Instant getNextRefreshTime() {
+            return null;
+        }
+
+        @Override
+        public RefreshStats getRefreshStats() {
+            return new RefreshStats(0, 0, 0, 0);
+        }
+    }
+}
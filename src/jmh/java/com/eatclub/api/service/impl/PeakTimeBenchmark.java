@@ -0,0 +1,74 @@
+package com.eatclub.api.service.impl;
+
+import com.eatclub.api.cache.PeakTimeResponseCache;
+import com.eatclub.api.dto.EncodedResponse;
+import com.eatclub.api.dto.HistogramResponse;
+import com.eatclub.api.dto.PeakTimeResponse;
+import com.eatclub.api.model.snapshot.DealFilter;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import com.eatclub.api.model.snapshot.PeakWeight;
+import com.eatclub.api.testdata.SyntheticFeed;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The /peaktime paths over one snapshot: the default peak time is precomputed with the snapshot,
+ * and its encoded (and gzip) body is cached per snapshot;
+ * a weighted or filtered one and the histogram are summed from the per-facet curves on every call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class PeakTimeBenchmark {
+
+    private static final DealFilter FILTER = new DealFilter("Melbourne CBD", true, null, null);
+
+    @Param({"1000", "100000", "1000000"})
+    private int deals;
+
+    private DealSnapshot snapshot;
+    private PeakTimeServiceImpl peakTimeService;
+
+    @Setup
+    public void setUp() {
+        snapshot = DealSnapshot.compile(SyntheticFeed.restaurants(deals, SyntheticFeed.DEFAULT_SEED), 1L);
+        peakTimeService = new PeakTimeServiceImpl(new DealQueryBenchmark.FixedDealDao(snapshot),
+                new PeakTimeResponseCache(new SimpleMeterRegistry()), new ObjectMapper());
+    }
+
+    @Benchmark
+    public PeakTimeResponse calculatePeakTime() {
+        return peakTimeService.calculatePeakTime();
+    }
+
+    @Benchmark
+    public EncodedResponse calculateEncodedPeakTime() {
+        return peakTimeService.calculateEncodedPeakTime(snapshot);
+    }
+
+    @Benchmark
+    public PeakTimeResponse calculateWeightedPeakTimes() {
+        return peakTimeService.calculatePeakTimes(snapshot, PeakWeight.QTY_LEFT, FILTER, 3);
+    }
+
+    @Benchmark
+    public HistogramResponse getHistogram() {
+        return peakTimeService.getHistogram(snapshot, PeakWeight.COUNT, DealFilter.NONE);
+    }
+}
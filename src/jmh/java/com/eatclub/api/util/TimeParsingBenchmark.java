@@ -0,0 +1,84 @@
+package com.eatclub.api.util;
+
+import com.eatclub.api.model.domain.Deal;
+import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.testdata.SyntheticFeed;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time parsing and deal windows, run for every deal of every refresh.
+ * Every call takes the next input of a fixed set, so the branch predictor does not learn one format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeParsingBenchmark {
+
+    /**
+     * A power of two, so the next input is a mask away.
+     */
+    private static final int INPUTS = 4096;
+
+    private String[] times;
+    private Restaurant[] restaurants;
+    private Deal[] deals;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        times = SyntheticFeed.queryTimes(INPUTS, SyntheticFeed.DEFAULT_SEED);
+        List<Restaurant> owners = new ArrayList<>(INPUTS);
+        List<Deal> list = new ArrayList<>(INPUTS);
+        for (Restaurant restaurant : SyntheticFeed.restaurants(INPUTS, SyntheticFeed.DEFAULT_SEED)) {
+            for (Deal deal : restaurant.getDeals()) {
+                owners.add(restaurant);
+                list.add(deal);
+            }
+        }
+        restaurants = owners.toArray(new Restaurant[0]);
+        deals = list.toArray(new Deal[0]);
+    }
+
+    private int next() {
+        return next++ & (INPUTS - 1);
+    }
+
+    @Benchmark
+    public LocalTime parseTime() {
+        return TimeUtils.parseTime(times[next()]);
+    }
+
+    @Benchmark
+    public int parseMinuteOfDay() {
+        return TimeUtils.parseMinuteOfDay(times[next()]);
+    }
+
+    @Benchmark
+    public TimeWindow getActiveWindowOfDeal() {
+        int i = next();
+        return DealUtils.getActiveWindowOfDeal(restaurants[i], deals[i]);
+    }
+
+    @Benchmark
+    public int getActiveMinutesOfDeal() {
+        int i = next();
+        return DealUtils.getActiveMinutesOfDeal(restaurants[i], deals[i]);
+    }
+}
@@ -0,0 +1,116 @@
+package com.eatclub.api.cache;
+
+import com.eatclub.api.dto.EncodedResponse;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the encoded /deals response bodies, keyed by minute-of-day.
+ * Different inputs such as "11:00", "11:00am" and "11:00 AM" all map onto one of the 1440 minutes,
+ * so each body is encoded at most once per snapshot.
+ * The whole cache belongs to one snapshot, and is replaced as soon as a newer snapshot is queried.
+ * When the newer snapshot was patched from the cached one, the bodies of the minutes it did not change are kept.
+ * A body is compressed with gzip when it is stored, so it is compressed once too; a bypassed body is not.
+ * Lookups are counted as deals.response.cache{uri=/deals,result=hit|miss|bypass},
+ * the hit ratio is hit / (hit + miss).
+ */
+@Component
+public class DealResponseCache {
+
+    private final AtomicReference<Generation> current =
+            new AtomicReference<>(new Generation(DealSnapshot.empty()));
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bypasses;
+
+    public DealResponseCache(MeterRegistry meterRegistry) {
+        this.hits = lookupCounter(meterRegistry, "hit");
+        this.misses = lookupCounter(meterRegistry, "miss");
+        this.bypasses = lookupCounter(meterRegistry, "bypass");
+    }
+
+    /**
+     * Get the encoded body of a minute, encode and cache it if it is not there yet.
+     * @param snapshot the snapshot the body should come from
+     * @param minuteOfDay should between 0~1439
+     * @param encoder encode the body when missing, without gzip
+     * @return the encoded body, with its gzip body unless the cache was bypassed
+     */
+    public EncodedResponse get(DealSnapshot snapshot, int minuteOfDay, Supplier<EncodedResponse> encoder) {
+        Generation generation = generationOf(snapshot);
+        if (generation == null) {
+            // A request still holding an older snapshot, do not pollute the cache of the newer one.
+            bypasses.increment();
+            return encoder.get();
+        }
+
+        EncodedResponse cached = generation.bodies.get(minuteOfDay);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        EncodedResponse encoded = encoder.get();
+        // If another request stored it in the meantime, the both bodies are the same, take the stored one
+        // rather than compressing again.
+        cached = generation.bodies.get(minuteOfDay);
+        if (cached != null) {
+            return cached;
+        }
+        EncodedResponse compressed = encoded.withGzip();
+        cached = generation.bodies.compareAndExchange(minuteOfDay, null, compressed);
+        return cached != null ? cached : compressed;
+    }
+
+    /**
+     * Get the generation of the snapshot, swap in a new one if the snapshot is newer than the cached one.
+     * @return the generation, or null if the snapshot is older than the cached one.
+     */
+    private Generation generationOf(DealSnapshot snapshot) {
+        while (true) {
+            Generation generation = current.get();
+            if (generation.snapshot == snapshot) {
+                return generation;
+            }
+            if (generation.snapshot.getVersion() > snapshot.getVersion()) {
+                return null;
+            }
+            Generation fresh = new Generation(snapshot);
+            if (snapshot.getPreviousVersion() == generation.snapshot.getVersion()) {
+                for (int m = 0; m < DealSnapshot.MINUTES_OF_DAY; m++) {
+                    if (!snapshot.isMinuteChanged(m)) {
+                        fresh.bodies.set(m, generation.bodies.get(m));
+                    }
+                }
+            }
+            if (current.compareAndSet(generation, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("deals.response.cache")
+                .description("Lookups of the encoded response bodies")
+                .tag("uri", "/deals")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static final class Generation {
+        private final DealSnapshot snapshot;
+        private final AtomicReferenceArray<EncodedResponse> bodies =
+                new AtomicReferenceArray<>(DealSnapshot.MINUTES_OF_DAY);
+
+        private Generation(DealSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.eatclub.api.cache;
+
+import com.eatclub.api.dto.EncodedResponse;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the encoded default /peaktime response body, one body per snapshot.
+ * The body is replaced as soon as a newer snapshot is queried, same as the /deals bodies,
+ * and is compressed with gzip when it is stored; a bypassed body is not.
+ * Lookups are counted as deals.response.cache{uri=/peaktime,result=hit|miss|bypass}.
+ */
+@Component
+public class PeakTimeResponseCache {
+
+    private final AtomicReference<Entry> current =
+            new AtomicReference<>(new Entry(DealSnapshot.empty(), null));
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bypasses;
+
+    public PeakTimeResponseCache(MeterRegistry meterRegistry) {
+        this.hits = lookupCounter(meterRegistry, "hit");
+        this.misses = lookupCounter(meterRegistry, "miss");
+        this.bypasses = lookupCounter(meterRegistry, "bypass");
+    }
+
+    /**
+     * Get the encoded body of a snapshot, encode and cache it if it is not there yet.
+     * @param snapshot the snapshot the body should come from
+     * @param encoder encode the body when missing, without gzip
+     * @return the encoded body, with its gzip body unless the cache was bypassed
+     */
+    public EncodedResponse get(DealSnapshot snapshot, Supplier<EncodedResponse> encoder) {
+        Entry entry = current.get();
+        if (entry.snapshot == snapshot && entry.body != null) {
+            hits.increment();
+            return entry.body;
+        }
+        if (entry.snapshot.getVersion() > snapshot.getVersion()) {
+            // A request still holding an older snapshot, do not replace the body of the newer one.
+            bypasses.increment();
+            return encoder.get();
+        }
+        misses.increment();
+        EncodedResponse encoded = encoder.get();
+        // If another request stored it in the meantime, take the stored one rather than compressing again.
+        entry = current.get();
+        if (entry.snapshot == snapshot && entry.body != null) {
+            return entry.body;
+        }
+        Entry fresh = new Entry(snapshot, encoded.withGzip());
+        // If a newer snapshot was cached in the meantime, keep it.
+        while (entry.snapshot.getVersion() <= snapshot.getVersion() && !current.compareAndSet(entry, fresh)) {
+            entry = current.get();
+        }
+        return fresh.body;
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("deals.response.cache")
+                .description("Lookups of the encoded response bodies")
+                .tag("uri", "/peaktime")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record Entry(DealSnapshot snapshot, EncodedResponse body) {
+    }
+}
@@ -31,7 +31,10 @@ public class WebClientConfig {
         // 3) Set up read timeout
         httpClient = httpClient.responseTimeout(properties.readTimeout());
 
-        // 4) Use the HttpClient to create WebClient
+        // 4) Ask for gzip, the body is inflated on the fly while it is streamed
+        httpClient = httpClient.compress(true);
+
+        // 5) Use the HttpClient to create WebClient
         ReactorClientHttpConnector connector = new ReactorClientHttpConnector(httpClient);
 
         return WebClient.builder().clientConnector(connector).build();
@@ -1,13 +1,90 @@
 package com.eatclub.api.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
 
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * @param maxPayloadSize the largest (decompressed) feed accepted, a bigger feed fails the refresh
+ * @param refreshTimeout the deadline of a whole refresh, every attempt and backoff included
+ * @param retry          how a refresh retries a transient failure
+ * @param circuitBreaker when refreshes stop calling a failing upstream
+ * @param sources        the upstream feeds (one per city), merged into one snapshot;
+ *                       when empty, url is the only feed
+ * @param snapshotFile   where the last good data is kept for the next start, null to keep nothing
+ */
 @ConfigurationProperties(prefix = "webclient.data")
 public record WebClientProperties(
         String url,
         Duration refreshInterval,
         Duration connectTimeout,
-        Duration readTimeout
-) {}
+        Duration readTimeout,
+        @DefaultValue("64MB") DataSize maxPayloadSize,
+        @DefaultValue("10s") Duration refreshTimeout,
+        @DefaultValue Retry retry,
+        @DefaultValue CircuitBreaker circuitBreaker,
+        @DefaultValue List<Source> sources,
+        Path snapshotFile
+) {
+
+    /**
+     * The feeds to fetch, in merge order.
+     * Without configured sources, url is one feed named "default";
+     * a source without its own refresh interval or timeout uses the top level one.
+     */
+    public List<Source> resolveSources() {
+        if (sources == null || sources.isEmpty()) {
+            return List.of(new Source("default", url, refreshInterval, refreshTimeout));
+        }
+        List<Source> resolved = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            Source source = sources.get(i);
+            resolved.add(new Source(
+                    source.name() != null ? source.name() : "source-" + i,
+                    source.url(),
+                    source.refreshInterval() != null ? source.refreshInterval() : refreshInterval,
+                    source.refreshTimeout() != null ? source.refreshTimeout() : refreshTimeout));
+        }
+        return resolved;
+    }
+
+    /**
+     * @param name            used in logs
+     * @param url             the feed
+     * @param refreshInterval how often this feed is fetched, null for the top level refresh-interval
+     * @param refreshTimeout  the deadline of a refresh of this feed, null for the top level refresh-timeout
+     */
+    public record Source(
+            String name,
+            String url,
+            Duration refreshInterval,
+            Duration refreshTimeout
+    ) {}
+
+    /**
+     * @param maxRetries retries after the first attempt, 0 disables retrying
+     * @param minBackoff the delay before the first retry, doubled on each next one
+     * @param maxBackoff the longest delay between two attempts
+     * @param jitter     share of a delay which is randomized, between 0 and 1
+     */
+    public record Retry(
+            @DefaultValue("2") int maxRetries,
+            @DefaultValue("500ms") Duration minBackoff,
+            @DefaultValue("4s") Duration maxBackoff,
+            @DefaultValue("0.5") double jitter
+    ) {}
+
+    /**
+     * @param failureThreshold consecutive failed refreshes which open the circuit
+     * @param openDuration     how long an open circuit skips refreshes, before one trial refresh is let through
+     */
+    public record CircuitBreaker(
+            @DefaultValue("3") int failureThreshold,
+            @DefaultValue("60s") Duration openDuration
+    ) {}
+}
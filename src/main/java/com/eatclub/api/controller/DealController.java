@@ -1,14 +1,45 @@
 package com.eatclub.api.controller;
 
-import com.eatclub.api.dto.DealResponse;
+import com.eatclub.api.dao.IDealDao;
+import com.eatclub.api.dto.BatchDealRequest;
+import com.eatclub.api.dto.BatchDealResponse;
+import com.eatclub.api.dto.DealDto;
+import com.eatclub.api.dto.EncodedResponse;
+import com.eatclub.api.exception.BadRequestException;
+import com.eatclub.api.model.snapshot.DealFilter;
+import com.eatclub.api.model.snapshot.DealQuery;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import com.eatclub.api.model.snapshot.DealSort;
 import com.eatclub.api.service.IDealService;
-import jakarta.validation.constraints.NotBlank;
+import com.eatclub.api.util.ContentEncodingUtils;
+import com.eatclub.api.util.CursorUtils;
+import com.eatclub.api.util.HashUtils;
+import com.eatclub.api.util.HttpCacheUtils;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.eatclub.api.util.TimeUtils.INVALID_TIME;
+import static com.eatclub.api.util.TimeUtils.parseMinuteOfDay;
 
 @RestController
 @RequestMapping("/deals")
@@ -16,17 +47,343 @@ public class DealController {
 
     private static final Logger log = LoggerFactory.getLogger(DealController.class);
 
+    /**
+     * Tells which snapshot the body came from, the body itself can be shared between snapshots.
+     */
+    static final String SNAPSHOT_VERSION_HEADER = "X-Snapshot-Version";
+
+    /**
+     * The JSON body depends on the media type (ndjson) and on the content coding (gzip).
+     */
+    private static final String VARY_JSON = HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING;
+
+    /**
+     * One per minute of the day is already more than a schedule needs.
+     */
+    private static final int MAX_BATCH_TIMES = DealSnapshot.MINUTES_OF_DAY;
+
     private final IDealService dealService;
+    private final IDealDao dealDao;
+
+    /**
+     * Result sizes, the latency of every endpoint is already recorded as http.server.requests.
+     */
+    private final DistributionSummary dealItems;
+    private final DistributionSummary dealBytes;
+    private final DistributionSummary batchItems;
 
-    public DealController(IDealService dealService) {
+    public DealController(IDealService dealService, IDealDao dealDao, MeterRegistry meterRegistry) {
         this.dealService = dealService;
+        this.dealDao = dealDao;
+        this.dealItems = itemSummary(meterRegistry, "/deals");
+        this.batchItems = itemSummary(meterRegistry, "/deals/batch");
+        this.dealBytes = DistributionSummary.builder("deals.response.bytes")
+                .description("Size of the encoded body")
+                .baseUnit("bytes")
+                .tag("uri", "/deals")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param uri the route, like the uri tag of http.server.requests
+     */
+    static DistributionSummary itemSummary(MeterRegistry meterRegistry, String uri) {
+        return DistributionSummary.builder("deals.response.items")
+                .description("Deals in a response")
+                .baseUnit("deals")
+                .tag("uri", uri)
+                .register(meterRegistry);
     }
 
+    /**
+     * Get the deals active at one minute (timeOfDay), or at any minute of a time range [from, to).
+     * The deals can be filtered by suburb, dineIn, lightning and minDiscount.
+     * With limit, sort or cursor, one page is returned with the cursor of the next page;
+     * a cursor is tied to the snapshot version and the query it came from.
+     * The body is already encoded JSON, it is written to the response as it is.
+     * A one-minute query without filter or paging is also compressed with gzip once per snapshot,
+     * and that body is sent as it is to the clients accepting gzip, with a "-gzip" ETag.
+     * The ETag is built from the snapshot content hash, the query minute or range, the filter and the page
+     * (a page also from the snapshot version, which its next cursor is tied to),
+     * so a matching If-None-Match is answered with 304 without querying the service.
+     */
     @GetMapping
-    public DealResponse getDeals(@RequestParam @NotBlank String timeOfDay) {
-        log.info("Received request to get deals for time: {}", timeOfDay);
-        DealResponse response = dealService.queryActiveDealsByTime(timeOfDay);
-        log.info("Returning {} deals for time: {}", response.getDeals().size(), timeOfDay);
-        return response;
+    public ResponseEntity<byte[]> getDeals(@RequestParam(required = false) String timeOfDay,
+                                           @RequestParam(required = false) String from,
+                                           @RequestParam(required = false) String to,
+                                           @RequestParam(required = false) String suburb,
+                                           @RequestParam(required = false) Boolean dineIn,
+                                           @RequestParam(required = false) Boolean lightning,
+                                           @RequestParam(required = false) Integer minDiscount,
+                                           @RequestParam(required = false) Integer limit,
+                                           @RequestParam(required = false) String sort,
+                                           @RequestParam(required = false) String cursor,
+                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                           String ifNoneMatch,
+                                           @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+                                           String acceptEncoding) {
+        log.info("Received request to get deals for time: {}, from: {}, to: {}", timeOfDay, from, to);
+        // 1) Normalize the time to a range of minutes, one minute is [m, m + 1).
+        DealQuery query = parseQuery(timeOfDay, from, to, new DealFilter(suburb, dineIn, lightning, minDiscount),
+                parseSort(sort));
+        if (limit != null && limit < 1) {
+            throw new BadRequestException("INVALID_PARAMETER", "Parameter limit must be at least 1: " + limit);
+        }
+        boolean paged = limit != null || sort != null || cursor != null;
+        // Only the cached bodies have a precompressed variant, the others are never compressed per request.
+        boolean gzip = !paged && !query.isRange() && query.filter().isEmpty()
+                && ContentEncodingUtils.acceptsGzip(acceptEncoding);
+
+        // 2) Pin one snapshot for the whole request, a cursor must come from it; released once the body is built.
+        DealSnapshot snapshot = dealDao.acquireSnapshot();
+        try {
+            int position = cursor == null ? 0 : parseCursor(cursor, snapshot, query);
+            // A page carries the next cursor, which is tied to the snapshot version, so its ETag is too.
+            String etag = paged
+                    ? HttpCacheUtils.queryEtag(snapshot.getContentHash(), HashUtils.update(query.hash(),
+                            (limit == null ? "all" : limit.toString()) + "@" + position + "@" + snapshot.getVersion()))
+                    : etagOf(snapshot, query);
+            if (gzip) {
+                etag = HttpCacheUtils.variantEtag(etag, ContentEncodingUtils.GZIP);
+            }
+            CacheControl cacheControl = cacheControl();
+
+            // 3) The client already has this body.
+            if (HttpCacheUtils.isNotModified(ifNoneMatch, etag)) {
+                log.info("Deals for minutes: {}~{} not modified", query.fromMinute(), query.toMinute());
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl)
+                        .header(HttpHeaders.VARY, VARY_JSON).build();
+            }
+
+            // 4) Query the snapshot.
+            EncodedResponse response = paged
+                    ? dealService.queryEncodedDealPage(snapshot, query, position,
+                            limit == null ? Integer.MAX_VALUE : limit)
+                    : dealService.queryEncodedActiveDeals(snapshot, query.fromMinute(), query.toMinute(),
+                            query.filter());
+            log.info("Returning {} deals for minutes: {}~{}", response.itemCount(), query.fromMinute(),
+                    query.toMinute());
+            dealItems.record(response.itemCount());
+            dealBytes.record(response.body().length);
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .header(HttpHeaders.VARY, VARY_JSON)
+                    .header(SNAPSHOT_VERSION_HEADER, String.valueOf(snapshot.getVersion()))
+                    .contentType(MediaType.APPLICATION_JSON);
+            if (gzip) {
+                return builder.header(HttpHeaders.CONTENT_ENCODING, ContentEncodingUtils.GZIP).body(response.gzipped());
+            }
+            return builder.body(response.body());
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    /**
+     * Same query as {@link #getDeals}, for clients sending Accept: application/x-ndjson.
+     * Every deal is written as one JSON line as soon as it is found, so the first bytes go out
+     * before the last deal is visited, and the memory per request stays constant.
+     * The ETag is the one of the JSON body with a "-ndjson" suffix.
+     * Paging needs the next cursor in the body, so limit, sort and cursor are not supported.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamDeals(@RequestParam(required = false) String timeOfDay,
+                                                             @RequestParam(required = false) String from,
+                                                             @RequestParam(required = false) String to,
+                                                             @RequestParam(required = false) String suburb,
+                                                             @RequestParam(required = false) Boolean dineIn,
+                                                             @RequestParam(required = false) Boolean lightning,
+                                                             @RequestParam(required = false) Integer minDiscount,
+                                                             @RequestParam(required = false) Integer limit,
+                                                             @RequestParam(required = false) String sort,
+                                                             @RequestParam(required = false) String cursor,
+                                                             @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                             String ifNoneMatch) {
+        log.info("Received request to stream deals for time: {}, from: {}, to: {}", timeOfDay, from, to);
+        if (limit != null || sort != null || cursor != null) {
+            throw new BadRequestException("INVALID_PARAMETER",
+                    "Parameters limit, sort and cursor are not supported with " + MediaType.APPLICATION_NDJSON_VALUE);
+        }
+        DealQuery query = parseQuery(timeOfDay, from, to, new DealFilter(suburb, dineIn, lightning, minDiscount),
+                null);
+        DealSnapshot snapshot = dealDao.acquireSnapshot();
+        boolean streaming = false;
+        try {
+            String etag = HttpCacheUtils.variantEtag(etagOf(snapshot, query), "ndjson");
+            CacheControl cacheControl = cacheControl();
+            if (HttpCacheUtils.isNotModified(ifNoneMatch, etag)) {
+                log.info("Deal stream for minutes: {}~{} not modified", query.fromMinute(), query.toMinute());
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl)
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
+            }
+
+            // The body is written after the handler returns, it keeps the pinned snapshot and releases it.
+            // If the body is never written, the snapshot is not released, and the GC frees it.
+            StreamingResponseBody body = out -> {
+                try {
+                    int count = dealService.streamActiveDeals(snapshot, query.fromMinute(), query.toMinute(),
+                            query.filter(), out);
+                    log.info("Streamed {} deals for minutes: {}~{}", count, query.fromMinute(), query.toMinute());
+                    dealItems.record(count);
+                } finally {
+                    snapshot.release();
+                }
+            };
+            ResponseEntity<StreamingResponseBody> response = ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                    .header(SNAPSHOT_VERSION_HEADER, String.valueOf(snapshot.getVersion()))
+                    .contentType(MediaType.APPLICATION_NDJSON)
+                    .body(body);
+            streaming = true;
+            return response;
+        } finally {
+            if (!streaming) {
+                snapshot.release();
+            }
+        }
+    }
+
+    /**
+     * Get the deals active at several times in one call, for example every slot of a schedule.
+     * Every time is evaluated against the same snapshot, so the results never straddle a refresh,
+     * and a deal active at several times is sent once.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<BatchDealResponse> getDealsBatch(@RequestBody BatchDealRequest request) {
+        List<String> times = request.getTimes();
+        log.info("Received request to get deals for {} times", times == null ? 0 : times.size());
+        // 1) Validate every time before reading the snapshot.
+        if (times == null || times.isEmpty()) {
+            throw new BadRequestException("MISSING_PARAMETER", "Field times is required.");
+        }
+        if (times.size() > MAX_BATCH_TIMES) {
+            throw new BadRequestException("INVALID_PARAMETER", "At most " + MAX_BATCH_TIMES + " times per batch.");
+        }
+        int[] minutes = new int[times.size()];
+        for (int i = 0; i < minutes.length; i++) {
+            minutes[i] = parseMinute("times[" + i + "]", times.get(i));
+        }
+        DealFilter filter = new DealFilter(request.getSuburb(), request.getDineIn(), request.getLightning(),
+                request.getMinDiscount());
+
+        // 2) Pin one snapshot for every time.
+        DealSnapshot snapshot = dealDao.acquireSnapshot();
+        try {
+            BatchDealResponse response = dealService.queryBatch(snapshot, times, minutes, filter);
+            log.info("Returning {} distinct deals for {} times", response.getDeals().size(), minutes.length);
+            batchItems.record(response.getDeals().size());
+            return ResponseEntity.ok()
+                    .header(SNAPSHOT_VERSION_HEADER, String.valueOf(snapshot.getVersion()))
+                    .body(response);
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    /**
+     * Get the current state of one deal by objectId, active or not, for example to check qtyLeft before checkout.
+     * 404 if the deal is not in the current snapshot.
+     * The ETag is the snapshot content hash, so a matching If-None-Match is answered with 304.
+     */
+    @GetMapping("/{dealObjectId}")
+    public ResponseEntity<DealDto> getDeal(@PathVariable String dealObjectId,
+                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                           String ifNoneMatch) {
+        log.info("Received request to get deal: {}", dealObjectId);
+        DealSnapshot snapshot = dealDao.acquireSnapshot();
+        try {
+            String etag = HttpCacheUtils.etag(snapshot.getContentHash());
+            CacheControl cacheControl = cacheControl();
+            if (HttpCacheUtils.isNotModified(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+            }
+
+            DealDto response = dealService.getDeal(snapshot, dealObjectId);
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .header(SNAPSHOT_VERSION_HEADER, String.valueOf(snapshot.getVersion()))
+                    .body(response);
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    private static DealQuery parseQuery(String timeOfDay, String from, String to, DealFilter filter, DealSort sort) {
+        if (from == null && to == null) {
+            if (timeOfDay == null) {
+                throw new BadRequestException("MISSING_PARAMETER", "Parameter timeOfDay, or from and to, is required.");
+            }
+            int minuteOfDay = parseMinute("timeOfDay", timeOfDay);
+            return new DealQuery(minuteOfDay, minuteOfDay + 1, filter, sort);
+        }
+        if (timeOfDay != null) {
+            throw new BadRequestException("INVALID_PARAMETER", "Use either timeOfDay, or from and to.");
+        }
+        if (from == null || to == null) {
+            throw new BadRequestException("MISSING_PARAMETER", "Parameters from and to are both required.");
+        }
+        int fromMinute = parseMinute("from", from);
+        // The range end is excluded, so 24:00 reaches the last minute of the day.
+        int toMinute = to.strip().equals("24:00") ? DealSnapshot.MINUTES_OF_DAY : parseMinute("to", to);
+        if (toMinute <= fromMinute) {
+            throw new BadRequestException("INVALID_RANGE", "Parameter to must be after from: " + from + "~" + to);
+        }
+        return new DealQuery(fromMinute, toMinute, filter, sort);
+    }
+
+    /**
+     * @param sort "discount", "qtyLeft" or "name", ignoring case; null means the API order
+     */
+    private static DealSort parseSort(String sort) {
+        if (sort == null) {
+            return null;
+        }
+        DealSort dealSort = DealSort.fromParameter(sort);
+        if (dealSort == null) {
+            throw new BadRequestException("INVALID_PARAMETER", "Parameter sort must be discount, qtyLeft or name: " + sort);
+        }
+        return dealSort;
+    }
+
+    /**
+     * @return the position of the page the cursor points to
+     */
+    private static int parseCursor(String token, DealSnapshot snapshot, DealQuery query) {
+        CursorUtils.Cursor cursor = CursorUtils.decode(token);
+        if (cursor == null || cursor.queryHash() != query.hash()) {
+            throw new BadRequestException("INVALID_CURSOR", "The cursor does not belong to this query.");
+        }
+        if (cursor.snapshotVersion() != snapshot.getVersion()) {
+            throw new BadRequestException("CURSOR_EXPIRED", "The deals were refreshed, start again from the first page.");
+        }
+        return cursor.position();
+    }
+
+    private static String etagOf(DealSnapshot snapshot, DealQuery query) {
+        if (!query.filter().isEmpty()) {
+            return HttpCacheUtils.etag(snapshot.getContentHash(), query.fromMinute(), query.toMinute(),
+                    query.filter().hash());
+        }
+        if (query.isRange()) {
+            return HttpCacheUtils.etag(snapshot.getContentHash(), query.fromMinute(), query.toMinute());
+        }
+        return HttpCacheUtils.etag(snapshot.getContentHash(), query.fromMinute());
+    }
+
+    private CacheControl cacheControl() {
+        return CacheControl.maxAge(
+                HttpCacheUtils.secondsUntil(dealDao.getNextRefreshTime(), Instant.now()), TimeUnit.SECONDS);
+    }
+
+    private static int parseMinute(String name, String value) {
+        int minuteOfDay = parseMinuteOfDay(value);
+        if (minuteOfDay == INVALID_TIME) {
+            throw new BadRequestException("INVALID_TIME", "Invalid " + name + ": " + value);
+        }
+        return minuteOfDay;
     }
 }
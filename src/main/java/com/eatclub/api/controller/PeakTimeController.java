@@ -1,13 +1,33 @@
 package com.eatclub.api.controller;
 
+import com.eatclub.api.dao.IDealDao;
+import com.eatclub.api.dto.EncodedResponse;
+import com.eatclub.api.dto.HistogramResponse;
 import com.eatclub.api.dto.PeakTimeResponse;
+import com.eatclub.api.exception.BadRequestException;
+import com.eatclub.api.model.snapshot.DealFilter;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import com.eatclub.api.model.snapshot.PeakWeight;
 import com.eatclub.api.service.IPeakTimeService;
+import com.eatclub.api.util.ContentEncodingUtils;
+import com.eatclub.api.util.HashUtils;
+import com.eatclub.api.util.HttpCacheUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
 @RestController
 @RequestMapping("/peaktime")
 public class PeakTimeController {
@@ -15,16 +35,166 @@ public class PeakTimeController {
     private static final Logger log = LoggerFactory.getLogger(PeakTimeController.class);
 
     private final IPeakTimeService peakTimeService;
+    private final IDealDao dealDao;
 
-    public PeakTimeController( IPeakTimeService peakTimeService) {
+    public PeakTimeController(IPeakTimeService peakTimeService, IDealDao dealDao) {
         this.peakTimeService = peakTimeService;
+        this.dealDao = dealDao;
+    }
+
+    /**
+     * Get the peak time without any parameter, which is what most clients ask for.
+     * The body is encoded and compressed with gzip once per snapshot, and is written to the response as it is:
+     * the gzip body to the clients accepting gzip, with a "-gzip" ETag, the JSON body to the others.
+     */
+    @GetMapping(params = {"!top", "!weight", "!suburb", "!dineIn", "!lightning"})
+    public ResponseEntity<byte[]> getDefaultPeakTime(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                     String ifNoneMatch,
+                                                     @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+                                                     String acceptEncoding) {
+        log.info("Received request to get the default peak time");
+        boolean gzip = ContentEncodingUtils.acceptsGzip(acceptEncoding);
+        DealSnapshot snapshot = dealDao.acquireSnapshot();
+        try {
+            String etag = HttpCacheUtils.etag(bodyHash(snapshot));
+            if (gzip) {
+                etag = HttpCacheUtils.variantEtag(etag, ContentEncodingUtils.GZIP);
+            }
+            CacheControl cacheControl = cacheControl();
+            if (HttpCacheUtils.isNotModified(ifNoneMatch, etag)) {
+                log.info("Peak time not modified");
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl)
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+            }
+
+            EncodedResponse response = peakTimeService.calculateEncodedPeakTime(snapshot);
+            log.info("Returning the default peak time of snapshot {}", snapshot.getVersion());
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .contentType(MediaType.APPLICATION_JSON);
+            if (gzip) {
+                return builder.header(HttpHeaders.CONTENT_ENCODING, ContentEncodingUtils.GZIP).body(response.gzipped());
+            }
+            return builder.body(response.body());
+        } finally {
+            snapshot.release();
+        }
     }
 
+    /**
+     * Get the peak time. With top, also every period at the max deal count and the top N local peaks.
+     * The deals can be weighted by count (default) or qtyLeft, and filtered by suburb, dineIn and lightning.
+     * The ETag is built from the snapshot content hash and version (and the other parameters),
+     * so a matching If-None-Match is answered with 304 without querying the service.
+     */
     @GetMapping
-    public PeakTimeResponse getPeakTime() {
-        log.info("Received request to calculate peak time");
-        PeakTimeResponse response = peakTimeService.calculatePeakTime();
-        log.info("Returning peak time: {} - {}", response.getPeakTimeStart(), response.getPeakTimeEnd());
-        return response;
+    public ResponseEntity<PeakTimeResponse> getPeakTime(@RequestParam(required = false) Integer top,
+                                                        @RequestParam(required = false) String weight,
+                                                        @RequestParam(required = false) String suburb,
+                                                        @RequestParam(required = false) Boolean dineIn,
+                                                        @RequestParam(required = false) Boolean lightning,
+                                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                        String ifNoneMatch) {
+        log.info("Received request to calculate peak time, top: {}, weight: {}", top, weight);
+        if (top != null && top < 1) {
+            throw new BadRequestException("INVALID_PARAMETER", "Parameter top must be at least 1: " + top);
+        }
+        PeakWeight peakWeight = parseWeight(weight);
+        DealFilter filter = new DealFilter(suburb, dineIn, lightning, null);
+        boolean isDefault = peakWeight == PeakWeight.COUNT && filter.isEmpty();
+
+        // 1) Pin one snapshot for the whole request.
+        DealSnapshot snapshot = dealDao.acquireSnapshot();
+        try {
+            String etag;
+            if (!isDefault) {
+                long queryHash = HashUtils.update(filter.hash(), peakWeight.getParameter());
+                queryHash = HashUtils.update(queryHash, top == null ? null : top.toString());
+                etag = HttpCacheUtils.queryEtag(bodyHash(snapshot), queryHash);
+            } else if (top != null) {
+                etag = HttpCacheUtils.etag(bodyHash(snapshot), top);
+            } else {
+                etag = HttpCacheUtils.etag(bodyHash(snapshot));
+            }
+            CacheControl cacheControl = cacheControl();
+
+            // 2) The client already has this body.
+            if (HttpCacheUtils.isNotModified(ifNoneMatch, etag)) {
+                log.info("Peak time not modified");
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+            }
+
+            // 3) Query the snapshot.
+            PeakTimeResponse response = isDefault && top == null
+                    ? peakTimeService.calculatePeakTime(snapshot)
+                    : peakTimeService.calculatePeakTimes(snapshot, peakWeight, filter, top);
+            log.info("Returning peak time: {} - {}", response.getPeakTimeStart(), response.getPeakTimeEnd());
+            return ResponseEntity.ok().eTag(etag).cacheControl(cacheControl).body(response);
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    /**
+     * Get the active deal count (or total qtyLeft) of every minute, run-length encoded.
+     * Same parameters, except top, and same ETag / If-None-Match handling as the peak time.
+     */
+    @GetMapping("/histogram")
+    public ResponseEntity<HistogramResponse> getHistogram(@RequestParam(required = false) String weight,
+                                                          @RequestParam(required = false) String suburb,
+                                                          @RequestParam(required = false) Boolean dineIn,
+                                                          @RequestParam(required = false) Boolean lightning,
+                                                          @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                          String ifNoneMatch) {
+        log.info("Received request to get the concurrency histogram, weight: {}", weight);
+        PeakWeight peakWeight = parseWeight(weight);
+        DealFilter filter = new DealFilter(suburb, dineIn, lightning, null);
+        DealSnapshot snapshot = dealDao.acquireSnapshot();
+        try {
+            String etag = peakWeight == PeakWeight.COUNT && filter.isEmpty()
+                    ? HttpCacheUtils.etag(bodyHash(snapshot))
+                    : HttpCacheUtils.queryEtag(bodyHash(snapshot),
+                            HashUtils.update(filter.hash(), peakWeight.getParameter()));
+            CacheControl cacheControl = cacheControl();
+            if (HttpCacheUtils.isNotModified(ifNoneMatch, etag)) {
+                log.info("Histogram not modified");
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+            }
+
+            HistogramResponse response = peakTimeService.getHistogram(snapshot, peakWeight, filter);
+            log.info("Returning histogram with {} runs", response.getRuns().length);
+            return ResponseEntity.ok().eTag(etag).cacheControl(cacheControl).body(response);
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    /**
+     * @param weight "count" or "qtyLeft", ignoring case; null means count
+     */
+    private PeakWeight parseWeight(String weight) {
+        if (weight == null) {
+            return PeakWeight.COUNT;
+        }
+        PeakWeight peakWeight = PeakWeight.fromParameter(weight);
+        if (peakWeight == null) {
+            throw new BadRequestException("INVALID_PARAMETER", "Parameter weight must be count or qtyLeft: " + weight);
+        }
+        return peakWeight;
+    }
+
+    /**
+     * The peak time and histogram bodies carry snapshotVersion, so their strong ETags come from the version
+     * as well as the content hash: a refresh with the same content is a different body.
+     */
+    private static long bodyHash(DealSnapshot snapshot) {
+        return HashUtils.update(snapshot.getContentHash(), String.valueOf(snapshot.getVersion()));
+    }
+
+    private CacheControl cacheControl() {
+        return CacheControl.maxAge(
+                HttpCacheUtils.secondsUntil(dealDao.getNextRefreshTime(), Instant.now()), TimeUnit.SECONDS);
     }
-}
\ No newline at end of file
+}
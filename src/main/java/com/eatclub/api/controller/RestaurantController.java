@@ -0,0 +1,110 @@
+package com.eatclub.api.controller;
+
+import com.eatclub.api.dao.IDealDao;
+import com.eatclub.api.dto.DealResponse;
+import com.eatclub.api.dto.RestaurantDto;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import com.eatclub.api.service.IDealService;
+import com.eatclub.api.service.IRestaurantService;
+import com.eatclub.api.util.HttpCacheUtils;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import static com.eatclub.api.controller.DealController.SNAPSHOT_VERSION_HEADER;
+
+@RestController
+@RequestMapping("/restaurants")
+public class RestaurantController {
+
+    private static final Logger log = LoggerFactory.getLogger(RestaurantController.class);
+
+    private final IRestaurantService restaurantService;
+    private final IDealService dealService;
+    private final IDealDao dealDao;
+    private final DistributionSummary restaurantDealItems;
+
+    public RestaurantController(IRestaurantService restaurantService, IDealService dealService, IDealDao dealDao,
+                                MeterRegistry meterRegistry) {
+        this.restaurantService = restaurantService;
+        this.dealService = dealService;
+        this.dealDao = dealDao;
+        this.restaurantDealItems = DealController.itemSummary(meterRegistry, "/restaurants/{objectId}/deals");
+    }
+
+    /**
+     * Get one restaurant by objectId, 404 if it is not in the current snapshot.
+     * The ETag is the snapshot content hash, so a matching If-None-Match is answered with 304.
+     */
+    @GetMapping("/{objectId}")
+    public ResponseEntity<RestaurantDto> getRestaurant(@PathVariable String objectId,
+                                                       @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                       String ifNoneMatch) {
+        log.info("Received request to get restaurant: {}", objectId);
+        DealSnapshot snapshot = dealDao.acquireSnapshot();
+        try {
+            String etag = HttpCacheUtils.etag(snapshot.getContentHash());
+            CacheControl cacheControl = cacheControl();
+            if (HttpCacheUtils.isNotModified(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+            }
+
+            RestaurantDto response = restaurantService.getRestaurant(snapshot, objectId);
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .header(SNAPSHOT_VERSION_HEADER, String.valueOf(snapshot.getVersion()))
+                    .body(response);
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    /**
+     * Get every deal of one restaurant in API order, active or not, 404 if the restaurant is not found.
+     * Same ETag / If-None-Match handling as the restaurant.
+     */
+    @GetMapping("/{objectId}/deals")
+    public ResponseEntity<DealResponse> getRestaurantDeals(@PathVariable String objectId,
+                                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false)
+                                                           String ifNoneMatch) {
+        log.info("Received request to get the deals of restaurant: {}", objectId);
+        DealSnapshot snapshot = dealDao.acquireSnapshot();
+        try {
+            String etag = HttpCacheUtils.etag(snapshot.getContentHash());
+            CacheControl cacheControl = cacheControl();
+            if (HttpCacheUtils.isNotModified(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(cacheControl).build();
+            }
+
+            DealResponse response = dealService.getDealsOfRestaurant(snapshot, objectId);
+            log.info("Returning {} deals of restaurant: {}", response.getDeals().size(), objectId);
+            restaurantDealItems.record(response.getDeals().size());
+            return ResponseEntity.ok()
+                    .eTag(etag)
+                    .cacheControl(cacheControl)
+                    .header(SNAPSHOT_VERSION_HEADER, String.valueOf(snapshot.getVersion()))
+                    .body(response);
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    private CacheControl cacheControl() {
+        return CacheControl.maxAge(
+                HttpCacheUtils.secondsUntil(dealDao.getNextRefreshTime(), Instant.now()), TimeUnit.SECONDS);
+    }
+}
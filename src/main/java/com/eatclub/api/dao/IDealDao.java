@@ -1,9 +1,31 @@
 package com.eatclub.api.dao;
 
 import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import com.eatclub.api.model.snapshot.RefreshStats;
 
+import java.time.Instant;
 import java.util.List;
 
 public interface IDealDao {
     List<Restaurant> getRestaurants();
+
+    /**
+     * @return the published snapshot, for its version, counts and hashes only:
+     *         once it is swapped out, its restaurants and deals may be freed, see {@link #acquireSnapshot()}
+     */
+    DealSnapshot getSnapshot();
+
+    /**
+     * @return the published snapshot, retained for the caller: its restaurants and deals stay readable,
+     *         even after a swap, until the caller releases it with {@link DealSnapshot#release()}
+     */
+    DealSnapshot acquireSnapshot();
+
+    /**
+     * @return when the next scheduled refresh is expected, or null if unknown.
+     */
+    Instant getNextRefreshTime();
+
+    RefreshStats getRefreshStats();
 }
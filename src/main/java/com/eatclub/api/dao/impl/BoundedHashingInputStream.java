@@ -0,0 +1,71 @@
+package com.eatclub.api.dao.impl;
+
+import com.eatclub.api.util.HashUtils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream which hashes and counts the bytes passing through,
+ * and fails once more than the maximum payload size is read.
+ */
+class BoundedHashingInputStream extends FilterInputStream {
+
+    private final long maxBytes;
+    private long count;
+    private long hash = HashUtils.FNV_OFFSET;
+
+    BoundedHashingInputStream(InputStream in, long maxBytes) {
+        super(in);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            hash = HashUtils.update(hash, new byte[]{(byte) b}, 0, 1);
+            addCount(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        int n = in.read(bytes, offset, length);
+        if (n > 0) {
+            hash = HashUtils.update(hash, bytes, offset, n);
+            addCount(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes must be hashed too.
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        int read = read(buffer, 0, buffer.length);
+        return Math.max(read, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void addCount(int n) throws IOException {
+        count += n;
+        if (count > maxBytes) {
+            throw new IOException("Payload exceeds the maximum size of " + maxBytes + " bytes");
+        }
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getHash() {
+        return hash;
+    }
+}
@@ -1,94 +1,641 @@
 package com.eatclub.api.dao.impl;
 
-import com.alibaba.fastjson2.JSON;
 import com.eatclub.api.config.WebClientProperties;
 import com.eatclub.api.dao.IDealDao;
 import com.eatclub.api.model.domain.Restaurant;
-import com.eatclub.api.model.raw.DealDataResponse;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import com.eatclub.api.model.snapshot.RefreshStats;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Repository;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
 
 /**
  * DealDao
  * Keep refresh the Deal results
+ * Metrics, all recorded once per refresh or read on scrape, so none of them is on the request path:
+ * 1) deals.refresh.fetch: request to response headers, per attempt, by source and status.
+ * 2) deals.refresh.parse: parsing a read body into restaurants, only recorded when its hash changed.
+ * 3) deals.refresh.payload: decoded body bytes; deals.refresh.publish: merge, compile and swap.
+ * 4) deals.refresh.results: refreshes by result, as in {@link RefreshStats}.
+ * 5) deals.snapshot.*: restaurants, active deals, version and age of the served snapshot;
+ *    deals.source.age: time since the last successful refresh of a source, changed data or not.
  */
 @Repository
 public class DealDaoImpl implements IDealDao {
 
     private static final Logger log = LoggerFactory.getLogger(DealDaoImpl.class);
 
+    /**
+     * How many body buffers may be requested ahead of the JSON reader.
+     */
+    private static final int BUFFER_DEMAND = 16;
+
     private final WebClient webClient;
     private final WebClientProperties properties;
 
-    private final AtomicReference<List<Restaurant>> result =
-            new AtomicReference<>(Collections.emptyList());
+    private final AtomicReference<DealSnapshot> result =
+            new AtomicReference<>(DealSnapshot.empty());
+
+    /**
+     * The version of the last swapped in snapshot, the empty snapshot is version 0.
+     * An unchanged refresh does not use up a version, so a snapshot is always its previous version + 1.
+     */
+    private final AtomicLong snapshotVersion = new AtomicLong();
+
+    /**
+     * The upstream feeds, in merge order.
+     */
+    private final List<FeedSource> sources;
+    private final Retry retrySpec;
+
+    /**
+     * The refresh schedule of every source, disposed on shutdown.
+     */
+    private final Disposable.Composite schedules = Disposables.composite();
+
+    private final AtomicLong changedCount = new AtomicLong();
+    private final AtomicLong unchangedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+
+    /**
+     * When the served snapshot was swapped in, or loaded from the snapshot file; null while it is the empty one.
+     */
+    private volatile Instant publishedAt;
+
+    private final MeterRegistry meterRegistry;
+    private final Timer publishTimer;
+    /**
+     * The meters bound to this DAO, removed when it is closed, so a new DAO in the same registry registers its own.
+     */
+    private final List<Meter> meters = new ArrayList<>();
 
-    public DealDaoImpl(WebClient webClient, WebClientProperties props) {
+    public DealDaoImpl(WebClient webClient, WebClientProperties props, MeterRegistry meterRegistry) {
         this.webClient = webClient;
         this.properties = props;
+        this.meterRegistry = meterRegistry;
+        this.sources = props.resolveSources().stream()
+                .map(source -> new FeedSource(source, props.circuitBreaker()))
+                .toList();
+        this.publishTimer = register(Timer.builder("deals.refresh.publish")
+                .description("Merging the sources, compiling and swapping in the snapshot")
+                .register(meterRegistry));
+        registerGauges();
+        WebClientProperties.Retry retry = props.retry();
+        this.retrySpec = Retry.backoff(retry.maxRetries(), retry.minBackoff())
+                .maxBackoff(retry.maxBackoff())
+                .jitter(retry.jitter())
+                .filter(DealDaoImpl::isTransient)
+                .doBeforeRetry(signal -> log.warn("Refresh attempt {} failed, retrying. Error: {}",
+                        signal.totalRetries() + 1, signal.failure().getMessage()))
+                // Fail with the last error rather than a RetryExhaustedException.
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    /**
+     * Register the meters of the DAO and of its sources, once.
+     * Gauges and counters read their value on scrape.
+     */
+    private void registerGauges() {
+        register(Gauge.builder("deals.snapshot.restaurants", result, ref -> ref.get().getRestaurantCount())
+                .description("Restaurants in the served snapshot")
+                .register(meterRegistry));
+        register(Gauge.builder("deals.snapshot.deals", result, ref -> ref.get().getActiveDealCount())
+                .description("Active deals in the served snapshot")
+                .register(meterRegistry));
+        register(Gauge.builder("deals.snapshot.version", result, ref -> ref.get().getVersion())
+                .description("Version of the served snapshot")
+                .register(meterRegistry));
+        register(TimeGauge.builder("deals.snapshot.age", this, TimeUnit.MILLISECONDS,
+                        dao -> ageMillis(dao.publishedAt))
+                .description("Time since the served snapshot was swapped in")
+                .register(meterRegistry));
+        for (FeedSource source : sources) {
+            register(TimeGauge.builder("deals.source.age", source, TimeUnit.MILLISECONDS,
+                            feed -> ageMillis(feed.lastRefreshTime))
+                    .description("Time since the last successful refresh of the source")
+                    .tag("source", source.name())
+                    .register(meterRegistry));
+            source.parseTimer = register(Timer.builder("deals.refresh.parse")
+                    .description("Parsing a changed body into restaurants")
+                    .tag("source", source.name())
+                    .register(meterRegistry));
+            source.payloadSize = register(DistributionSummary.builder("deals.refresh.payload")
+                    .description("Decoded body of an upstream response")
+                    .baseUnit("bytes")
+                    .tag("source", source.name())
+                    .register(meterRegistry));
+        }
+        registerResultCounter("changed", changedCount);
+        registerResultCounter("unchanged", unchangedCount);
+        registerResultCounter("failed", failedCount);
+        registerResultCounter("skipped", skippedCount);
+    }
+
+    private void registerResultCounter(String result, AtomicLong count) {
+        register(FunctionCounter.builder("deals.refresh.results", count, AtomicLong::get)
+                .description("Refreshes by result")
+                .tag("result", result)
+                .register(meterRegistry));
+    }
+
+    private <T extends Meter> T register(T meter) {
+        meters.add(meter);
+        return meter;
+    }
+
+    /**
+     * @return the milliseconds since the time, NaN if there is no time yet
+     */
+    private static double ageMillis(Instant time) {
+        return time == null ? Double.NaN : Duration.between(time, Instant.now()).toMillis();
     }
 
     @PostConstruct
     public void init() {
-        log.info("DealDaoImpl initialized, starting first data refresh...");
-        refreshSnapshot();
+        // Startup does not wait for the upstream, requests are answered from the snapshot file, or the empty snapshot,
+        // until the first refresh lands.
+        loadSnapshotFile();
+        log.info("DealDaoImpl initialized, starting the refresh of {} sources in the background...", sources.size());
+        for (FeedSource source : sources) {
+            Duration interval = source.config.refreshInterval();
+            // Every interval, from now; a tick while the last refresh of the source still runs is skipped.
+            schedules.add(Flux.interval(Duration.ZERO, interval)
+                    .flatMap(tick -> {
+                        source.nextRefreshTime = Instant.now().plus(interval);
+                        return refreshSource(source);
+                    })
+                    .subscribe());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        schedules.dispose();
+        synchronized (this) {
+            for (FeedSource source : sources) {
+                source.release();
+            }
+        }
+        meters.forEach(meterRegistry::remove);
     }
 
     /**
-     * Refresh cache periodically, and keep the last result if it fails
+     * Refresh every source now, concurrently.
+     * @return completes once every refresh is done, it never errors
      */
-    @Scheduled(fixedDelayString = "${webclient.data.refresh-interval}")
-    public void refreshSnapshot() {
-        log.debug("Starting scheduled refresh from URL: {}", properties.url());
-        try {
-            // 1) Fetch remote JSON
-            String body = webClient.get()
-                    .uri(properties.url())
-                    .retrieve()
-                    .bodyToMono(String.class)
-                    .block();
-
-            if (body == null || body.isBlank()) {
-                log.warn("Received empty response from API, setting result to empty list");
-                result.set(Collections.emptyList());
-                return;
+    public Mono<Void> refresh() {
+        return Flux.fromIterable(sources).flatMap(this::refreshSource).then();
+    }
+
+    /**
+     * Refresh one source, and keep its last result if it fails.
+     * 1) At most one refresh of a source runs at a time, and none runs while its circuit is open.
+     * 2) Transient failures (5xx, 429, connection errors) are retried with jittered exponential backoff.
+     * 3) The whole refresh, every attempt and backoff included, must finish within the refresh-timeout of the source;
+     *    past it, the request and the body reader are cancelled.
+     * The request is conditional on the last upstream ETag / Last-Modified.
+     * The body is read and hashed first, if the upstream ignores the conditional headers,
+     * an unchanged hash skips parsing, merging, compiling and swapping.
+     * @return completes once the refresh is done, it never errors
+     */
+    private Mono<Void> refreshSource(FeedSource source) {
+        return Mono.defer(() -> {
+            if (!source.refreshing.compareAndSet(false, true)) {
+                markSkipped(source, "the previous refresh is still running");
+                return Mono.empty();
+            }
+            if (!source.circuitBreaker.tryAcquire()) {
+                source.refreshing.set(false);
+                markSkipped(source, "the circuit is open");
+                return Mono.empty();
             }
+            log.debug("Starting refresh of source {} from URL: {}", source.name(), source.config.url());
+            Duration timeout = source.config.refreshTimeout();
+            return fetch(source)
+                    .retryWhen(retrySpec)
+                    .timeout(timeout)
+                    // Publishing merges, compiles and writes the snapshot file, it must not run on the event loop,
+                    // where a 304 is received, nor hold up the other sources.
+                    .publishOn(Schedulers.boundedElastic())
+                    .doOnNext(response -> applyResponse(source, response))
+                    .doOnSuccess(response -> {
+                        source.circuitBreaker.onSuccess();
+                        source.lastRefreshTime = Instant.now();
+                    })
+                    .then()
+                    .onErrorResume(e -> {
+                        // Keep last good data of the source
+                        failedCount.incrementAndGet();
+                        source.circuitBreaker.onFailure();
+                        if (e instanceof TimeoutException) {
+                            log.error("Refresh of source {} did not finish within {}, keeping its last data",
+                                    source.name(), timeout);
+                        } else {
+                            log.error("Failed to refresh source {}, keeping its last data. Error: {}",
+                                    source.name(), e.getMessage(), e);
+                        }
+                        return Mono.empty();
+                    })
+                    // Cleared before the completion reaches the subscriber, so a finished refresh is really finished.
+                    .doOnTerminate(() -> source.refreshing.set(false))
+                    .doOnCancel(() -> source.refreshing.set(false));
+        });
+    }
+
+    /**
+     * One attempt: fetch and parse the feed of a source, conditional on its last response.
+     * Resubscribing makes a new request, which is how it is retried.
+     * Every source reads its body on its own boundedElastic thread, so the feeds are parsed in parallel.
+     */
+    private Mono<UpstreamResponse> fetch(FeedSource source) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return webClient.get()
+                    .uri(source.config.url())
+                    .headers(headers -> {
+                        if (source.lastETag != null) headers.set(HttpHeaders.IF_NONE_MATCH, source.lastETag);
+                        if (source.lastModified != null) headers.set(HttpHeaders.IF_MODIFIED_SINCE, source.lastModified);
+                    })
+                    .exchangeToMono(resp -> {
+                        Timer.builder("deals.refresh.fetch")
+                                .description("Upstream request to response headers")
+                                .tag("source", source.name())
+                                .tag("status", String.valueOf(resp.statusCode().value()))
+                                .register(meterRegistry)
+                                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        if (resp.statusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+                            return resp.releaseBody().thenReturn(UpstreamResponse.NOT_MODIFIED);
+                        }
+                        if (resp.statusCode().isError()) {
+                            return resp.<UpstreamResponse>createError();
+                        }
+                        HttpHeaders headers = resp.headers().asHttpHeaders();
+                        Flux<DataBuffer> body = resp.bodyToFlux(DataBuffer.class);
+                        // Reading the stream blocks, it must not run on the event loop which produces the buffers.
+                        // Closing the stream on cancel wakes the reader, so a deadline does not leave it waiting.
+                        return Mono.using(
+                                () -> DataBufferUtils.subscriberInputStream(body, BUFFER_DEMAND),
+                                raw -> Mono.fromCallable(() -> readFeed(source, raw, headers))
+                                        .subscribeOn(Schedulers.boundedElastic()),
+                                DealDaoImpl::closeQuietly);
+                    });
+        });
+    }
+
+    /**
+     * Only failures which may pass by themselves are retried, a bad or too large feed fails the same way again.
+     */
+    private static boolean isTransient(Throwable e) {
+        if (e instanceof WebClientResponseException response) {
+            return response.getStatusCode().is5xxServerError()
+                    || response.getStatusCode().value() == HttpStatus.TOO_MANY_REQUESTS.value();
+        }
+        // The request failed before a response, connection refused or read-timeout included.
+        return e instanceof WebClientRequestException;
+    }
 
-            log.debug("Received response body length: {} characters", body.length());
+    /**
+     * Keep the restaurants of a response as the last good data of its source, and publish them.
+     */
+    private void applyResponse(FeedSource source, UpstreamResponse response) {
+        // 1) Skip everything if the upstream says nothing changed, or the body is the same as last time
+        if (response.notModified()) {
+            markUnchanged(source, "upstream returned 304 Not Modified");
+            return;
+        }
+        log.debug("Received response body length of source {}: {} bytes", source.name(), response.bodyBytes());
+        if (response.bodyUnchanged()) {
+            markUnchanged(source, "body hash unchanged");
+            rememberValidators(source, response);
+            return;
+        }
+        if (response.restaurants().isEmpty()) {
+            log.warn("Received no restaurants from source {}, setting its data to empty list", source.name());
+        }
+        source.lastBodyHash = response.bodyHash();
+        rememberValidators(source, response);
+        publish(source, response.restaurants());
+    }
 
-            // 2) Parse JSON to DealDataResponse (fastjson2)
-            DealDataResponse resp = JSON.parseObject(body, DealDataResponse.class);
+    /**
+     * Keep the new data of a source, merge the last good data of every source, then compile and swap in its snapshot.
+     * Sources finishing together publish one after the other, each merge sees the latest data of all of them.
+     * The lock also guards the FeedBlocks of the sources.
+     */
+    private synchronized void publish(FeedSource changed, List<Restaurant> changedRestaurants) {
+        long start = System.nanoTime();
+        changed.replace(changedRestaurants);
+        List<Restaurant> restaurants = mergeSources(changed, changedRestaurants);
+
+        // Diff against the current snapshot and patch the minute index and the peak time,
+        // before swapping, so readers never see a half-built snapshot, then store it (AtomicReference)
+        DealSnapshot current = result.get();
+        // Publishing is serialized by the lock, the version is only taken once the snapshot is swapped in.
+        long version = snapshotVersion.get() + 1;
+        DealSnapshot snapshot = DealSnapshot.update(current, restaurants, version);
+        if (snapshot.getContentHash() == current.getContentHash()) {
+            // Same data in a different body, keep the current snapshot so its version and ETags stay valid.
+            snapshot.release();
+            markUnchanged(changed, "content hash unchanged");
+            return;
+        }
+        snapshotVersion.set(version);
+        swap(snapshot);
+        publishedAt = Instant.now();
+        changedCount.incrementAndGet();
+        publishTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        writeSnapshotFile(snapshot);
+        log.info("Successfully refreshed source {}, loaded {} restaurants, {} active deals, snapshot version {}",
+                changed.name(), snapshot.getRestaurantCount(), snapshot.getActiveDealCount(), snapshot.getVersion());
+        log.info("Snapshot diff: {}", snapshot.getDiff());
+        // The POJO estimate walks every restaurant and deal, it is only worth it when someone reads it.
+        if (log.isDebugEnabled()) {
+            log.debug("Snapshot heap estimate: {} KB of columns (vs {} KB as POJOs), {} KB of minute index, "
+                            + "{} KB of strings off-heap",
+                    snapshot.estimateDataHeapBytes() / 1024,
+                    DealSnapshot.estimatePojoHeapBytes(restaurants) / 1024,
+                    snapshot.estimateIndexHeapBytes() / 1024,
+                    snapshot.getDataOffHeapBytes() / 1024);
+        }
+    }
 
-            // 3) Store an in-memory snapshot (AtomicReference)
-            if (resp == null || resp.getRestaurants() == null) {
-                log.warn("Parsed response is null or has no restaurants, setting result to empty list");
-                result.set(Collections.emptyList());
-                return;
+    /**
+     * Publish a snapshot, and drop the reference of the DAO to the one it replaces:
+     * its off-heap strings are freed as soon as the last request reading it releases it.
+     */
+    private void swap(DealSnapshot snapshot) {
+        result.getAndSet(snapshot).release();
+    }
+
+    /**
+     * Warm start: take the data of every source from the snapshot file, and publish it before the first refresh.
+     * The file keeps its snapshot version, so versions keep increasing across restarts;
+     * a missing, corrupt or outdated file is ignored, and the service starts empty.
+     */
+    private synchronized void loadSnapshotFile() {
+        Path path = properties.snapshotFile();
+        if (path == null || !Files.isRegularFile(path)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            SnapshotFile.Contents contents = SnapshotFile.read(path);
+            for (FeedSource source : sources) {
+                ByteBuffer block = contents.sources().get(source.name());
+                if (block != null) {
+                    source.load(block);
+                }
             }
+            List<Restaurant> restaurants = mergeSources(null, null);
+            DealSnapshot snapshot = DealSnapshot.compile(restaurants, contents.version());
+            if (snapshot.getContentHash() != contents.contentHash()) {
+                // The sources were reconfigured since the file was written, it is not the data of that version.
+                snapshot.release();
+                snapshot = DealSnapshot.compile(restaurants, contents.version() + 1);
+            }
+            snapshotVersion.set(snapshot.getVersion());
+            swap(snapshot);
+            publishedAt = Instant.now();
+            log.info("Warm start from snapshot file {}: {} restaurants, {} active deals, snapshot version {}, in {} ms",
+                    path, snapshot.getRestaurantCount(), snapshot.getActiveDealCount(), snapshot.getVersion(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException | RuntimeException e) {
+            for (FeedSource source : sources) {
+                source.release();
+            }
+            log.warn("Ignoring snapshot file {}, starting empty. Error: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Keep the data of every source for the next start, called after each swap.
+     * A failure is only logged, the refresh itself succeeded.
+     */
+    private void writeSnapshotFile(DealSnapshot snapshot) {
+        Path path = properties.snapshotFile();
+        if (path == null) {
+            return;
+        }
+        Map<String, ByteBuffer> data = new LinkedHashMap<>();
+        for (FeedSource source : sources) {
+            if (source.block() != null) {
+                data.put(source.name(), source.block());
+            }
+        }
+        try {
+            SnapshotFile.write(path, new SnapshotFile.Contents(snapshot.getVersion(), snapshot.getContentHash(), data));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to write snapshot file {}, the next start waits for the upstream. Error: {}",
+                    path, e.getMessage());
+        }
+    }
 
-            // To avoid accidental external modification
-            List<Restaurant> restaurants = Collections.unmodifiableList(resp.getRestaurants());
-            result.set(restaurants);
-            log.info("Successfully refreshed data, loaded {} restaurants", restaurants.size());
+    /**
+     * Merge the last good restaurants of every source into one list, keyed by objectId.
+     * Sources are merged in the configured order, a restaurant whose objectId was already merged
+     * from an earlier source is dropped; restaurants without an objectId cannot be keyed, and are all kept.
+     * The blocks of the sources are decoded for the merge only, the POJOs are dropped with the list.
+     * @param changed            the source whose restaurants are already decoded, can be null
+     * @param changedRestaurants the restaurants of the changed source
+     */
+    private List<Restaurant> mergeSources(FeedSource changed, List<Restaurant> changedRestaurants) {
+        List<List<Restaurant>> lists = new ArrayList<>(sources.size());
+        int size = 0;
+        for (FeedSource source : sources) {
+            List<Restaurant> restaurants = source == changed ? changedRestaurants : source.restaurants();
+            lists.add(restaurants);
+            size += restaurants.size();
+        }
+        if (lists.size() == 1) {
+            return lists.get(0);
+        }
+        List<Restaurant> merged = new ArrayList<>(size);
+        Set<String> objectIds = new HashSet<>(size * 2);
+        int duplicates = 0;
+        for (List<Restaurant> restaurants : lists) {
+            for (Restaurant restaurant : restaurants) {
+                if (restaurant != null && restaurant.getObjectId() != null && !objectIds.add(restaurant.getObjectId())) {
+                    duplicates++;
+                    continue;
+                }
+                merged.add(restaurant);
+            }
+        }
+        if (duplicates > 0) {
+            log.warn("{} restaurants are in more than one source, kept the one of the first source", duplicates);
+        }
+        return merged;
+    }
 
-        } catch (Exception e) {
-            // Keep last good snapshot
-            log.error("Failed to refresh data from API, keeping last snapshot. Error: {}", e.getMessage(), e);
+    /**
+     * Read and hash the body, then parse it only if its hash differs from the last parsed body of the source.
+     * At most BUFFER_DEMAND buffers are requested ahead of the reader (backpressure),
+     * gzip bodies are inflated on the fly, and the payload is limited to max-payload-size,
+     * which also bounds the body held in memory until it is parsed.
+     */
+    private UpstreamResponse readFeed(FeedSource source, InputStream raw, HttpHeaders headers) throws IOException {
+        byte[] body;
+        long hash;
+        try (BoundedHashingInputStream in = new BoundedHashingInputStream(
+                decode(raw, headers), properties.maxPayloadSize().toBytes())) {
+            body = in.readAllBytes();
+            hash = in.getHash();
         }
+        source.payloadSize.record(body.length);
+        String etag = headers.getETag();
+        String lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+        if (source.lastBodyHash != null && source.lastBodyHash == hash) {
+            return new UpstreamResponse(false, true, Collections.emptyList(), hash, body.length, etag, lastModified);
+        }
+
+        List<Restaurant> restaurants = new ArrayList<>();
+        long start = System.nanoTime();
+        DealFeedReader.readRestaurants(new ByteArrayInputStream(body), restaurants::add);
+        source.parseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new UpstreamResponse(false, false, restaurants, hash, body.length, etag, lastModified);
+    }
+
+    /**
+     * The HTTP client inflates gzip itself when compression is on,
+     * this only handles a gzip body which still arrives encoded.
+     */
+    private InputStream decode(InputStream raw, HttpHeaders headers) throws IOException {
+        String encoding = headers.getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (encoding != null && encoding.trim().equalsIgnoreCase("gzip")) {
+            return new GZIPInputStream(raw, 8192);
+        }
+        return raw;
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException e) {
+            log.debug("Failed to close the upstream body: {}", e.getMessage());
+        }
+    }
+
+    private void markSkipped(FeedSource source, String reason) {
+        skippedCount.incrementAndGet();
+        log.debug("Refresh of source {} skipped ({}), keeping snapshot version {}",
+                source.name(), reason, result.get().getVersion());
+    }
+
+    private void markUnchanged(FeedSource source, String reason) {
+        unchangedCount.incrementAndGet();
+        log.debug("Data of source {} unchanged ({}), keeping snapshot version {}",
+                source.name(), reason, result.get().getVersion());
+    }
+
+    private void rememberValidators(FeedSource source, UpstreamResponse response) {
+        source.lastETag = response.etag();
+        source.lastModified = response.lastModified();
     }
 
     @Override
     public List<Restaurant> getRestaurants() {
-        List<Restaurant> restaurants = result.get();
-        log.debug("getRestaurants() called, returning {} restaurants", restaurants.size());
-        return restaurants;
+        DealSnapshot snapshot = acquireSnapshot();
+        try {
+            List<Restaurant> restaurants = snapshot.getRestaurants();
+            log.debug("getRestaurants() called, returning {} restaurants", restaurants.size());
+            return restaurants;
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    @Override
+    public DealSnapshot getSnapshot() {
+        return result.get();
+    }
+
+    @Override
+    public DealSnapshot acquireSnapshot() {
+        while (true) {
+            DealSnapshot snapshot = result.get();
+            // A swap may release it between the read and the retain, the next read returns the new one.
+            if (snapshot.retain()) {
+                return snapshot;
+            }
+        }
+    }
+
+    @Override
+    public Instant getNextRefreshTime() {
+        // The snapshot may change with the refresh of any source.
+        Instant next = null;
+        for (FeedSource source : sources) {
+            Instant time = source.nextRefreshTime;
+            if (time != null && (next == null || time.isBefore(next))) {
+                next = time;
+            }
+        }
+        return next;
+    }
+
+    @Override
+    public RefreshStats getRefreshStats() {
+        return new RefreshStats(changedCount.get(), unchangedCount.get(), failedCount.get(), skippedCount.get());
+    }
+
+    /**
+     * The parts of an upstream response needed by the refresh.
+     *
+     * @param notModified   the upstream answered 304
+     * @param bodyUnchanged the body has the same hash as the last parsed one, so it was not parsed
+     * @param restaurants   the restaurants read from the body, empty if it was not parsed
+     * @param bodyHash      hash of the decoded body bytes
+     * @param bodyBytes     length of the decoded body
+     * @param etag          the ETag header, can be null
+     * @param lastModified  the Last-Modified header, can be null
+     */
+    private record UpstreamResponse(boolean notModified, boolean bodyUnchanged, List<Restaurant> restaurants,
+                                    long bodyHash, long bodyBytes, String etag, String lastModified) {
+        private static final UpstreamResponse NOT_MODIFIED =
+                new UpstreamResponse(true, false, Collections.emptyList(), 0L, 0L, null, null);
     }
 }
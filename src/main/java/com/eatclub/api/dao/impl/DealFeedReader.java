@@ -0,0 +1,63 @@
+package com.eatclub.api.dao.impl;
+
+import com.alibaba.fastjson2.JSONException;
+import com.alibaba.fastjson2.JSONReader;
+import com.eatclub.api.model.domain.Restaurant;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Read the deal feed from a UTF-8 byte stream with a fastjson2 JSONReader,
+ * and hand every restaurant to the consumer as soon as it is read.
+ * The feed is never materialized as a String, and no DealDataResponse wrapper is built.
+ * Feed shape: { "restaurants": [ {...}, {...} ] }, other fields are skipped.
+ */
+class DealFeedReader {
+
+    private static final String RESTAURANTS_FIELD = "restaurants";
+
+    /**
+     * @param in the UTF-8 JSON stream, already decompressed
+     * @param consumer called once for every restaurant, in the feed order
+     * @return the number of restaurants read
+     */
+    static int readRestaurants(InputStream in, Consumer<Restaurant> consumer) {
+        int count = 0;
+        try (JSONReader reader = JSONReader.of(in, StandardCharsets.UTF_8)) {
+            // 1) An empty body means no restaurant.
+            if (reader.isEnd() || reader.nextIfNull()) {
+                return 0;
+            }
+            if (!reader.nextIfObjectStart()) {
+                throw new JSONException("The feed must be a JSON object");
+            }
+
+            // 2) Go through the top level fields, only the restaurants array is read.
+            while (!reader.nextIfObjectEnd()) {
+                String fieldName = reader.readFieldName();
+                if (!RESTAURANTS_FIELD.equals(fieldName)) {
+                    reader.skipValue();
+                    continue;
+                }
+                if (reader.nextIfNull()) {
+                    continue;
+                }
+                if (!reader.nextIfArrayStart()) {
+                    throw new JSONException("The restaurants field must be a JSON array");
+                }
+
+                // 3) Read one restaurant at a time.
+                while (!reader.nextIfArrayEnd()) {
+                    Restaurant restaurant = reader.read(Restaurant.class);
+                    if (restaurant != null) {
+                        consumer.accept(restaurant);
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
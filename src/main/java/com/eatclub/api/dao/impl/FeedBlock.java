@@ -0,0 +1,197 @@
+package com.eatclub.api.dao.impl;
+
+import com.eatclub.api.model.domain.Deal;
+import com.eatclub.api.model.domain.Restaurant;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The restaurants of one feed, encoded into an off-heap (direct) buffer, so the last good data of a source
+ * is a single buffer rather than a heap graph of Restaurant / Deal objects and their strings.
+ * Layout, big-endian:
+ * 1) String table: every distinct string once (length + UTF-8 bytes), fields below are indexes into it, -1 is null.
+ * 2) Restaurants: count, then per restaurant 6 fields and a deal count (-1 for no deal list),
+ *    each followed by its deals (9 fields).
+ * A block is decoded back into POJOs only to merge the sources, and they are dropped once the snapshot is built.
+ */
+final class FeedBlock {
+
+    private static final int NULL_STRING = -1;
+    private static final int NO_DEALS = -1;
+    private static final int RESTAURANT_FIELDS = 6;
+    private static final int DEAL_FIELDS = 9;
+
+    private FeedBlock() {
+    }
+
+    /**
+     * @param restaurants the restaurants to encode, null restaurants and deals are left out
+     * @param reuse       a block to write into if it is large enough, its data is overwritten; can be null
+     * @return the block, from position 0 to its limit; reuse itself if it was large enough,
+     *         otherwise a new direct buffer with a quarter of headroom, so a growing feed does not need
+     *         a new block on every refresh
+     */
+    static ByteBuffer encode(List<Restaurant> restaurants, ByteBuffer reuse) {
+        // 1) Collect the distinct strings in first use order, and size the block.
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        long size = 2 * Integer.BYTES;
+        for (Restaurant restaurant : restaurants) {
+            if (restaurant == null) continue;
+            size += intern(ids, strings, restaurant.getObjectId()) + intern(ids, strings, restaurant.getName())
+                    + intern(ids, strings, restaurant.getAddress1()) + intern(ids, strings, restaurant.getSuburb())
+                    + intern(ids, strings, restaurant.getOpen()) + intern(ids, strings, restaurant.getClose());
+            size += (RESTAURANT_FIELDS + 1) * Integer.BYTES;
+            if (restaurant.getDeals() == null) continue;
+            for (Deal deal : restaurant.getDeals()) {
+                if (deal == null) continue;
+                size += intern(ids, strings, deal.getObjectId()) + intern(ids, strings, deal.getDiscount())
+                        + intern(ids, strings, deal.getDineIn()) + intern(ids, strings, deal.getLightning())
+                        + intern(ids, strings, deal.getQtyLeft()) + intern(ids, strings, deal.getOpen())
+                        + intern(ids, strings, deal.getClose()) + intern(ids, strings, deal.getStart())
+                        + intern(ids, strings, deal.getEnd());
+                size += DEAL_FIELDS * Integer.BYTES;
+            }
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Feed too large for one block: " + size + " bytes");
+        }
+
+        // 2) Write into the reused block when it fits, a new direct buffer otherwise.
+        ByteBuffer block = reuse != null && reuse.capacity() >= size && !reuse.isReadOnly()
+                ? reuse.clear()
+                : ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, size + size / 4));
+        block.putInt(strings.size());
+        for (byte[] bytes : strings) {
+            block.putInt(bytes.length);
+            block.put(bytes);
+        }
+        int count = 0;
+        for (Restaurant restaurant : restaurants) {
+            if (restaurant != null) count++;
+        }
+        block.putInt(count);
+        for (Restaurant restaurant : restaurants) {
+            if (restaurant == null) continue;
+            putString(block, ids, restaurant.getObjectId());
+            putString(block, ids, restaurant.getName());
+            putString(block, ids, restaurant.getAddress1());
+            putString(block, ids, restaurant.getSuburb());
+            putString(block, ids, restaurant.getOpen());
+            putString(block, ids, restaurant.getClose());
+            if (restaurant.getDeals() == null) {
+                block.putInt(NO_DEALS);
+                continue;
+            }
+            int deals = 0;
+            for (Deal deal : restaurant.getDeals()) {
+                if (deal != null) deals++;
+            }
+            block.putInt(deals);
+            for (Deal deal : restaurant.getDeals()) {
+                if (deal == null) continue;
+                putString(block, ids, deal.getObjectId());
+                putString(block, ids, deal.getDiscount());
+                putString(block, ids, deal.getDineIn());
+                putString(block, ids, deal.getLightning());
+                putString(block, ids, deal.getQtyLeft());
+                putString(block, ids, deal.getOpen());
+                putString(block, ids, deal.getClose());
+                putString(block, ids, deal.getStart());
+                putString(block, ids, deal.getEnd());
+            }
+        }
+        return block.flip();
+    }
+
+    /**
+     * Read the restaurants of a block, the block itself is not modified.
+     * @throws IllegalArgumentException if the block is truncated or corrupt
+     */
+    static List<Restaurant> decode(ByteBuffer block) {
+        ByteBuffer in = block.duplicate();
+        try {
+            // 1) The string table.
+            String[] strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[in.getInt()];
+                in.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            // 2) The restaurants.
+            int count = in.getInt();
+            List<Restaurant> restaurants = new ArrayList<>(count);
+            for (int r = 0; r < count; r++) {
+                Restaurant restaurant = new Restaurant();
+                restaurant.setObjectId(getString(in, strings));
+                restaurant.setName(getString(in, strings));
+                restaurant.setAddress1(getString(in, strings));
+                restaurant.setSuburb(getString(in, strings));
+                restaurant.setOpen(getString(in, strings));
+                restaurant.setClose(getString(in, strings));
+                int dealCount = in.getInt();
+                if (dealCount != NO_DEALS) {
+                    List<Deal> deals = new ArrayList<>(dealCount);
+                    for (int d = 0; d < dealCount; d++) {
+                        Deal deal = new Deal();
+                        deal.setObjectId(getString(in, strings));
+                        deal.setDiscount(getString(in, strings));
+                        deal.setDineIn(getString(in, strings));
+                        deal.setLightning(getString(in, strings));
+                        deal.setQtyLeft(getString(in, strings));
+                        deal.setOpen(getString(in, strings));
+                        deal.setClose(getString(in, strings));
+                        deal.setStart(getString(in, strings));
+                        deal.setEnd(getString(in, strings));
+                        deals.add(deal);
+                    }
+                    restaurant.setDeals(deals);
+                }
+                restaurants.add(restaurant);
+            }
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException("Unexpected bytes at the end of the feed block");
+            }
+            return restaurants;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Truncated or corrupt feed block", e);
+        }
+    }
+
+    /**
+     * Copy a block into a new direct buffer, for a block which is a view of a larger buffer (a mapped file).
+     */
+    static ByteBuffer copy(ByteBuffer block) {
+        ByteBuffer copy = ByteBuffer.allocateDirect(block.remaining());
+        return copy.put(block.duplicate()).flip();
+    }
+
+    /**
+     * @return the bytes the string adds to the string table, 0 if it is null or already in it
+     */
+    private static int intern(Map<String, Integer> ids, List<byte[]> strings, String value) {
+        if (value == null || ids.containsKey(value)) {
+            return 0;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ids.put(value, strings.size());
+        strings.add(bytes);
+        return Integer.BYTES + bytes.length;
+    }
+
+    private static void putString(ByteBuffer block, Map<String, Integer> ids, String value) {
+        block.putInt(value == null ? NULL_STRING : ids.get(value));
+    }
+
+    private static String getString(ByteBuffer in, String[] strings) {
+        int id = in.getInt();
+        return id == NULL_STRING ? null : strings[id];
+    }
+}
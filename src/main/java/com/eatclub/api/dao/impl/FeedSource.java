@@ -0,0 +1,117 @@
+package com.eatclub.api.dao.impl;
+
+import com.eatclub.api.config.WebClientProperties;
+import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.util.DirectBufferUtils;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One upstream feed and its refresh state.
+ * Every source is refreshed on its own schedule, with its own deadline and circuit breaker,
+ * and keeps the restaurants of its last good response, so a failing source never wipes out the others.
+ * The restaurants are kept off-heap as a FeedBlock, in a direct buffer the source owns:
+ * 1) allocated by the first good response (or taken over from the snapshot file), with some headroom,
+ * 2) rewritten in place by every later response which fits in it,
+ * 3) replaced by a larger one only when the feed outgrows it, and the smaller one is freed at once,
+ * 4) freed when the data of the source is dropped.
+ * Freeing goes through {@link DirectBufferUtils}, where that is not possible the GC frees the buffer.
+ */
+final class FeedSource {
+
+    final WebClientProperties.Source config;
+    final RefreshCircuitBreaker circuitBreaker;
+
+    /**
+     * Set while a refresh of this source runs, so its refreshes never overlap.
+     */
+    final AtomicBoolean refreshing = new AtomicBoolean();
+
+    /**
+     * Validators of the last parsed response, only touched by the running refresh of this source.
+     */
+    String lastETag;
+    String lastModified;
+    Long lastBodyHash;
+
+    /**
+     * The FeedBlock of the last good response, null until the first one.
+     * The block is only touched while holding the lock of the DAO, see {@link DealDaoImpl},
+     * so it is never freed while it is read.
+     */
+    private ByteBuffer block;
+
+    /**
+     * When the next refresh of this source is expected.
+     */
+    volatile Instant nextRefreshTime;
+
+    /**
+     * When a refresh of this source last succeeded, changed data or not; null until the first one.
+     */
+    volatile Instant lastRefreshTime;
+
+    /**
+     * Meters of this source, registered once by the DAO.
+     */
+    Timer parseTimer;
+    DistributionSummary payloadSize;
+
+    FeedSource(WebClientProperties.Source config, WebClientProperties.CircuitBreaker circuitBreaker) {
+        this.config = config;
+        this.circuitBreaker = new RefreshCircuitBreaker(
+                circuitBreaker.failureThreshold(), circuitBreaker.openDuration());
+    }
+
+    String name() {
+        return config.name();
+    }
+
+    /**
+     * Replace the data of the source, the block of the data before is reused or freed.
+     * The new restaurants are already decoded, nothing reads the block while it is overwritten.
+     */
+    void replace(List<Restaurant> restaurants) {
+        ByteBuffer previous = block;
+        block = FeedBlock.encode(restaurants, previous);
+        if (previous != block) {
+            DirectBufferUtils.free(previous);
+        }
+    }
+
+    /**
+     * Take a block read from the snapshot file as the data of the source, the source owns it from now on.
+     */
+    void load(ByteBuffer block) {
+        DirectBufferUtils.free(this.block);
+        this.block = block;
+    }
+
+    /**
+     * Drop the data of the source, and free its block.
+     */
+    void release() {
+        DirectBufferUtils.free(block);
+        block = null;
+    }
+
+    /**
+     * @return the FeedBlock of the last good data, null if there is none
+     */
+    ByteBuffer block() {
+        return block;
+    }
+
+    /**
+     * @return the last good restaurants, decoded from the block; empty if there is none
+     */
+    List<Restaurant> restaurants() {
+        return block == null ? Collections.emptyList() : FeedBlock.decode(block);
+    }
+}
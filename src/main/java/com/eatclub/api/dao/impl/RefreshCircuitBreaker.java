@@ -0,0 +1,57 @@
+package com.eatclub.api.dao.impl;
+
+import java.time.Duration;
+
+/**
+ * A circuit breaker around the upstream refresh.
+ * 1) Closed: every refresh calls the upstream, failureThreshold consecutive failures open the circuit.
+ * 2) Open: refreshes are skipped without calling the upstream, until openDuration has passed.
+ * 3) Half open: one trial refresh is let through, a success closes the circuit, a failure opens it again.
+ * A refresh is one outcome, however many retries it made.
+ */
+class RefreshCircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    RefreshCircuitBreaker(int failureThreshold, Duration openDuration) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * @return true if a refresh may call the upstream now, an open circuit past openDuration turns half open
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+        }
+        return true;
+    }
+
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,144 @@
+package com.eatclub.api.dao.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The last good data of every source in a compact binary file, so a restart can serve it before the upstream answers.
+ * Layout, big-endian:
+ * 1) Header: magic "ECSN", format version, snapshot version, content hash of the merged restaurants.
+ * 2) Sources: count, then per source its name (length + UTF-8 bytes) and its FeedBlock (length + bytes).
+ * 3) Trailer: CRC32 of everything before it.
+ * The file is written to a temp file and moved over the old one, so a crash never leaves a half written file,
+ * and it is read through a read-only memory mapping, the blocks are copied straight from it.
+ */
+final class SnapshotFile {
+
+    static final int MAGIC = 0x4543534E;
+    /**
+     * Bump on any layout change, a file of another format version is ignored.
+     * 2: the sources are stored as FeedBlocks.
+     */
+    static final int FORMAT_VERSION = 2;
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES + 2 * Long.BYTES;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * @param version     the snapshot version of the data
+     * @param contentHash the content hash of the merged restaurants, checked when the file is read back
+     * @param sources     the FeedBlock of every source, by source name, in merge order
+     */
+    record Contents(long version, long contentHash, Map<String, ByteBuffer> sources) {
+    }
+
+    static void write(Path path, Contents contents) throws IOException {
+        // 1) Header and source count, the blocks are written as they are.
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + Integer.BYTES);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(contents.version()).putLong(contents.contentHash())
+                .putInt(contents.sources().size()).flip();
+
+        // 2) Write a temp file next to the target, and move it over the target once complete.
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                writeChecked(channel, crc, header);
+                for (Map.Entry<String, ByteBuffer> source : contents.sources().entrySet()) {
+                    byte[] name = source.getKey().getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer block = source.getValue().duplicate();
+                    ByteBuffer prefix = ByteBuffer.allocate(2 * Integer.BYTES + name.length);
+                    prefix.putInt(name.length).put(name).putInt(block.remaining()).flip();
+                    writeChecked(channel, crc, prefix);
+                    writeChecked(channel, crc, block);
+                }
+                // The trailer is not part of its own checksum.
+                ByteBuffer trailer = ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).flip();
+                while (trailer.hasRemaining()) {
+                    channel.write(trailer);
+                }
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return the contents of the file, every block is copied into its own direct buffer
+     * @throws IOException if the file cannot be read, is not a snapshot file of this format version, or is corrupt
+     */
+    static Contents read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + 2 * Integer.BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Not a snapshot file, size " + size + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            // 1) Check the trailer before trusting any length in the file.
+            int end = (int) size - Integer.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(0, end));
+            if ((int) crc.getValue() != buffer.getInt(end)) {
+                throw new IOException("Snapshot file checksum mismatch");
+            }
+            ByteBuffer in = buffer.slice(0, end);
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file");
+            }
+            int formatVersion = in.getInt();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot file format version " + formatVersion);
+            }
+            long version = in.getLong();
+            long contentHash = in.getLong();
+
+            // 2) The sources.
+            try {
+                int sourceCount = in.getInt();
+                Map<String, ByteBuffer> sources = new LinkedHashMap<>();
+                for (int s = 0; s < sourceCount; s++) {
+                    byte[] name = new byte[in.getInt()];
+                    in.get(name);
+                    int length = in.getInt();
+                    sources.put(new String(name, StandardCharsets.UTF_8),
+                            FeedBlock.copy(in.slice(in.position(), length)));
+                    in.position(in.position() + length);
+                }
+                if (in.hasRemaining()) {
+                    throw new IOException("Unexpected bytes at the end of the snapshot file");
+                }
+                return new Contents(version, contentHash, sources);
+            } catch (RuntimeException e) {
+                throw new IOException("Truncated or corrupt snapshot file", e);
+            }
+        }
+    }
+
+    private static void writeChecked(FileChannel channel, CRC32 crc, ByteBuffer buffer) throws IOException {
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.eatclub.api.dto;
+
+import java.util.List;
+
+/**
+ * Body of POST /deals/batch: the times to query, and the filters applied to every time.
+ */
+public class BatchDealRequest {
+
+    private List<String> times;
+    private String suburb;
+    private Boolean dineIn;
+    private Boolean lightning;
+    private Integer minDiscount;
+
+    public BatchDealRequest() {}
+
+    public List<String> getTimes() {
+        return times;
+    }
+
+    public void setTimes(List<String> times) {
+        this.times = times;
+    }
+
+    public String getSuburb() {
+        return suburb;
+    }
+
+    public void setSuburb(String suburb) {
+        this.suburb = suburb;
+    }
+
+    public Boolean getDineIn() {
+        return dineIn;
+    }
+
+    public void setDineIn(Boolean dineIn) {
+        this.dineIn = dineIn;
+    }
+
+    public Boolean getLightning() {
+        return lightning;
+    }
+
+    public void setLightning(Boolean lightning) {
+        this.lightning = lightning;
+    }
+
+    public Integer getMinDiscount() {
+        return minDiscount;
+    }
+
+    public void setMinDiscount(Integer minDiscount) {
+        this.minDiscount = minDiscount;
+    }
+}
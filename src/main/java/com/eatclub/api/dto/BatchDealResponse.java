@@ -0,0 +1,47 @@
+package com.eatclub.api.dto;
+
+import java.util.List;
+
+/**
+ * Response of POST /deals/batch, every time is evaluated against the same snapshot.
+ * Each deal is listed once in deals, the results refer to it by its position, so a deal active
+ * at several times of the batch is not repeated.
+ */
+public class BatchDealResponse {
+
+    private List<DealDto> deals;
+    private List<BatchTimeResult> results;
+    private long snapshotVersion;
+
+    public BatchDealResponse() {}
+
+    public BatchDealResponse(List<DealDto> deals, List<BatchTimeResult> results, long snapshotVersion) {
+        this.deals = deals;
+        this.results = results;
+        this.snapshotVersion = snapshotVersion;
+    }
+
+    public List<DealDto> getDeals() {
+        return deals;
+    }
+
+    public void setDeals(List<DealDto> deals) {
+        this.deals = deals;
+    }
+
+    public List<BatchTimeResult> getResults() {
+        return results;
+    }
+
+    public void setResults(List<BatchTimeResult> results) {
+        this.results = results;
+    }
+
+    public long getSnapshotVersion() {
+        return snapshotVersion;
+    }
+
+    public void setSnapshotVersion(long snapshotVersion) {
+        this.snapshotVersion = snapshotVersion;
+    }
+}
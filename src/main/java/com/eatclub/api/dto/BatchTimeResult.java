@@ -0,0 +1,33 @@
+package com.eatclub.api.dto;
+
+/**
+ * The deals active at one time of a batch, as positions in BatchDealResponse.deals.
+ */
+public class BatchTimeResult {
+
+    private String time;
+    private int[] deals;
+
+    public BatchTimeResult() {}
+
+    public BatchTimeResult(String time, int[] deals) {
+        this.time = time;
+        this.deals = deals;
+    }
+
+    public String getTime() {
+        return time;
+    }
+
+    public void setTime(String time) {
+        this.time = time;
+    }
+
+    public int[] getDeals() {
+        return deals;
+    }
+
+    public void setDeals(int[] deals) {
+        this.deals = deals;
+    }
+}
@@ -1,9 +1,16 @@
 package com.eatclub.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.List;
 
 public class DealResponse {
     private List<DealDto> deals;
+    /**
+     * The cursor of the next page, only when paged and there are more deals.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
 
     public DealResponse() {}
 
@@ -11,6 +18,11 @@ public class DealResponse {
         this.deals = deals;
     }
 
+    public DealResponse(List<DealDto> deals, String nextCursor) {
+        this.deals = deals;
+        this.nextCursor = nextCursor;
+    }
+
     public List<DealDto> getDeals() {
         return deals;
     }
@@ -18,4 +30,12 @@ public class DealResponse {
     public void setDeals(List<DealDto> deals) {
         this.deals = deals;
     }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
 }
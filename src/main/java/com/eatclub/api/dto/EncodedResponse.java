@@ -0,0 +1,32 @@
+package com.eatclub.api.dto;
+
+import com.eatclub.api.util.ContentEncodingUtils;
+
+/**
+ * A response body which is already encoded to JSON bytes.
+ *
+ * @param body      the encoded JSON
+ * @param itemCount how many items (e.g. deals) are in the body
+ * @param gzipBody  the same body compressed with gzip, only for bodies cached per snapshot; null if there is none
+ */
+public record EncodedResponse(byte[] body, int itemCount, byte[] gzipBody) {
+
+    public EncodedResponse(byte[] body, int itemCount) {
+        this(body, itemCount, null);
+    }
+
+    /**
+     * @return the same body with its gzip variant, for a body which is about to be cached
+     */
+    public EncodedResponse withGzip() {
+        return new EncodedResponse(body, itemCount, ContentEncodingUtils.gzip(body));
+    }
+
+    /**
+     * @return the cached gzip body, or the body compressed now if it bypassed the cache,
+     * which only a request still holding an older snapshot does
+     */
+    public byte[] gzipped() {
+        return gzipBody != null ? gzipBody : ContentEncodingUtils.gzip(body);
+    }
+}
@@ -0,0 +1,50 @@
+package com.eatclub.api.dto;
+
+/**
+ * The active deal count of every minute of the day, run-length encoded.
+ * runs[i] is [startMinute, activeDeals]: from startMinute until the start of the next run
+ * (or the end of the day), activeDeals deals are active every minute.
+ * Weighted by qtyLeft, the second value is the total qtyLeft of the active deals instead.
+ */
+public class HistogramResponse {
+
+    private int[][] runs;
+    /**
+     * "count" or "qtyLeft".
+     */
+    private String weight;
+    private long snapshotVersion;
+
+    public HistogramResponse() {
+    }
+
+    public HistogramResponse(int[][] runs, String weight, long snapshotVersion) {
+        this.runs = runs;
+        this.weight = weight;
+        this.snapshotVersion = snapshotVersion;
+    }
+
+    public int[][] getRuns() {
+        return runs;
+    }
+
+    public void setRuns(int[][] runs) {
+        this.runs = runs;
+    }
+
+    public String getWeight() {
+        return weight;
+    }
+
+    public void setWeight(String weight) {
+        this.weight = weight;
+    }
+
+    public long getSnapshotVersion() {
+        return snapshotVersion;
+    }
+
+    public void setSnapshotVersion(long snapshotVersion) {
+        this.snapshotVersion = snapshotVersion;
+    }
+}
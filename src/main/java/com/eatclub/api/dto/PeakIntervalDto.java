@@ -0,0 +1,60 @@
+package com.eatclub.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A time period and the number of deals active during it.
+ * Boundary: [start, end)
+ */
+public class PeakIntervalDto {
+
+    private String start;
+    private String end;
+    private int concurrentDeals;
+    /**
+     * The total qtyLeft of the deals active during the period, only when weighted by qtyLeft.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer qtyLeft;
+
+    public PeakIntervalDto() {
+    }
+
+    public PeakIntervalDto(String start, String end, int concurrentDeals) {
+        this.start = start;
+        this.end = end;
+        this.concurrentDeals = concurrentDeals;
+    }
+
+    public String getStart() {
+        return start;
+    }
+
+    public void setStart(String start) {
+        this.start = start;
+    }
+
+    public String getEnd() {
+        return end;
+    }
+
+    public void setEnd(String end) {
+        this.end = end;
+    }
+
+    public int getConcurrentDeals() {
+        return concurrentDeals;
+    }
+
+    public void setConcurrentDeals(int concurrentDeals) {
+        this.concurrentDeals = concurrentDeals;
+    }
+
+    public Integer getQtyLeft() {
+        return qtyLeft;
+    }
+
+    public void setQtyLeft(Integer qtyLeft) {
+        this.qtyLeft = qtyLeft;
+    }
+}
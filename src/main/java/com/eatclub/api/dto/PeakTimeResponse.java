@@ -1,9 +1,31 @@
 package com.eatclub.api.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
 public class PeakTimeResponse {
 
     private String peakTimeStart;
     private String peakTimeEnd;
+    private int maxConcurrentDeals;
+    private long snapshotVersion;
+    /**
+     * The total qtyLeft of the deals active at the peak, only when weighted by qtyLeft.
+     * The peak is then the period with the most quantity left, and maxConcurrentDeals is the deal count during it.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer maxQtyLeft;
+    /**
+     * Every period at the max deal count, only when top is asked for.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<PeakIntervalDto> peaks;
+    /**
+     * The highest local peaks, only when top is asked for.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<PeakIntervalDto> plateaus;
 
     public PeakTimeResponse() {
     }
@@ -13,6 +35,13 @@ public class PeakTimeResponse {
         this.peakTimeEnd = peakTimeEnd;
     }
 
+    public PeakTimeResponse(String peakTimeStart, String peakTimeEnd, int maxConcurrentDeals, long snapshotVersion) {
+        this.peakTimeStart = peakTimeStart;
+        this.peakTimeEnd = peakTimeEnd;
+        this.maxConcurrentDeals = maxConcurrentDeals;
+        this.snapshotVersion = snapshotVersion;
+    }
+
     public String getPeakTimeStart() {
         return peakTimeStart;
     }
@@ -28,4 +57,44 @@ public class PeakTimeResponse {
     public void setPeakTimeEnd(String peakTimeEnd) {
         this.peakTimeEnd = peakTimeEnd;
     }
+
+    public int getMaxConcurrentDeals() {
+        return maxConcurrentDeals;
+    }
+
+    public void setMaxConcurrentDeals(int maxConcurrentDeals) {
+        this.maxConcurrentDeals = maxConcurrentDeals;
+    }
+
+    public long getSnapshotVersion() {
+        return snapshotVersion;
+    }
+
+    public void setSnapshotVersion(long snapshotVersion) {
+        this.snapshotVersion = snapshotVersion;
+    }
+
+    public Integer getMaxQtyLeft() {
+        return maxQtyLeft;
+    }
+
+    public void setMaxQtyLeft(Integer maxQtyLeft) {
+        this.maxQtyLeft = maxQtyLeft;
+    }
+
+    public List<PeakIntervalDto> getPeaks() {
+        return peaks;
+    }
+
+    public void setPeaks(List<PeakIntervalDto> peaks) {
+        this.peaks = peaks;
+    }
+
+    public List<PeakIntervalDto> getPlateaus() {
+        return plateaus;
+    }
+
+    public void setPlateaus(List<PeakIntervalDto> plateaus) {
+        this.plateaus = plateaus;
+    }
 }
@@ -0,0 +1,89 @@
+package com.eatclub.api.dto;
+
+/**
+ * RestaurantDto, the restaurant fields and how many deals it has.
+ */
+public class RestaurantDto {
+
+    private String objectId;
+    private String name;
+    private String address1;
+    private String suburb;
+    private String open;
+    private String close;
+    private int dealCount;
+
+    public RestaurantDto() {}
+
+    public RestaurantDto(String objectId,
+                         String name,
+                         String address1,
+                         String suburb,
+                         String open,
+                         String close,
+                         int dealCount) {
+        this.objectId = objectId;
+        this.name = name;
+        this.address1 = address1;
+        this.suburb = suburb;
+        this.open = open;
+        this.close = close;
+        this.dealCount = dealCount;
+    }
+
+    public String getObjectId() {
+        return objectId;
+    }
+
+    public void setObjectId(String objectId) {
+        this.objectId = objectId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getAddress1() {
+        return address1;
+    }
+
+    public void setAddress1(String address1) {
+        this.address1 = address1;
+    }
+
+    public String getSuburb() {
+        return suburb;
+    }
+
+    public void setSuburb(String suburb) {
+        this.suburb = suburb;
+    }
+
+    public String getOpen() {
+        return open;
+    }
+
+    public void setOpen(String open) {
+        this.open = open;
+    }
+
+    public String getClose() {
+        return close;
+    }
+
+    public void setClose(String close) {
+        this.close = close;
+    }
+
+    public int getDealCount() {
+        return dealCount;
+    }
+
+    public void setDealCount(int dealCount) {
+        this.dealCount = dealCount;
+    }
+}
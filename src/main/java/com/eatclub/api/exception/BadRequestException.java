@@ -0,0 +1,19 @@
+package com.eatclub.api.exception;
+
+/**
+ * A request parameter is invalid, answered with 400 and the error code.
+ * It is a client error, so no stack trace is filled in.
+ */
+public class BadRequestException extends RuntimeException {
+
+    private final String code;
+
+    public BadRequestException(String code, String message) {
+        super(message, null, false, false);
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+}
@@ -3,13 +3,19 @@ package com.eatclub.api.exception;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.bind.MissingServletRequestParameterException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 /**
  * Global exception handler for the application
  * Handles all exceptions and returns standardized API error responses
+ * Errors are always JSON, also for the NDJSON stream of /deals, so the content type is set explicitly
+ * instead of being negotiated from the Accept header.
  */
 @RestControllerAdvice
 public class GlobalExceptionHandler {
@@ -18,10 +24,43 @@ public class GlobalExceptionHandler {
 
     //TODO can add multiple exception handlers, not enough time...
 
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<ApiError> handleBadRequest(BadRequestException e) {
+        log.info("Bad request: {}", e.getMessage());
+        return error(HttpStatus.BAD_REQUEST, e.getCode(), e.getMessage());
+    }
+
+    @ExceptionHandler(NotFoundException.class)
+    public ResponseEntity<ApiError> handleNotFound(NotFoundException e) {
+        log.info("Not found: {}", e.getMessage());
+        return error(HttpStatus.NOT_FOUND, e.getCode(), e.getMessage());
+    }
+
+    @ExceptionHandler(MissingServletRequestParameterException.class)
+    public ResponseEntity<ApiError> handleMissingParameter(MissingServletRequestParameterException e) {
+        log.info("Bad request: {}", e.getMessage());
+        return error(HttpStatus.BAD_REQUEST, "MISSING_PARAMETER", "Parameter " + e.getParameterName() + " is required.");
+    }
+
+    @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+    public ResponseEntity<ApiError> handleTypeMismatch(MethodArgumentTypeMismatchException e) {
+        log.info("Bad request: {}", e.getMessage());
+        return error(HttpStatus.BAD_REQUEST, "INVALID_PARAMETER", "Invalid " + e.getName() + ": " + e.getValue());
+    }
+
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    public ResponseEntity<ApiError> handleUnreadableBody(HttpMessageNotReadableException e) {
+        log.info("Bad request: {}", e.getMessage());
+        return error(HttpStatus.BAD_REQUEST, "INVALID_BODY", "The request body is missing or is not valid JSON.");
+    }
+
     @ExceptionHandler(Exception.class)
-    @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
-    public ApiError handleOther(Exception e) {
+    public ResponseEntity<ApiError> handleOther(Exception e) {
         log.error("Unhandled exception occurred: {}", e.getMessage(), e);
-        return new ApiError("INTERNAL_ERROR", "Something went wrong.");
+        return error(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL_ERROR", "Something went wrong.");
+    }
+
+    private ResponseEntity<ApiError> error(HttpStatus status, String code, String message) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(new ApiError(code, message));
     }
 }
@@ -0,0 +1,19 @@
+package com.eatclub.api.exception;
+
+/**
+ * The requested restaurant or deal is not in the current snapshot, answered with 404 and the error code.
+ * It is a client error, so no stack trace is filled in.
+ */
+public class NotFoundException extends RuntimeException {
+
+    private final String code;
+
+    public NotFoundException(String code, String message) {
+        super(message, null, false, false);
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,121 @@
+package com.eatclub.api.model.snapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The per-minute active deal count (or total weight) of a snapshot, read once into runs of equal count.
+ * Boundary of every interval: [startMinute, endMinute)
+ * 1) runs: the run-length encoded curve, every minute of the day is in exactly one run.
+ * 2) peaks: every run at the max count, in time order, the first one is the peak time.
+ * 3) plateaus: every run higher than the runs next to it (a local peak), highest first, then earliest first.
+ * It is built once per snapshot, so the endpoints only read it.
+ */
+public final class ConcurrencyProfile {
+
+    private final int[] runStarts;
+    private final int[] runCounts;
+    private final List<PeakTime> peaks;
+    private final List<PeakTime> plateaus;
+
+    ConcurrencyProfile(int[] concurrency) {
+        // 1) Run-length encode the curve.
+        int[] starts = new int[concurrency.length];
+        int[] counts = new int[concurrency.length];
+        int runs = 0;
+        for (int m = 0; m < concurrency.length; m++) {
+            if (runs == 0 || counts[runs - 1] != concurrency[m]) {
+                starts[runs] = m;
+                counts[runs] = concurrency[m];
+                runs++;
+            }
+        }
+        this.runStarts = Arrays.copyOf(starts, runs);
+        this.runCounts = Arrays.copyOf(counts, runs);
+
+        // 2) The max count, and the runs at the max count.
+        int max = 0;
+        for (int count : runCounts) {
+            max = Math.max(max, count);
+        }
+        List<PeakTime> peakList = new ArrayList<>();
+        List<PeakTime> plateauList = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            if (runCounts[i] == 0) continue;
+            PeakTime run = new PeakTime(runStarts[i], runEnd(i, concurrency.length), runCounts[i]);
+            if (runCounts[i] == max) {
+                peakList.add(run);
+            }
+            // 3) A plateau is higher than both neighbours, the day starts and ends at 0.
+            boolean higherThanPrevious = i == 0 || runCounts[i - 1] < runCounts[i];
+            boolean higherThanNext = i == runs - 1 || runCounts[i + 1] < runCounts[i];
+            if (higherThanPrevious && higherThanNext) {
+                plateauList.add(run);
+            }
+        }
+        plateauList.sort(Comparator.comparingInt(PeakTime::maxConcurrentDeals).reversed()
+                .thenComparingInt(PeakTime::startMinute));
+        this.peaks = Collections.unmodifiableList(peakList);
+        this.plateaus = Collections.unmodifiableList(plateauList);
+    }
+
+    private int runEnd(int run, int minutes) {
+        return run + 1 < runStarts.length ? runStarts[run + 1] : minutes;
+    }
+
+    /**
+     * Number of runs of the encoded curve.
+     */
+    public int getRunCount() {
+        return runStarts.length;
+    }
+
+    /**
+     * @return the first minute of a run, runs are in time order and the first run starts at 0
+     */
+    public int getRunStart(int run) {
+        return runStarts[run];
+    }
+
+    /**
+     * @return the active deal count of every minute of a run
+     */
+    public int getRunValue(int run) {
+        return runCounts[run];
+    }
+
+    /**
+     * @param minuteOfDay should between 0~1439
+     * @return the value of the curve at a minute
+     */
+    public int getValueAt(int minuteOfDay) {
+        int run = Arrays.binarySearch(runStarts, minuteOfDay);
+        return runCounts[run >= 0 ? run : -run - 2];
+    }
+
+    /**
+     * The first peak interval, PeakTime.NONE if there is no active deal.
+     */
+    public PeakTime getPeakTime() {
+        return peaks.isEmpty() ? PeakTime.NONE : peaks.get(0);
+    }
+
+    /**
+     * Every interval at the max count, in time order.
+     */
+    public List<PeakTime> getPeaks() {
+        return peaks;
+    }
+
+    /**
+     * The highest local peaks.
+     * @param top how many, at least 1
+     * @return at most top plateaus, highest first, then earliest first
+     */
+    public List<PeakTime> getTopPlateaus(int top) {
+        return plateaus.subList(0, Math.min(top, plateaus.size()));
+    }
+}
@@ -0,0 +1,40 @@
+package com.eatclub.api.model.snapshot;
+
+import com.eatclub.api.util.HashUtils;
+
+import java.util.Locale;
+
+/**
+ * Server-side filters of the deals, a null field means no filter on it.
+ *
+ * @param suburb      the restaurant suburb, compared ignoring case and surrounding spaces
+ * @param dineIn      true means dineIn is "true", false means it is not
+ * @param lightning   true means lightning is "true", false means it is not
+ * @param minDiscount the discount must be at least this, a discount which is not a number counts as 0
+ */
+public record DealFilter(String suburb, Boolean dineIn, Boolean lightning, Integer minDiscount) {
+
+    public static final DealFilter NONE = new DealFilter(null, null, null, null);
+
+    public DealFilter {
+        suburb = suburb == null ? null : normalizeSuburb(suburb);
+    }
+
+    public boolean isEmpty() {
+        return suburb == null && dineIn == null && lightning == null && minDiscount == null;
+    }
+
+    /**
+     * Hash of the filter, used to tell the ETags of different filters apart.
+     */
+    public long hash() {
+        long hash = HashUtils.update(HashUtils.FNV_OFFSET, suburb);
+        hash = HashUtils.update(hash, dineIn == null ? null : dineIn.toString());
+        hash = HashUtils.update(hash, lightning == null ? null : lightning.toString());
+        return HashUtils.update(hash, minDiscount == null ? null : minDiscount.toString());
+    }
+
+    static String normalizeSuburb(String suburb) {
+        return suburb.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,27 @@
+package com.eatclub.api.model.snapshot;
+
+import com.eatclub.api.util.HashUtils;
+
+/**
+ * A normalized /deals query, a single minute m is the range [m, m + 1).
+ *
+ * @param fromMinute range start (include), between 0~1439
+ * @param toMinute   range end (not include), between fromMinute+1~1440
+ * @param filter     the filter, DealFilter.NONE for all deals
+ * @param sort       the order, null for the API order
+ */
+public record DealQuery(int fromMinute, int toMinute, DealFilter filter, DealSort sort) {
+
+    public boolean isRange() {
+        return toMinute != fromMinute + 1;
+    }
+
+    /**
+     * Hash of the query, a page cursor is only valid for the query it came from.
+     */
+    public long hash() {
+        long hash = HashUtils.update(filter.hash(), Integer.toString(fromMinute));
+        hash = HashUtils.update(hash, Integer.toString(toMinute));
+        return HashUtils.update(hash, sort == null ? null : sort.getParameter());
+    }
+}
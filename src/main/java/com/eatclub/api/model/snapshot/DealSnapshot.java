@@ -0,0 +1,887 @@
+package com.eatclub.api.model.snapshot;
+
+import com.eatclub.api.model.domain.Deal;
+import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.util.HashUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable, compiled view of the restaurants fetched from the API.
+ * The restaurants and deals are kept in columns (see {@link SnapshotColumns}): a restaurant is a row number,
+ * a deal is a slot number, and the fields are read through the getters below.
+ * The active window of every deal is resolved once into start/end minutes, qtyLeft into an int,
+ * dineIn/lightning into bits, and the strings are deduplicated by a dictionary.
+ * Besides the columns, it keeps a 1440-slot index: for each minute of the day, the deals active at that minute,
+ * and the active deals ordered by start minute, for time range queries.
+ * The per-minute deal count, its run-length encoding and the peak times are calculated at the same time,
+ * and the restaurants and deals are hash indexed by objectId for single lookups.
+ * It is built once per refresh, so queries become a bucket lookup.
+ * A new snapshot can also be patched from the previous one, see {@link #update(DealSnapshot, List, long)}.
+ * Some strings are kept off-heap, so a snapshot is reference counted: its owner holds one reference,
+ * every reader retains one for as long as it reads, and the last release frees the off-heap strings.
+ */
+public final class DealSnapshot {
+
+    public static final int MINUTES_OF_DAY = 24 * 60;
+
+    /**
+     * Returned by findRestaurant and findDeal when there is no such objectId.
+     */
+    public static final int NOT_FOUND = ObjectIdIndex.NOT_FOUND;
+
+    /**
+     * Returned by the paged forEachActiveDeal after the last page.
+     */
+    public static final int END_OF_PAGES = -1;
+
+    static final int[] EMPTY_BUCKET = new int[0];
+
+    /**
+     * Increase for every compiled snapshot, so callers know which data a result came from.
+     */
+    private final long version;
+    /**
+     * The version of the snapshot this one was patched from, -1 if it was compiled from scratch.
+     */
+    private final long previousVersion;
+    /**
+     * Hash of every field of every restaurant and deal, the same data always gets the same hash.
+     */
+    private final long contentHash;
+    private final SnapshotColumns columns;
+    /**
+     * minuteIndex[m] holds the slots of the deals active at minute m, in ascending order.
+     */
+    private final int[][] minuteIndex;
+    /**
+     * concurrency[m] is the number of deals active at minute m.
+     */
+    private final int[] concurrency;
+    /**
+     * The slots of the active deals, ordered by start minute, then slot.
+     */
+    private final int[] startOrder;
+    /**
+     * startOffsets[m] is the position in startOrder of the first deal starting at minute m or later, 0~1440.
+     */
+    private final int[] startOffsets;
+    private final FacetIndex facets;
+    /**
+     * Restaurant objectId to row, and deal objectId to slot.
+     */
+    private final ObjectIdIndex restaurantIndex;
+    private final ObjectIdIndex dealIndex;
+    /**
+     * The bitset of the deals active at every minute, built the first time a minute is filtered.
+     */
+    private final AtomicReferenceArray<long[]> minuteBits;
+    /**
+     * The slots ranked by every DealSort, built the first time a page is sorted that way.
+     */
+    private final AtomicReferenceArray<SortedOrder> sortedOrders;
+    private final ConcurrencyProfile profile;
+    /**
+     * Built the first time a weighted or filtered peak time is asked for.
+     */
+    private volatile WeightedPeakIndex weightedPeaks;
+    private final SnapshotDiff diff;
+    /**
+     * The minutes whose bucket differs from the previous snapshot, null means all of them.
+     */
+    private final BitSet changedMinutes;
+    /**
+     * One for the owner of the snapshot, plus one per reader which retained it; 0 once released.
+     */
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    /**
+     * @param changes what was patched from the previous snapshot, null if compiled from scratch.
+     *                The start order, the facets and the objectId indexes of the previous snapshot are then
+     *                patched for the changed rows and slots, instead of being built again.
+     */
+    DealSnapshot(long version, SnapshotPatcher.Changes changes, long contentHash, SnapshotColumns columns,
+                 int[][] minuteIndex, int[] concurrency, SnapshotDiff diff, BitSet changedMinutes) {
+        this.version = version;
+        this.previousVersion = changes == null ? -1L : changes.previous().getVersion();
+        this.contentHash = contentHash;
+        this.columns = columns.freeze();
+        this.minuteIndex = minuteIndex;
+        this.concurrency = concurrency;
+        this.startOffsets = new int[MINUTES_OF_DAY + 1];
+        if (changes == null) {
+            this.startOrder = buildStartOrder(this.columns, startOffsets);
+            this.facets = new FacetIndex(this.columns);
+        } else {
+            this.startOrder = patchStartOrder(changes.previous(), this.columns, changes.slots(), startOffsets);
+            this.facets = changes.previous().facets.patch(this.columns, changes.slots());
+        }
+        ObjectIdIndex restaurants = null;
+        ObjectIdIndex deals = null;
+        if (changes != null) {
+            SnapshotColumns old = changes.previous().columns;
+            restaurants = changes.previous().restaurantIndex.patch(this.columns.dictionary,
+                    this.columns.restaurantObjectId, changes.removedRows(), old.restaurantCount);
+            deals = changes.previous().dealIndex.patch(this.columns.dictionary,
+                    this.columns.dealObjectId, changes.removedSlots(), old.dealCount);
+        }
+        if (restaurants == null || deals == null) {
+            restaurants = new ObjectIdIndex(this.columns.dictionary, this.columns.restaurantObjectId,
+                    this.columns.restaurantOrder.length);
+            deals = new ObjectIdIndex(this.columns.dictionary, this.columns.dealObjectId,
+                    this.columns.dealCount - this.columns.removedDeals);
+            buildObjectIdIndexes(this.columns, restaurants, deals);
+        }
+        this.restaurantIndex = restaurants;
+        this.dealIndex = deals;
+        this.minuteBits = new AtomicReferenceArray<>(MINUTES_OF_DAY);
+        this.sortedOrders = new AtomicReferenceArray<>(DealSort.values().length);
+        this.profile = new ConcurrencyProfile(concurrency);
+        this.diff = diff;
+        this.changedMinutes = changedMinutes;
+    }
+
+    /**
+     * Index the restaurants and their deals in API order, so the first of a duplicated objectId wins.
+     * Deals are indexed whether they are active or not, a lookup returns their current state.
+     */
+    private static void buildObjectIdIndexes(SnapshotColumns columns, ObjectIdIndex restaurantIndex,
+                                             ObjectIdIndex dealIndex) {
+        for (int r : columns.restaurantOrder) {
+            restaurantIndex.put(r);
+            if (columns.restaurantDeals[r] == null) continue;
+            for (int d : columns.restaurantDeals[r]) {
+                dealIndex.put(d);
+            }
+        }
+    }
+
+    /**
+     * @return a new snapshot without restaurants, version 0; every owner gets its own, as it releases it
+     */
+    public static DealSnapshot empty() {
+        return compile(Collections.emptyList(), 0L);
+    }
+
+    /**
+     * Resolve the active window of every deal, build the minute index and calculate the peak time.
+     * Deals which are sold out or have no valid window are left out of the index.
+     * @param restaurants restaurants from the API
+     * @param version the version of this snapshot
+     * @return the compiled snapshot
+     */
+    public static DealSnapshot compile(List<Restaurant> restaurants, long version) {
+        int restaurantCount = 0;
+        int dealCount = 0;
+        for (Restaurant restaurant : restaurants) {
+            if (restaurant == null) continue;
+            restaurantCount++;
+            if (restaurant.getDeals() != null) dealCount += restaurant.getDeals().size();
+        }
+        SnapshotDiff diff = new SnapshotDiff(restaurantCount, 0, 0, dealCount, 0, 0, 0, MINUTES_OF_DAY, true);
+        return compile(restaurants, version, diff);
+    }
+
+    /**
+     * Build the next snapshot from the previous one.
+     * The restaurants and deals are diffed by objectId, and only the minute buckets and the per-minute counts
+     * touched by added, removed or modified deals are rebuilt. The rest is shared with the previous snapshot,
+     * or copied and patched for the changed deals. The diff and the copies still visit every deal once.
+     * Falls back to a full compile when the change is large, see {@link SnapshotPatcher}.
+     * @param previous the current snapshot
+     * @param restaurants restaurants from the API
+     * @param version the version of the new snapshot
+     * @return the new snapshot
+     */
+    public static DealSnapshot update(DealSnapshot previous, List<Restaurant> restaurants, long version) {
+        return SnapshotPatcher.patch(previous, restaurants, version);
+    }
+
+    static DealSnapshot compile(List<Restaurant> restaurants, long version, SnapshotDiff diff) {
+        // 1) Fill the columns, and resolve the active window of every deal.
+        SnapshotColumns columns = new SnapshotColumns(restaurants.size(), diff.dealsAdded());
+        for (Restaurant restaurant : restaurants) {
+            if (restaurant == null) continue;
+
+            int r = columns.addRestaurant(restaurant);
+            columns.restaurantDeals[r] = addDeals(columns, r, restaurant);
+        }
+        columns.restaurantOrder = sequence(columns.restaurantCount);
+
+        // 2) Count the deals of every minute, so each bucket is allocated once with the exact size:
+        //    +1 at the start and -1 at the end of every window, then the prefix sum is the count.
+        int[] concurrency = new int[MINUTES_OF_DAY + 1];
+        for (int d = 0; d < columns.dealCount; d++) {
+            if (!columns.isActive(d)) continue;
+            concurrency[columns.startMinute[d]]++;
+            concurrency[columns.endMinute[d]]--;
+        }
+        prefixSum(concurrency);
+        concurrency = Arrays.copyOf(concurrency, MINUTES_OF_DAY);
+
+        // 3) Fill the buckets, slots are visited in order so every bucket keeps the API order.
+        int[][] minuteIndex = new int[MINUTES_OF_DAY][];
+        for (int m = 0; m < MINUTES_OF_DAY; m++) {
+            minuteIndex[m] = concurrency[m] == 0 ? EMPTY_BUCKET : new int[concurrency[m]];
+        }
+        int[] filled = new int[MINUTES_OF_DAY];
+        for (int d = 0; d < columns.dealCount; d++) {
+            for (int m = columns.startMinute[d]; m < columns.endMinute[d]; m++) {
+                minuteIndex[m][filled[m]++] = d;
+            }
+        }
+
+        // 4) The peak time and the runs are calculated from the per-minute count by the constructor.
+        return new DealSnapshot(version, null, hashContent(restaurants), columns,
+                minuteIndex, concurrency, diff, null);
+    }
+
+    /**
+     * Add the deals of a restaurant to the columns.
+     * @return the slots of the deals, null if the restaurant has no deal list
+     */
+    private static int[] addDeals(SnapshotColumns columns, int r, Restaurant restaurant) {
+        if (restaurant.getDeals() == null) {
+            return null;
+        }
+        int[] slots = new int[restaurant.getDeals().size()];
+        int n = 0;
+        for (Deal deal : restaurant.getDeals()) {
+            if (deal == null) continue;
+            slots[n++] = columns.addDeal(r, restaurant, deal);
+        }
+        return n == slots.length ? slots : Arrays.copyOf(slots, n);
+    }
+
+    /**
+     * Turn per-minute deltas into running totals, in place.
+     */
+    static void prefixSum(int[] values) {
+        for (int i = 1; i < values.length; i++) {
+            values[i] += values[i - 1];
+        }
+    }
+
+    /**
+     * Counting sort the active deals by start minute, the slots are visited in order so ties keep the slot order.
+     * @param offsets filled with the start positions of every minute
+     * @return the slots ordered by start minute
+     */
+    private static int[] buildStartOrder(SnapshotColumns columns, int[] offsets) {
+        for (int d = 0; d < columns.dealCount; d++) {
+            if (columns.isActive(d)) offsets[columns.startMinute[d] + 1]++;
+        }
+        for (int m = 1; m <= MINUTES_OF_DAY; m++) {
+            offsets[m] += offsets[m - 1];
+        }
+        int[] order = new int[offsets[MINUTES_OF_DAY]];
+        int[] next = Arrays.copyOf(offsets, MINUTES_OF_DAY);
+        for (int d = 0; d < columns.dealCount; d++) {
+            if (columns.isActive(d)) order[next[columns.startMinute[d]]++] = d;
+        }
+        return order;
+    }
+
+    /**
+     * Patch the start order of the previous snapshot: the changed slots are taken out of the minute they started at,
+     * and merged back by slot into the minute they start at now. The other minutes are copied as they are.
+     * @param offsets filled with the start positions of every minute
+     * @return the slots ordered by start minute, the same as buildStartOrder
+     */
+    private static int[] patchStartOrder(DealSnapshot previous, SnapshotColumns columns, BitSet changedSlots,
+                                         int[] offsets) {
+        SnapshotColumns old = previous.columns;
+        int[] oldOffsets = previous.startOffsets;
+        // 1) The count of every minute, from the previous one and the moved slots.
+        int[] starting = new int[MINUTES_OF_DAY + 1];
+        BitSet touched = new BitSet(MINUTES_OF_DAY);
+        for (int m = 0; m < MINUTES_OF_DAY; m++) {
+            offsets[m + 1] = oldOffsets[m + 1] - oldOffsets[m];
+        }
+        for (int d = changedSlots.nextSetBit(0); d >= 0; d = changedSlots.nextSetBit(d + 1)) {
+            if (d < old.dealCount && old.isActive(d)) {
+                offsets[old.startMinute[d] + 1]--;
+                touched.set(old.startMinute[d]);
+            }
+            if (columns.isActive(d)) {
+                offsets[columns.startMinute[d] + 1]++;
+                starting[columns.startMinute[d] + 1]++;
+                touched.set(columns.startMinute[d]);
+            }
+        }
+        for (int m = 1; m <= MINUTES_OF_DAY; m++) {
+            offsets[m] += offsets[m - 1];
+            starting[m] += starting[m - 1];
+        }
+
+        // 2) The changed slots active now, by start minute then slot.
+        int[] moved = new int[starting[MINUTES_OF_DAY]];
+        int[] next = Arrays.copyOf(starting, MINUTES_OF_DAY);
+        for (int d = changedSlots.nextSetBit(0); d >= 0; d = changedSlots.nextSetBit(d + 1)) {
+            if (columns.isActive(d)) moved[next[columns.startMinute[d]]++] = d;
+        }
+
+        // 3) Copy the untouched minutes in runs, and merge the touched ones.
+        int[] order = new int[offsets[MINUTES_OF_DAY]];
+        int m = 0;
+        while (m < MINUTES_OF_DAY) {
+            int t = touched.nextSetBit(m);
+            int end = t < 0 ? MINUTES_OF_DAY : t;
+            System.arraycopy(previous.startOrder, oldOffsets[m], order, offsets[m], oldOffsets[end] - oldOffsets[m]);
+            if (t < 0) break;
+
+            int n = offsets[t];
+            int i = oldOffsets[t];
+            int j = starting[t];
+            while (i < oldOffsets[t + 1] || j < starting[t + 1]) {
+                if (i < oldOffsets[t + 1] && changedSlots.get(previous.startOrder[i])) {
+                    i++;
+                } else if (j == starting[t + 1] || (i < oldOffsets[t + 1] && previous.startOrder[i] < moved[j])) {
+                    order[n++] = previous.startOrder[i++];
+                } else {
+                    order[n++] = moved[j++];
+                }
+            }
+            m = t + 1;
+        }
+        return order;
+    }
+
+    private static int[] sequence(int size) {
+        int[] sequence = new int[size];
+        for (int i = 0; i < size; i++) {
+            sequence[i] = i;
+        }
+        return sequence;
+    }
+
+    /**
+     * Hash every field of every restaurant and deal.
+     */
+    static long hashContent(List<Restaurant> restaurants) {
+        long hash = HashUtils.FNV_OFFSET;
+        for (Restaurant restaurant : restaurants) {
+            if (restaurant == null) continue;
+            hash = HashUtils.update(hash, restaurant.getObjectId());
+            hash = HashUtils.update(hash, restaurant.getName());
+            hash = HashUtils.update(hash, restaurant.getAddress1());
+            hash = HashUtils.update(hash, restaurant.getSuburb());
+            hash = HashUtils.update(hash, restaurant.getOpen());
+            hash = HashUtils.update(hash, restaurant.getClose());
+            if (restaurant.getDeals() == null) continue;
+
+            for (Deal deal : restaurant.getDeals()) {
+                if (deal == null) continue;
+                hash = HashUtils.update(hash, deal.getObjectId());
+                hash = HashUtils.update(hash, deal.getDiscount());
+                hash = HashUtils.update(hash, deal.getDineIn());
+                hash = HashUtils.update(hash, deal.getLightning());
+                hash = HashUtils.update(hash, deal.getQtyLeft());
+                hash = HashUtils.update(hash, deal.getOpen());
+                hash = HashUtils.update(hash, deal.getClose());
+                hash = HashUtils.update(hash, deal.getStart());
+                hash = HashUtils.update(hash, deal.getEnd());
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Take a reference for a reader, the snapshot stays readable until the reader releases it,
+     * even if it is swapped out in the meantime.
+     * @return false if the last reference was already released, the snapshot must not be read then
+     */
+    public boolean retain() {
+        while (true) {
+            int count = references.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Drop a reference, taken by retain or held by the owner; the last one frees the off-heap strings,
+     * see StringDictionary. The caller must not read the restaurants and deals after it.
+     * The version, the counts and the hashes stay readable, they are on the heap.
+     * @throws IllegalStateException if the snapshot is released more often than it is retained
+     */
+    public void release() {
+        int count = references.decrementAndGet();
+        if (count == 0) {
+            columns.dictionary.release();
+        } else if (count < 0) {
+            throw new IllegalStateException("Snapshot " + version + " released more often than retained");
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getPreviousVersion() {
+        return previousVersion;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Build the restaurant POJOs back from the columns, in the API order.
+     * Every call makes new objects, queries should use the getters instead.
+     */
+    public List<Restaurant> getRestaurants() {
+        List<Restaurant> restaurants = new ArrayList<>(columns.restaurantOrder.length);
+        for (int r : columns.restaurantOrder) {
+            restaurants.add(columns.toRestaurant(r));
+        }
+        return Collections.unmodifiableList(restaurants);
+    }
+
+    public int getRestaurantCount() {
+        return columns.restaurantOrder.length;
+    }
+
+    /**
+     * Number of deals which have an active window.
+     */
+    public int getActiveDealCount() {
+        return columns.activeDeals;
+    }
+
+    /**
+     * Number of deals active at a minute of the day.
+     * @param minuteOfDay should between 0~1439
+     */
+    public int getActiveDealCount(int minuteOfDay) {
+        checkMinute(minuteOfDay);
+        return concurrency[minuteOfDay];
+    }
+
+    /**
+     * The first time period which has the most active deals.
+     */
+    public PeakTime getPeakTime() {
+        return profile.getPeakTime();
+    }
+
+    /**
+     * The per-minute active deal count as runs, with every peak interval and the local peaks.
+     */
+    public ConcurrencyProfile getConcurrencyProfile() {
+        return profile;
+    }
+
+    /**
+     * The per-minute total of the deals matching a filter, as a concurrency profile.
+     * The unweighted, unfiltered profile is the one built with the snapshot,
+     * the others are summed from precomputed difference arrays, see {@link WeightedPeakIndex}.
+     * @param weight how much a deal counts
+     * @param filter suburb, dineIn and lightning are used, minDiscount must be null
+     */
+    public ConcurrencyProfile getConcurrencyProfile(PeakWeight weight, DealFilter filter) {
+        if (weight == PeakWeight.COUNT && filter.isEmpty()) {
+            return profile;
+        }
+        WeightedPeakIndex index = weightedPeaks;
+        if (index == null) {
+            synchronized (this) {
+                index = weightedPeaks;
+                if (index == null) {
+                    index = weightedPeaks = new WeightedPeakIndex(columns);
+                }
+            }
+        }
+        return new ConcurrencyProfile(index.curve(weight, filter));
+    }
+
+    /**
+     * What changed compared with the previous snapshot.
+     */
+    public SnapshotDiff getDiff() {
+        return diff;
+    }
+
+    /**
+     * Check the bucket of a minute differs from the previous snapshot.
+     * @param minuteOfDay should between 0~1439
+     * @return false means the bucket of the previous snapshot can still be used as it is.
+     */
+    public boolean isMinuteChanged(int minuteOfDay) {
+        return changedMinutes == null || changedMinutes.get(minuteOfDay);
+    }
+
+    /**
+     * Visit the slots of the deals active at a minute of the day, in the API order.
+     * @param minuteOfDay should between 0~1439
+     * @param action called with every deal slot
+     */
+    public void forEachActiveDeal(int minuteOfDay, IntConsumer action) {
+        checkMinute(minuteOfDay);
+        for (int d : minuteIndex[minuteOfDay]) {
+            action.accept(d);
+        }
+    }
+
+    /**
+     * Number of deals active at any minute of a time range.
+     * @param fromMinute range start (include), should between 0~1439
+     * @param toMinute range end (not include), should between fromMinute+1~1440
+     */
+    public int getActiveDealCount(int fromMinute, int toMinute) {
+        checkRange(fromMinute, toMinute);
+        return concurrency[fromMinute] + startOffsets[toMinute] - startOffsets[fromMinute + 1];
+    }
+
+    /**
+     * Visit the slots of the deals active at any minute of a time range, each deal once.
+     * A deal window [start, end) overlaps the range [from, to) when start < to and end > from,
+     * the same rule as TimeWindow.windowIntersection. Those deals are:
+     * 1) the deals active at the from minute, in the API order, then
+     * 2) the deals starting after the from minute and before the to minute, by start minute.
+     * Both are slices of prebuilt arrays, so the cost is the number of deals visited.
+     * @param fromMinute range start (include), should between 0~1439
+     * @param toMinute range end (not include), should between fromMinute+1~1440
+     * @param action called with every deal slot
+     */
+    public void forEachActiveDeal(int fromMinute, int toMinute, IntConsumer action) {
+        checkRange(fromMinute, toMinute);
+        for (int d : minuteIndex[fromMinute]) {
+            action.accept(d);
+        }
+        for (int i = startOffsets[fromMinute + 1]; i < startOffsets[toMinute]; i++) {
+            action.accept(startOrder[i]);
+        }
+    }
+
+    /**
+     * Visit the slots of the deals active at any minute of a time range and matching a filter, each deal once.
+     * The filter is the AND of precomputed facet bitsets. A one-minute range is then ANDed with the bitset of
+     * the minute, word by word; a longer range checks one bit per deal of the range.
+     * @param fromMinute range start (include), should between 0~1439
+     * @param toMinute range end (not include), should between fromMinute+1~1440
+     * @param filter the filter, DealFilter.NONE for all deals
+     * @param action called with every deal slot
+     */
+    public void forEachActiveDeal(int fromMinute, int toMinute, DealFilter filter, IntConsumer action) {
+        long[] selected = facets.select(filter);
+        if (selected == null) {
+            forEachActiveDeal(fromMinute, toMinute, action);
+            return;
+        }
+        checkRange(fromMinute, toMinute);
+        if (toMinute != fromMinute + 1) {
+            forEachActiveDeal(fromMinute, toMinute, dealSlot -> {
+                if ((selected[dealSlot >>> 6] & (1L << dealSlot)) != 0) action.accept(dealSlot);
+            });
+            return;
+        }
+        long[] active = minuteBits(fromMinute);
+        for (int w = 0; w < active.length; w++) {
+            long word = active[w] & selected[w];
+            while (word != 0) {
+                action.accept((w << 6) + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Visit one page of the deals active at any minute of a time range and matching a filter.
+     * A position is an index into the ordering of the query, not a count of deals,
+     * so the next page resumes exactly where this one stopped.
+     * 1) One minute: the ordering is the minute bucket, in the API order or presorted by the sort,
+     *    so a page only scans its own deals (and the skipped ones when filtered), whatever the bucket size.
+     * 2) A range in the API order: the ordering is the bucket of the from minute, then the slice of the start order
+     *    of the range, so a page resumes at its position in them, and also only scans its own deals.
+     * 3) A sorted range: only the first position + limit deals of the range by rank are kept, with a bounded heap,
+     *    and one more to know if there is a next page; the deals of the range are visited, never sorted.
+     * @param fromMinute range start (include), should between 0~1439
+     * @param toMinute range end (not include), should between fromMinute+1~1440
+     * @param filter the filter, DealFilter.NONE for all deals
+     * @param sort the order, null for the order of {@link #forEachActiveDeal(int, int, DealFilter, IntConsumer)}
+     * @param position where the page starts, 0 for the first page
+     * @param limit the max number of deals of the page, at least 1
+     * @param action called with every deal slot of the page
+     * @return the position of the next page, or END_OF_PAGES if there is no more deal
+     */
+    public int forEachActiveDeal(int fromMinute, int toMinute, DealFilter filter, DealSort sort,
+                                 int position, int limit, IntConsumer action) {
+        checkRange(fromMinute, toMinute);
+        if (position < 0 || limit < 1) {
+            throw new IllegalArgumentException("Invalid page, position: " + position + ", limit: " + limit);
+        }
+        // 1) The ordering of the query: the head, then startOrder from tailStart, and the filter bits still to check.
+        int[] head;
+        int tailStart = 0;
+        int length;
+        long[] selected = facets.select(filter);
+        if (toMinute == fromMinute + 1) {
+            head = sort == null
+                    ? minuteIndex[fromMinute]
+                    : sortedOrder(sort).bucket(fromMinute, minuteIndex[fromMinute]);
+            length = head.length;
+        } else if (sort == null) {
+            head = minuteIndex[fromMinute];
+            tailStart = startOffsets[fromMinute + 1];
+            length = head.length + startOffsets[toMinute] - tailStart;
+        } else {
+            int count = getActiveDealCount(fromMinute, toMinute);
+            SortedOrder.TopSlots top = sortedOrder(sort).top((int) Math.min(count, (long) position + limit + 1));
+            forEachActiveDeal(fromMinute, toMinute, filter, top);
+            head = top.toSortedSlots();
+            length = head.length;
+            selected = null;
+        }
+
+        // 2) The page, the next matching deal after it is where the next page starts.
+        int visited = 0;
+        for (int i = position; i < length; i++) {
+            int d = i < head.length ? head[i] : startOrder[tailStart + i - head.length];
+            if (selected != null && (selected[d >>> 6] & (1L << d)) == 0) continue;
+            if (visited == limit) {
+                return i;
+            }
+            action.accept(d);
+            visited++;
+        }
+        return END_OF_PAGES;
+    }
+
+    private SortedOrder sortedOrder(DealSort sort) {
+        SortedOrder order = sortedOrders.get(sort.ordinal());
+        if (order == null) {
+            // Building twice under a race is harmless, the result is the same.
+            sortedOrders.compareAndSet(sort.ordinal(), null, new SortedOrder(columns, sort));
+            order = sortedOrders.get(sort.ordinal());
+        }
+        return order;
+    }
+
+    private long[] minuteBits(int minuteOfDay) {
+        long[] bits = minuteBits.get(minuteOfDay);
+        if (bits == null) {
+            // Building twice under a race is harmless, the result is the same.
+            bits = new long[FacetIndex.wordsFor(columns.dealCount)];
+            for (int d : minuteIndex[minuteOfDay]) {
+                bits[d >>> 6] |= 1L << d;
+            }
+            minuteBits.compareAndSet(minuteOfDay, null, bits);
+        }
+        return bits;
+    }
+
+    private static void checkRange(int fromMinute, int toMinute) {
+        checkMinute(fromMinute);
+        if (toMinute <= fromMinute || toMinute > MINUTES_OF_DAY) {
+            throw new IllegalArgumentException("Invalid range, the end must be after the start and at most 1440");
+        }
+    }
+
+    private static void checkMinute(int minuteOfDay) {
+        if (minuteOfDay < 0 || minuteOfDay >= MINUTES_OF_DAY) {
+            throw new IllegalArgumentException("Invalid minute, must be between 0 and 1439");
+        }
+    }
+
+    /**
+     * Estimated heap bytes of the restaurants and deals: the columns and the dictionary.
+     * Compare with {@link #estimatePojoHeapBytes(List)}.
+     */
+    public long estimateDataHeapBytes() {
+        return columns.estimateHeapBytes();
+    }
+
+    /**
+     * Bytes of the restaurants and deals kept off the heap: the strings used once, see StringDictionary.
+     */
+    public long getDataOffHeapBytes() {
+        return columns.dictionary.offHeapBytes();
+    }
+
+    /**
+     * Estimated heap bytes of the minute index, the start order, the facet bitsets and the per-minute counts.
+     * Buckets shared with the previous snapshot are counted too.
+     */
+    public long estimateIndexHeapBytes() {
+        long bytes = HeapSize.array(MINUTES_OF_DAY, HeapSize.INT) + HeapSize.array(MINUTES_OF_DAY, HeapSize.REFERENCE);
+        bytes += facets.estimateHeapBytes() + HeapSize.array(MINUTES_OF_DAY, HeapSize.REFERENCE);
+        for (int m = 0; m < MINUTES_OF_DAY; m++) {
+            long[] bits = minuteBits.get(m);
+            if (bits != null) bytes += HeapSize.array(bits.length, 8);
+        }
+        bytes += HeapSize.array(startOrder.length, HeapSize.INT) + HeapSize.array(startOffsets.length, HeapSize.INT);
+        bytes += restaurantIndex.estimateHeapBytes() + dealIndex.estimateHeapBytes();
+        Map<int[], Boolean> buckets = new IdentityHashMap<>();
+        for (int[] bucket : minuteIndex) {
+            if (buckets.put(bucket, Boolean.TRUE) == null) bytes += HeapSize.array(bucket.length, HeapSize.INT);
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimated heap bytes of the same restaurants as POJOs, the form the API client builds.
+     */
+    public static long estimatePojoHeapBytes(List<Restaurant> restaurants) {
+        return HeapSize.pojoGraph(restaurants);
+    }
+
+    /**
+     * Find a restaurant by objectId, O(1) through the hash index.
+     * @return the restaurant row, or NOT_FOUND
+     */
+    public int findRestaurant(String objectId) {
+        return restaurantIndex.get(objectId);
+    }
+
+    /**
+     * Find a deal by objectId, O(1) through the hash index.
+     * Deal objectIds are only expected to be unique within a restaurant; if several restaurants share one,
+     * the deal of the first restaurant in API order is found.
+     * @return the deal slot, active or not, or NOT_FOUND
+     */
+    public int findDeal(String dealObjectId) {
+        return dealIndex.get(dealObjectId);
+    }
+
+    /**
+     * Visit every deal of a restaurant in API order, active or not.
+     * @param restaurantRow a row from findRestaurant
+     * @param consumer gets the deal slots
+     */
+    public void forEachDealOf(int restaurantRow, IntConsumer consumer) {
+        int[] deals = columns.restaurantDeals[restaurantRow];
+        if (deals == null) return;
+        for (int d : deals) {
+            consumer.accept(d);
+        }
+    }
+
+    /**
+     * @return the number of deals of a restaurant, active or not
+     */
+    public int getDealCountOf(int restaurantRow) {
+        int[] deals = columns.restaurantDeals[restaurantRow];
+        return deals == null ? 0 : deals.length;
+    }
+
+    // Deal slot getters, slots come from forEachActiveDeal, findDeal or forEachDealOf.
+
+    /**
+     * @return the restaurant row of a deal slot
+     */
+    public int getRestaurantOf(int dealSlot) {
+        return columns.dealRestaurant[dealSlot];
+    }
+
+    public String getDealObjectId(int dealSlot) {
+        return columns.dictionary.get(columns.dealObjectId[dealSlot]);
+    }
+
+    public String getDiscount(int dealSlot) {
+        return columns.dictionary.get(columns.discount[dealSlot]);
+    }
+
+    /**
+     * @return the dineIn flag as the API sent it
+     */
+    public String getDineIn(int dealSlot) {
+        return columns.dictionary.get(columns.dineInText[dealSlot]);
+    }
+
+    /**
+     * @return the lightning flag as the API sent it
+     */
+    public String getLightning(int dealSlot) {
+        return columns.dictionary.get(columns.lightningText[dealSlot]);
+    }
+
+    /**
+     * @return the qtyLeft as the API sent it
+     */
+    public String getQtyLeft(int dealSlot) {
+        return columns.dictionary.get(columns.qtyLeftText[dealSlot]);
+    }
+
+    /**
+     * @return the qtyLeft as int, 0 if it is not a number
+     */
+    public int getQtyLeftValue(int dealSlot) {
+        return columns.qtyLeft[dealSlot];
+    }
+
+    public boolean isDineIn(int dealSlot) {
+        return columns.dineIn.get(dealSlot);
+    }
+
+    public boolean isLightning(int dealSlot) {
+        return columns.lightning.get(dealSlot);
+    }
+
+    /**
+     * @return the first minute of the deal's active window, -1 if the deal is not active
+     */
+    public int getStartMinute(int dealSlot) {
+        return columns.startMinute[dealSlot];
+    }
+
+    /**
+     * @return the minute the deal's active window ends (exclusive), -1 if the deal is not active
+     */
+    public int getEndMinute(int dealSlot) {
+        return columns.endMinute[dealSlot];
+    }
+
+    // Restaurant row getters, rows come from getRestaurantOf or findRestaurant.
+
+    public String getRestaurantObjectId(int restaurantRow) {
+        return columns.dictionary.get(columns.restaurantObjectId[restaurantRow]);
+    }
+
+    public String getRestaurantName(int restaurantRow) {
+        return columns.dictionary.get(columns.restaurantName[restaurantRow]);
+    }
+
+    public String getRestaurantAddress1(int restaurantRow) {
+        return columns.dictionary.get(columns.restaurantAddress1[restaurantRow]);
+    }
+
+    public String getRestaurantSuburb(int restaurantRow) {
+        return columns.dictionary.get(columns.restaurantSuburb[restaurantRow]);
+    }
+
+    public String getRestaurantOpen(int restaurantRow) {
+        return columns.dictionary.get(columns.restaurantOpen[restaurantRow]);
+    }
+
+    public String getRestaurantClose(int restaurantRow) {
+        return columns.dictionary.get(columns.restaurantClose[restaurantRow]);
+    }
+
+    // Package-private accessors for SnapshotPatcher, the arrays must not be modified.
+
+    SnapshotColumns columns() {
+        return columns;
+    }
+
+    int[][] minuteIndex() {
+        return minuteIndex;
+    }
+
+    int[] concurrency() {
+        return concurrency;
+    }
+}
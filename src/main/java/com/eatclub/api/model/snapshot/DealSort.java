@@ -0,0 +1,43 @@
+package com.eatclub.api.model.snapshot;
+
+/**
+ * The order of a page of deals. Ties keep the API order.
+ */
+public enum DealSort {
+
+    /**
+     * Highest discount first, a discount which is not a number counts as 0.
+     */
+    DISCOUNT("discount"),
+    /**
+     * Most quantity left first.
+     */
+    QTY_LEFT("qtyLeft"),
+    /**
+     * Restaurant name A~Z ignoring case, restaurants without a name last.
+     */
+    NAME("name");
+
+    private final String parameter;
+
+    DealSort(String parameter) {
+        this.parameter = parameter;
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+
+    /**
+     * @param parameter the request parameter, ignoring case
+     * @return the sort, or null if there is no such sort
+     */
+    public static DealSort fromParameter(String parameter) {
+        for (DealSort sort : values()) {
+            if (sort.parameter.equalsIgnoreCase(parameter)) {
+                return sort;
+            }
+        }
+        return null;
+    }
+}
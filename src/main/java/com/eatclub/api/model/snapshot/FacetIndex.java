@@ -0,0 +1,232 @@
+package com.eatclub.api.model.snapshot;
+
+import com.eatclub.api.util.DealUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * One bitset (long[] words, bit d is deal slot d) per facet value of a snapshot:
+ * per suburb, dineIn, lightning, and per distinct discount "at least this discount".
+ * A filter is the AND of the bitsets of its fields, so it costs one pass over the words,
+ * whatever the number of deals matching each field.
+ */
+final class FacetIndex {
+
+    private final int words;
+    private final Map<String, long[]> suburbs;
+    private final long[] dineIn;
+    private final long[] lightning;
+    /**
+     * The distinct discounts, ascending.
+     */
+    private final int[] discounts;
+    /**
+     * discountAtLeast[i] has the deals whose discount is at least discounts[i].
+     */
+    private final long[][] discountAtLeast;
+
+    FacetIndex(SnapshotColumns columns) {
+        int dealCount = columns.dealCount;
+        this.words = wordsFor(dealCount);
+
+        // 1) Suburb, dineIn and lightning, every live slot is set in one bitset per field.
+        Map<String, long[]> suburbIndex = new HashMap<>();
+        Map<Integer, long[]> suburbById = new HashMap<>();
+        this.dineIn = new long[words];
+        this.lightning = new long[words];
+        // Discounts parsed once per dictionary id.
+        Map<Integer, Integer> discountById = new HashMap<>();
+        TreeMap<Integer, long[]> discountExact = new TreeMap<>();
+        for (int d = 0; d < dealCount; d++) {
+            int r = columns.dealRestaurant[d];
+            if (r == SnapshotColumns.REMOVED) continue;
+
+            long bit = 1L << d;
+            int suburbId = columns.restaurantSuburb[r];
+            if (suburbId != StringDictionary.NULL_ID) {
+                long[] bits = suburbById.computeIfAbsent(suburbId, id -> suburbIndex.computeIfAbsent(
+                        DealFilter.normalizeSuburb(columns.dictionary.get(id)), key -> new long[words]));
+                bits[d >>> 6] |= bit;
+            }
+            if (columns.dineIn.get(d)) dineIn[d >>> 6] |= bit;
+            if (columns.lightning.get(d)) lightning[d >>> 6] |= bit;
+
+            int discount = discountById.computeIfAbsent(columns.discount[d],
+                    id -> DealUtils.safeTransInt(columns.dictionary.get(id)));
+            discountExact.computeIfAbsent(discount, key -> new long[words])[d >>> 6] |= bit;
+        }
+        this.suburbs = suburbIndex;
+
+        // 2) "At least" bitsets, OR-ed from the highest discount down.
+        this.discounts = new int[discountExact.size()];
+        this.discountAtLeast = new long[discountExact.size()][];
+        long[] atLeast = new long[words];
+        int i = discounts.length;
+        for (Map.Entry<Integer, long[]> entry : discountExact.descendingMap().entrySet()) {
+            i--;
+            atLeast = or(atLeast, entry.getValue());
+            discounts[i] = entry.getKey();
+            discountAtLeast[i] = atLeast;
+        }
+    }
+
+    private FacetIndex(int words, Map<String, long[]> suburbs, long[] dineIn, long[] lightning,
+                       int[] discounts, long[][] discountAtLeast) {
+        this.words = words;
+        this.suburbs = suburbs;
+        this.dineIn = dineIn;
+        this.lightning = lightning;
+        this.discounts = discounts;
+        this.discountAtLeast = discountAtLeast;
+    }
+
+    /**
+     * Patch a copy of the index for the next snapshot: the bits of the changed slots are cleared from every bitset,
+     * then the live ones are set again from their new fields. The other slots keep their bits.
+     * A suburb or discount which is no longer used keeps an empty bitset until the next full compile,
+     * it selects no deal, the same as an unknown one.
+     * @param columns the patched columns
+     * @param changedSlots the slots added, removed or modified since this index was built
+     */
+    FacetIndex patch(SnapshotColumns columns, BitSet changedSlots) {
+        int newWords = wordsFor(columns.dealCount);
+        long[] changed = Arrays.copyOf(changedSlots.toLongArray(), newWords);
+
+        // 1) Copy every bitset without the changed slots.
+        Map<String, long[]> suburbIndex = new HashMap<>(suburbs.size() * 2);
+        for (Map.Entry<String, long[]> entry : suburbs.entrySet()) {
+            suburbIndex.put(entry.getKey(), clear(entry.getValue(), changed, newWords));
+        }
+        long[] dineInBits = clear(dineIn, changed, newWords);
+        long[] lightningBits = clear(lightning, changed, newWords);
+        List<Integer> discountList = new ArrayList<>(discounts.length + 4);
+        List<long[]> atLeastList = new ArrayList<>(discounts.length + 4);
+        for (int i = 0; i < discounts.length; i++) {
+            discountList.add(discounts[i]);
+            atLeastList.add(clear(discountAtLeast[i], changed, newWords));
+        }
+
+        // 2) Set the bits of the live changed slots, as the constructor does.
+        Map<Integer, long[]> suburbById = new HashMap<>();
+        for (int d = changedSlots.nextSetBit(0); d >= 0; d = changedSlots.nextSetBit(d + 1)) {
+            int r = columns.dealRestaurant[d];
+            if (r == SnapshotColumns.REMOVED) continue;
+
+            long bit = 1L << d;
+            int suburbId = columns.restaurantSuburb[r];
+            if (suburbId != StringDictionary.NULL_ID) {
+                long[] bits = suburbById.computeIfAbsent(suburbId, id -> suburbIndex.computeIfAbsent(
+                        DealFilter.normalizeSuburb(columns.dictionary.get(id)), key -> new long[newWords]));
+                bits[d >>> 6] |= bit;
+            }
+            if (columns.dineIn.get(d)) dineInBits[d >>> 6] |= bit;
+            if (columns.lightning.get(d)) lightningBits[d >>> 6] |= bit;
+
+            // A new discount starts from the deals of the next higher one, every deal at least it.
+            int discount = DealUtils.safeTransInt(columns.dictionary.get(columns.discount[d]));
+            int i = Collections.binarySearch(discountList, discount);
+            if (i < 0) {
+                i = -i - 1;
+                discountList.add(i, discount);
+                atLeastList.add(i, i < atLeastList.size() ? atLeastList.get(i).clone() : new long[newWords]);
+            }
+            for (int k = 0; k <= i; k++) {
+                atLeastList.get(k)[d >>> 6] |= bit;
+            }
+        }
+
+        int[] discountArray = new int[discountList.size()];
+        for (int i = 0; i < discountArray.length; i++) {
+            discountArray[i] = discountList.get(i);
+        }
+        return new FacetIndex(newWords, suburbIndex, dineInBits, lightningBits,
+                discountArray, atLeastList.toArray(new long[0][]));
+    }
+
+    /**
+     * @return a copy of the bitset, sized to the given words, without the changed bits
+     */
+    private static long[] clear(long[] bits, long[] changed, int words) {
+        long[] result = Arrays.copyOf(bits, words);
+        for (int w = 0; w < words; w++) {
+            result[w] &= ~changed[w];
+        }
+        return result;
+    }
+
+    static int wordsFor(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    /**
+     * Get the deals matching a filter.
+     * A negated field sets the bits of inactive and removed slots too, so the result must be used
+     * together with the active deals of a minute or a range.
+     * @return the bitset, null means the filter is empty and every deal matches. It must not be modified.
+     */
+    long[] select(DealFilter filter) {
+        if (filter.isEmpty()) {
+            return null;
+        }
+        long[] result = null;
+        if (filter.suburb() != null) {
+            result = and(result, suburbs.get(filter.suburb()), false);
+        }
+        if (filter.dineIn() != null) {
+            result = and(result, dineIn, !filter.dineIn());
+        }
+        if (filter.lightning() != null) {
+            result = and(result, lightning, !filter.lightning());
+        }
+        if (filter.minDiscount() != null) {
+            int i = Arrays.binarySearch(discounts, filter.minDiscount());
+            if (i < 0) i = -i - 1;
+            result = and(result, i < discounts.length ? discountAtLeast[i] : null, false);
+        }
+        return result;
+    }
+
+    /**
+     * AND a facet bitset into the result.
+     * @param result the result so far, null means every deal; it is copied before the first change
+     * @param bits the facet bitset, null means no deal
+     * @param negate use the deals which are not in the bitset
+     */
+    private long[] and(long[] result, long[] bits, boolean negate) {
+        if (bits == null) {
+            return negate ? result : new long[words];
+        }
+        if (result == null) {
+            result = new long[words];
+            Arrays.fill(result, -1L);
+        }
+        for (int w = 0; w < words; w++) {
+            result[w] &= negate ? ~bits[w] : bits[w];
+        }
+        return result;
+    }
+
+    private long[] or(long[] a, long[] b) {
+        long[] result = a.clone();
+        for (int w = 0; w < words; w++) {
+            result[w] |= b[w];
+        }
+        return result;
+    }
+
+    /**
+     * Estimated heap bytes of the bitsets.
+     */
+    long estimateHeapBytes() {
+        long perBitset = HeapSize.array(words, 8);
+        return perBitset * (suburbs.size() + 2 + discountAtLeast.length)
+                + HeapSize.array(discounts.length, HeapSize.INT);
+    }
+}
@@ -0,0 +1,74 @@
+package com.eatclub.api.model.snapshot;
+
+import com.eatclub.api.model.domain.Deal;
+import com.eatclub.api.model.domain.Restaurant;
+
+import java.util.List;
+
+/**
+ * Rough heap size estimates, for a 64-bit JVM with compressed oops (12-byte object header, 4-byte references,
+ * 8-byte alignment) and compact Latin-1 strings.
+ * Good enough to compare the compiled snapshot with the POJO graph, not an exact measurement.
+ */
+final class HeapSize {
+
+    static final int REFERENCE = 4;
+    static final int INT = 4;
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+
+    private HeapSize() {
+    }
+
+    static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    static long object(int referenceFields) {
+        return align(OBJECT_HEADER + (long) referenceFields * REFERENCE);
+    }
+
+    static long array(long length, int elementBytes) {
+        return align(ARRAY_HEADER + length * elementBytes);
+    }
+
+    /**
+     * String object (hash, coder, value) plus its byte[].
+     */
+    static long string(String value) {
+        if (value == null) {
+            return 0;
+        }
+        return align(OBJECT_HEADER + 4 + 1 + REFERENCE) + array(value.length(), 1);
+    }
+
+    /**
+     * Estimated heap bytes of the restaurants as fastjson2 builds them: every field is its own String,
+     * and every list is an ArrayList.
+     */
+    static long pojoGraph(List<Restaurant> restaurants) {
+        long bytes = arrayList(restaurants.size());
+        for (Restaurant restaurant : restaurants) {
+            if (restaurant == null) continue;
+            bytes += object(7);
+            bytes += string(restaurant.getObjectId()) + string(restaurant.getName())
+                    + string(restaurant.getAddress1()) + string(restaurant.getSuburb())
+                    + string(restaurant.getOpen()) + string(restaurant.getClose());
+            if (restaurant.getDeals() == null) continue;
+
+            bytes += arrayList(restaurant.getDeals().size());
+            for (Deal deal : restaurant.getDeals()) {
+                if (deal == null) continue;
+                bytes += object(9);
+                bytes += string(deal.getObjectId()) + string(deal.getDiscount()) + string(deal.getDineIn())
+                        + string(deal.getLightning()) + string(deal.getQtyLeft()) + string(deal.getOpen())
+                        + string(deal.getClose()) + string(deal.getStart()) + string(deal.getEnd());
+            }
+        }
+        return bytes;
+    }
+
+    private static long arrayList(int size) {
+        return align(OBJECT_HEADER + 4 + 4 + REFERENCE) + array(size, REFERENCE);
+    }
+}
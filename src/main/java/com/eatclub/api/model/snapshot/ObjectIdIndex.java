@@ -0,0 +1,178 @@
+package com.eatclub.api.model.snapshot;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An open-addressing (linear probing) hash index from an objectId to a restaurant row or a deal slot.
+ * The keys are not copied: the table holds the row or slot, and the key is compared against its column
+ * through the dictionary, in place, so neither a lookup nor building the index decodes an off-heap objectId.
+ * The hash of every entry is kept next to it, so a probe only compares strings when the hashes are equal.
+ * At most half of the table is used, so a probe is short.
+ */
+final class ObjectIdIndex {
+
+    static final int NOT_FOUND = -1;
+
+    private final StringDictionary dictionary;
+    /**
+     * The objectId column, values[i] is a row or slot of it.
+     */
+    private final int[] keyIds;
+    private final int[] hashes;
+    private final int[] values;
+    private final int mask;
+    private int size;
+    /**
+     * Number of puts which found their objectId already indexed.
+     */
+    private int duplicates;
+
+    /**
+     * @param dictionary the dictionary of the column
+     * @param keyIds the objectId column
+     * @param expected the expected number of entries
+     */
+    ObjectIdIndex(StringDictionary dictionary, int[] keyIds, int expected) {
+        this.dictionary = dictionary;
+        this.keyIds = keyIds;
+        int capacity = Integer.highestOneBit(Math.max(2, expected) * 2 - 1) << 1;
+        this.hashes = new int[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(values, NOT_FOUND);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Copy an index for the columns of the next snapshot, the rows and slots keep their objectId id.
+     */
+    private ObjectIdIndex(ObjectIdIndex base, StringDictionary dictionary, int[] keyIds) {
+        this.dictionary = dictionary;
+        this.keyIds = keyIds;
+        this.hashes = base.hashes.clone();
+        this.values = base.values.clone();
+        this.mask = base.mask;
+        this.size = base.size;
+    }
+
+    /**
+     * Patch a copy of the index for the next snapshot: the removed rows or slots are taken out,
+     * and the ones appended from firstAdded to the end of the column are indexed.
+     * The other rows and slots keep their objectId, so their entries are copied as they are.
+     * @param dictionary the dictionary of the patched columns, its ids are the same as before
+     * @param keyIds the patched objectId column
+     * @param removed the removed rows or slots
+     * @param firstAdded the first appended row or slot
+     * @return the patched index, or null if it must be built from scratch: an objectId is indexed twice,
+     *         so the API order decides which one wins, or the table would be more than half full
+     */
+    ObjectIdIndex patch(StringDictionary dictionary, int[] keyIds, BitSet removed, int firstAdded) {
+        int added = keyIds.length - firstAdded;
+        if (duplicates > 0 || (size + added) * 2 > values.length) {
+            return null;
+        }
+        ObjectIdIndex index = new ObjectIdIndex(this, dictionary, keyIds);
+        // Remove first, an added deal may take the objectId of a removed one.
+        for (int value = removed.nextSetBit(0); value >= 0; value = removed.nextSetBit(value + 1)) {
+            index.remove(value);
+        }
+        for (int value = firstAdded; value < keyIds.length; value++) {
+            if (!index.put(value)) {
+                return null;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param hashCode the String.hashCode() of the key
+     */
+    private static int hash(int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Index a row or slot by its objectId. A null objectId is not indexed.
+     * @return false if the objectId is already indexed, the first one is kept
+     */
+    boolean put(int value) {
+        int keyId = keyIds[value];
+        if (keyId == StringDictionary.NULL_ID) {
+            return true;
+        }
+        if (size * 2 >= values.length) {
+            throw new IllegalStateException("Index is full: " + size);
+        }
+        int hash = hash(dictionary.hashCode(keyId));
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            if (values[i] == NOT_FOUND) {
+                hashes[i] = hash;
+                values[i] = value;
+                size++;
+                return true;
+            }
+            // The dictionary keeps every distinct string once, the same objectId is the same id.
+            if (keyIds[values[i]] == keyId) {
+                duplicates++;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Take a row or slot out of the index. The entries after it are shifted back into the hole
+     * unless that would move them before their home, so no probe stops early (no tombstones).
+     */
+    private void remove(int value) {
+        int keyId = keyIds[value];
+        if (keyId == StringDictionary.NULL_ID) {
+            return;
+        }
+        int i = hash(dictionary.hashCode(keyId)) & mask;
+        while (values[i] != value) {
+            if (values[i] == NOT_FOUND) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        for (int j = (i + 1) & mask; values[j] != NOT_FOUND; j = (j + 1) & mask) {
+            int home = hashes[j] & mask;
+            // The entry at j may fill the hole when the hole lies between its home and j.
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                hashes[i] = hashes[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        values[i] = NOT_FOUND;
+        size--;
+    }
+
+    /**
+     * @return the row or slot of the objectId, or NOT_FOUND
+     */
+    int get(String key) {
+        if (key == null) {
+            return NOT_FOUND;
+        }
+        int hash = hash(key.hashCode());
+        for (int i = hash & mask; values[i] != NOT_FOUND; i = (i + 1) & mask) {
+            if (hashes[i] == hash && dictionary.equals(keyIds[values[i]], key)) {
+                return values[i];
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Estimated heap bytes of the table.
+     */
+    long estimateHeapBytes() {
+        return 2 * HeapSize.array(values.length, HeapSize.INT);
+    }
+}
@@ -0,0 +1,18 @@
+package com.eatclub.api.model.snapshot;
+
+/**
+ * A time period and the number of deals active during it, like the first time period which has the most active deals.
+ * Boundary: [startMinute, endMinute)
+ *
+ * @param startMinute        peak start in minute-of-day, -1 if there is no active deal
+ * @param endMinute          peak end in minute-of-day, -1 if there is no active deal
+ * @param maxConcurrentDeals the number of deals active during the peak
+ */
+public record PeakTime(int startMinute, int endMinute, int maxConcurrentDeals) {
+
+    public static final PeakTime NONE = new PeakTime(-1, -1, 0);
+
+    public boolean isEmpty() {
+        return maxConcurrentDeals == 0;
+    }
+}
@@ -0,0 +1,39 @@
+package com.eatclub.api.model.snapshot;
+
+/**
+ * How much a deal counts toward the per-minute total of the peak time.
+ */
+public enum PeakWeight {
+
+    /**
+     * Every active deal counts 1.
+     */
+    COUNT("count"),
+    /**
+     * Every active deal counts its qtyLeft, the total is the inventory available.
+     */
+    QTY_LEFT("qtyLeft");
+
+    private final String parameter;
+
+    PeakWeight(String parameter) {
+        this.parameter = parameter;
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+
+    /**
+     * @param parameter the request parameter, ignoring case
+     * @return the weight, or null if there is no such weight
+     */
+    public static PeakWeight fromParameter(String parameter) {
+        for (PeakWeight weight : values()) {
+            if (weight.parameter.equalsIgnoreCase(parameter)) {
+                return weight;
+            }
+        }
+        return null;
+    }
+}
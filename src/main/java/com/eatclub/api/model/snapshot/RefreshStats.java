@@ -0,0 +1,13 @@
+package com.eatclub.api.model.snapshot;
+
+/**
+ * Counters of the refresh results since the application started.
+ *
+ * @param changed   refreshes which swapped in a new snapshot
+ * @param unchanged refreshes which found the data unchanged and kept the current snapshot
+ * @param failed    refreshes which failed and kept the current snapshot
+ * @param skipped   refreshes which did not call the upstream, because the circuit was open
+ *                  or the previous refresh was still running
+ */
+public record RefreshStats(long changed, long unchanged, long failed, long skipped) {
+}
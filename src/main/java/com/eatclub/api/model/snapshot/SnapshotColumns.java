@@ -0,0 +1,414 @@
+package com.eatclub.api.model.snapshot;
+
+import com.eatclub.api.model.domain.Deal;
+import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.util.DealUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The compiled, columnar form of the restaurants and deals.
+ * A restaurant is a row number r, a deal is a slot number d, and every field is an array indexed by them.
+ * Strings are stored as dictionary ids, and the fields the queries need are resolved once:
+ * the effective window as start/end minute, qtyLeft as int, dineIn/lightning as bits.
+ * The columns are mutable while a snapshot is built or patched, and never modified once it is published.
+ */
+final class SnapshotColumns {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotColumns.class);
+
+    /**
+     * Value of dealRestaurant for a removed deal slot.
+     */
+    static final int REMOVED = -1;
+    /**
+     * Value of startMinute / endMinute for a deal which is not active (sold out or no valid window).
+     */
+    static final int INACTIVE = -1;
+
+    final StringDictionary dictionary;
+
+    // Restaurant rows.
+    int restaurantCount;
+    int[] restaurantObjectId;
+    int[] restaurantName;
+    int[] restaurantAddress1;
+    int[] restaurantSuburb;
+    int[] restaurantOpen;
+    int[] restaurantClose;
+    /**
+     * The deal slots of every restaurant, in the API order. null if the restaurant has no deal list.
+     */
+    int[][] restaurantDeals;
+    /**
+     * The rows of the current restaurants, in the API order. Rows of removed restaurants are left out.
+     */
+    int[] restaurantOrder;
+
+    // Deal slots.
+    int dealCount;
+    int removedDeals;
+    int activeDeals;
+    int[] dealRestaurant;
+    int[] dealObjectId;
+    int[] discount;
+    int[] dineInText;
+    int[] lightningText;
+    int[] qtyLeftText;
+    int[] dealOpen;
+    int[] dealClose;
+    int[] dealStart;
+    int[] dealEnd;
+    int[] qtyLeft;
+    BitSet dineIn;
+    BitSet lightning;
+    int[] startMinute;
+    int[] endMinute;
+
+    SnapshotColumns(int restaurantCapacity, int dealCapacity) {
+        this.dictionary = new StringDictionary();
+        this.restaurantObjectId = new int[restaurantCapacity];
+        this.restaurantName = new int[restaurantCapacity];
+        this.restaurantAddress1 = new int[restaurantCapacity];
+        this.restaurantSuburb = new int[restaurantCapacity];
+        this.restaurantOpen = new int[restaurantCapacity];
+        this.restaurantClose = new int[restaurantCapacity];
+        this.restaurantDeals = new int[restaurantCapacity][];
+        this.restaurantOrder = DealSnapshot.EMPTY_BUCKET;
+        this.dealRestaurant = new int[dealCapacity];
+        this.dealObjectId = new int[dealCapacity];
+        this.discount = new int[dealCapacity];
+        this.dineInText = new int[dealCapacity];
+        this.lightningText = new int[dealCapacity];
+        this.qtyLeftText = new int[dealCapacity];
+        this.dealOpen = new int[dealCapacity];
+        this.dealClose = new int[dealCapacity];
+        this.dealStart = new int[dealCapacity];
+        this.dealEnd = new int[dealCapacity];
+        this.qtyLeft = new int[dealCapacity];
+        this.dineIn = new BitSet(dealCapacity);
+        this.lightning = new BitSet(dealCapacity);
+        this.startMinute = new int[dealCapacity];
+        this.endMinute = new int[dealCapacity];
+    }
+
+    /**
+     * Copy the columns of a published snapshot, so they can be patched.
+     */
+    SnapshotColumns(SnapshotColumns base) {
+        this.dictionary = new StringDictionary(base.dictionary);
+        this.restaurantCount = base.restaurantCount;
+        int restaurantCapacity = base.restaurantCount + base.restaurantCount / 4 + 4;
+        this.restaurantObjectId = Arrays.copyOf(base.restaurantObjectId, restaurantCapacity);
+        this.restaurantName = Arrays.copyOf(base.restaurantName, restaurantCapacity);
+        this.restaurantAddress1 = Arrays.copyOf(base.restaurantAddress1, restaurantCapacity);
+        this.restaurantSuburb = Arrays.copyOf(base.restaurantSuburb, restaurantCapacity);
+        this.restaurantOpen = Arrays.copyOf(base.restaurantOpen, restaurantCapacity);
+        this.restaurantClose = Arrays.copyOf(base.restaurantClose, restaurantCapacity);
+        // The rows are shared, a changed row is replaced, never modified.
+        this.restaurantDeals = Arrays.copyOf(base.restaurantDeals, restaurantCapacity);
+        this.restaurantOrder = base.restaurantOrder;
+
+        this.dealCount = base.dealCount;
+        this.removedDeals = base.removedDeals;
+        this.activeDeals = base.activeDeals;
+        int dealCapacity = base.dealCount + base.dealCount / 4 + 16;
+        this.dealRestaurant = Arrays.copyOf(base.dealRestaurant, dealCapacity);
+        this.dealObjectId = Arrays.copyOf(base.dealObjectId, dealCapacity);
+        this.discount = Arrays.copyOf(base.discount, dealCapacity);
+        this.dineInText = Arrays.copyOf(base.dineInText, dealCapacity);
+        this.lightningText = Arrays.copyOf(base.lightningText, dealCapacity);
+        this.qtyLeftText = Arrays.copyOf(base.qtyLeftText, dealCapacity);
+        this.dealOpen = Arrays.copyOf(base.dealOpen, dealCapacity);
+        this.dealClose = Arrays.copyOf(base.dealClose, dealCapacity);
+        this.dealStart = Arrays.copyOf(base.dealStart, dealCapacity);
+        this.dealEnd = Arrays.copyOf(base.dealEnd, dealCapacity);
+        this.qtyLeft = Arrays.copyOf(base.qtyLeft, dealCapacity);
+        this.dineIn = (BitSet) base.dineIn.clone();
+        this.lightning = (BitSet) base.lightning.clone();
+        this.startMinute = Arrays.copyOf(base.startMinute, dealCapacity);
+        this.endMinute = Arrays.copyOf(base.endMinute, dealCapacity);
+    }
+
+    // ------------------------------------------------------------------ restaurants
+
+    int addRestaurant(Restaurant restaurant) {
+        if (restaurantCount == restaurantObjectId.length) {
+            int capacity = Math.max(16, restaurantCount * 2);
+            restaurantObjectId = Arrays.copyOf(restaurantObjectId, capacity);
+            restaurantName = Arrays.copyOf(restaurantName, capacity);
+            restaurantAddress1 = Arrays.copyOf(restaurantAddress1, capacity);
+            restaurantSuburb = Arrays.copyOf(restaurantSuburb, capacity);
+            restaurantOpen = Arrays.copyOf(restaurantOpen, capacity);
+            restaurantClose = Arrays.copyOf(restaurantClose, capacity);
+            restaurantDeals = Arrays.copyOf(restaurantDeals, capacity);
+        }
+        int r = restaurantCount++;
+        restaurantObjectId[r] = dictionary.intern(restaurant.getObjectId());
+        setRestaurant(r, restaurant);
+        restaurantDeals[r] = DealSnapshot.EMPTY_BUCKET;
+        return r;
+    }
+
+    void setRestaurant(int r, Restaurant restaurant) {
+        restaurantName[r] = dictionary.intern(restaurant.getName());
+        restaurantAddress1[r] = dictionary.intern(restaurant.getAddress1());
+        restaurantSuburb[r] = dictionary.intern(restaurant.getSuburb());
+        restaurantOpen[r] = dictionary.intern(restaurant.getOpen());
+        restaurantClose[r] = dictionary.intern(restaurant.getClose());
+    }
+
+    void removeRestaurant(int r) {
+        restaurantDeals[r] = DealSnapshot.EMPTY_BUCKET;
+    }
+
+    boolean sameRestaurant(int r, Restaurant restaurant) {
+        return Objects.equals(dictionary.get(restaurantName[r]), restaurant.getName())
+                && Objects.equals(dictionary.get(restaurantAddress1[r]), restaurant.getAddress1())
+                && Objects.equals(dictionary.get(restaurantSuburb[r]), restaurant.getSuburb())
+                && Objects.equals(dictionary.get(restaurantOpen[r]), restaurant.getOpen())
+                && Objects.equals(dictionary.get(restaurantClose[r]), restaurant.getClose());
+    }
+
+    // ------------------------------------------------------------------ deals
+
+    /**
+     * @param r the restaurant row of the deal
+     * @param restaurant the restaurant, needed to resolve the deal's window
+     * @return the deal slot
+     */
+    int addDeal(int r, Restaurant restaurant, Deal deal) {
+        if (dealCount == dealRestaurant.length) {
+            int capacity = Math.max(64, dealCount * 2);
+            dealRestaurant = Arrays.copyOf(dealRestaurant, capacity);
+            dealObjectId = Arrays.copyOf(dealObjectId, capacity);
+            discount = Arrays.copyOf(discount, capacity);
+            dineInText = Arrays.copyOf(dineInText, capacity);
+            lightningText = Arrays.copyOf(lightningText, capacity);
+            qtyLeftText = Arrays.copyOf(qtyLeftText, capacity);
+            dealOpen = Arrays.copyOf(dealOpen, capacity);
+            dealClose = Arrays.copyOf(dealClose, capacity);
+            dealStart = Arrays.copyOf(dealStart, capacity);
+            dealEnd = Arrays.copyOf(dealEnd, capacity);
+            qtyLeft = Arrays.copyOf(qtyLeft, capacity);
+            startMinute = Arrays.copyOf(startMinute, capacity);
+            endMinute = Arrays.copyOf(endMinute, capacity);
+        }
+        int d = dealCount++;
+        startMinute[d] = INACTIVE;
+        endMinute[d] = INACTIVE;
+        setDeal(d, r, restaurant, deal);
+        return d;
+    }
+
+    /**
+     * Overwrite a deal slot, and resolve its window again.
+     */
+    void setDeal(int d, int r, Restaurant restaurant, Deal deal) {
+        if (isActive(d)) activeDeals--;
+
+        dealRestaurant[d] = r;
+        dealObjectId[d] = dictionary.intern(deal.getObjectId());
+        discount[d] = dictionary.intern(deal.getDiscount());
+        dineInText[d] = dictionary.intern(deal.getDineIn());
+        lightningText[d] = dictionary.intern(deal.getLightning());
+        qtyLeftText[d] = dictionary.intern(deal.getQtyLeft());
+        dealOpen[d] = dictionary.intern(deal.getOpen());
+        dealClose[d] = dictionary.intern(deal.getClose());
+        dealStart[d] = dictionary.intern(deal.getStart());
+        dealEnd[d] = dictionary.intern(deal.getEnd());
+        qtyLeft[d] = DealUtils.safeTransInt(deal.getQtyLeft());
+        dineIn.set(d, Boolean.parseBoolean(deal.getDineIn()));
+        lightning.set(d, Boolean.parseBoolean(deal.getLightning()));
+
+        int window = resolveWindow(restaurant, deal);
+        boolean active = window >= 0;
+        startMinute[d] = active ? DealUtils.windowStart(window) : INACTIVE;
+        endMinute[d] = active ? DealUtils.windowEnd(window) : INACTIVE;
+        if (isActive(d)) activeDeals++;
+    }
+
+    void removeDeal(int d) {
+        if (isActive(d)) activeDeals--;
+        dealRestaurant[d] = REMOVED;
+        startMinute[d] = INACTIVE;
+        endMinute[d] = INACTIVE;
+        removedDeals++;
+    }
+
+    boolean isActive(int d) {
+        return startMinute[d] != INACTIVE;
+    }
+
+    boolean sameDeal(int d, Deal deal) {
+        return Objects.equals(dictionary.get(discount[d]), deal.getDiscount())
+                && Objects.equals(dictionary.get(dineInText[d]), deal.getDineIn())
+                && Objects.equals(dictionary.get(lightningText[d]), deal.getLightning())
+                && Objects.equals(dictionary.get(qtyLeftText[d]), deal.getQtyLeft())
+                && Objects.equals(dictionary.get(dealOpen[d]), deal.getOpen())
+                && Objects.equals(dictionary.get(dealClose[d]), deal.getClose())
+                && Objects.equals(dictionary.get(dealStart[d]), deal.getStart())
+                && Objects.equals(dictionary.get(dealEnd[d]), deal.getEnd());
+    }
+
+    /**
+     * Resolve the active window of a deal.
+     * @return the packed window, or a negative value if the deal is not active or its window is invalid.
+     */
+    private static int resolveWindow(Restaurant restaurant, Deal deal) {
+        int window = DealUtils.getActiveMinutesOfDeal(restaurant, deal);
+        if (window == DealUtils.INVALID_WINDOW) {
+            // One broken deal should not break the whole snapshot.
+            log.warn("Skip deal {} of restaurant {}: invalid time window",
+                    deal.getObjectId(), restaurant.getObjectId());
+        }
+        return window;
+    }
+
+    // ------------------------------------------------------------------ publish
+
+    /**
+     * Trim the spare capacity and freeze the dictionary, the columns are read-only afterwards.
+     */
+    SnapshotColumns freeze() {
+        dictionary.freeze(repeatedStrings());
+        restaurantObjectId = Arrays.copyOf(restaurantObjectId, restaurantCount);
+        restaurantName = Arrays.copyOf(restaurantName, restaurantCount);
+        restaurantAddress1 = Arrays.copyOf(restaurantAddress1, restaurantCount);
+        restaurantSuburb = Arrays.copyOf(restaurantSuburb, restaurantCount);
+        restaurantOpen = Arrays.copyOf(restaurantOpen, restaurantCount);
+        restaurantClose = Arrays.copyOf(restaurantClose, restaurantCount);
+        restaurantDeals = Arrays.copyOf(restaurantDeals, restaurantCount);
+        dealRestaurant = Arrays.copyOf(dealRestaurant, dealCount);
+        dealObjectId = Arrays.copyOf(dealObjectId, dealCount);
+        discount = Arrays.copyOf(discount, dealCount);
+        dineInText = Arrays.copyOf(dineInText, dealCount);
+        lightningText = Arrays.copyOf(lightningText, dealCount);
+        qtyLeftText = Arrays.copyOf(qtyLeftText, dealCount);
+        dealOpen = Arrays.copyOf(dealOpen, dealCount);
+        dealClose = Arrays.copyOf(dealClose, dealCount);
+        dealStart = Arrays.copyOf(dealStart, dealCount);
+        dealEnd = Arrays.copyOf(dealEnd, dealCount);
+        qtyLeft = Arrays.copyOf(qtyLeft, dealCount);
+        startMinute = Arrays.copyOf(startMinute, dealCount);
+        endMinute = Arrays.copyOf(endMinute, dealCount);
+        return this;
+    }
+
+    /**
+     * The strings referenced more than once by the current restaurants and deals, the removed ones are left out,
+     * so a string which a patch interned again for the same row still counts once.
+     */
+    private BitSet repeatedStrings() {
+        BitSet seen = new BitSet(dictionary.size());
+        BitSet repeated = new BitSet(dictionary.size());
+        for (int r : restaurantOrder) {
+            reference(seen, repeated, restaurantObjectId[r]);
+            reference(seen, repeated, restaurantName[r]);
+            reference(seen, repeated, restaurantAddress1[r]);
+            reference(seen, repeated, restaurantSuburb[r]);
+            reference(seen, repeated, restaurantOpen[r]);
+            reference(seen, repeated, restaurantClose[r]);
+        }
+        for (int d = 0; d < dealCount; d++) {
+            if (dealRestaurant[d] == REMOVED) continue;
+            reference(seen, repeated, dealObjectId[d]);
+            reference(seen, repeated, discount[d]);
+            reference(seen, repeated, dineInText[d]);
+            reference(seen, repeated, lightningText[d]);
+            reference(seen, repeated, qtyLeftText[d]);
+            reference(seen, repeated, dealOpen[d]);
+            reference(seen, repeated, dealClose[d]);
+            reference(seen, repeated, dealStart[d]);
+            reference(seen, repeated, dealEnd[d]);
+        }
+        return repeated;
+    }
+
+    private static void reference(BitSet seen, BitSet repeated, int id) {
+        if (id == StringDictionary.NULL_ID) {
+            return;
+        }
+        if (seen.get(id)) {
+            repeated.set(id);
+        } else {
+            seen.set(id);
+        }
+    }
+
+    /**
+     * Build the restaurant POJO of a row back from the columns.
+     */
+    Restaurant toRestaurant(int r) {
+        Restaurant restaurant = new Restaurant();
+        restaurant.setObjectId(dictionary.get(restaurantObjectId[r]));
+        restaurant.setName(dictionary.get(restaurantName[r]));
+        restaurant.setAddress1(dictionary.get(restaurantAddress1[r]));
+        restaurant.setSuburb(dictionary.get(restaurantSuburb[r]));
+        restaurant.setOpen(dictionary.get(restaurantOpen[r]));
+        restaurant.setClose(dictionary.get(restaurantClose[r]));
+        if (restaurantDeals[r] == null) {
+            return restaurant;
+        }
+        List<Deal> deals = new ArrayList<>(restaurantDeals[r].length);
+        for (int d : restaurantDeals[r]) {
+            deals.add(toDeal(d));
+        }
+        restaurant.setDeals(deals);
+        return restaurant;
+    }
+
+    private Deal toDeal(int d) {
+        Deal deal = new Deal();
+        deal.setObjectId(dictionary.get(dealObjectId[d]));
+        deal.setDiscount(dictionary.get(discount[d]));
+        deal.setDineIn(dictionary.get(dineInText[d]));
+        deal.setLightning(dictionary.get(lightningText[d]));
+        deal.setQtyLeft(dictionary.get(qtyLeftText[d]));
+        deal.setOpen(dictionary.get(dealOpen[d]));
+        deal.setClose(dictionary.get(dealClose[d]));
+        deal.setStart(dictionary.get(dealStart[d]));
+        deal.setEnd(dictionary.get(dealEnd[d]));
+        return deal;
+    }
+
+    /**
+     * Estimated heap bytes of the columns and the dictionary.
+     */
+    long estimateHeapBytes() {
+        long bytes = dictionary.estimateHeapBytes();
+        bytes += 6 * HeapSize.array(restaurantObjectId.length, HeapSize.INT);
+        bytes += HeapSize.array(restaurantOrder.length, HeapSize.INT);
+        bytes += HeapSize.array(restaurantDeals.length, HeapSize.REFERENCE);
+        for (int[] deals : restaurantDeals) {
+            if (deals != null && deals != DealSnapshot.EMPTY_BUCKET) bytes += HeapSize.array(deals.length, HeapSize.INT);
+        }
+        bytes += 14 * HeapSize.array(dealRestaurant.length, HeapSize.INT);
+        bytes += 2 * HeapSize.array(dineIn.size() / 64, 8);
+        return bytes;
+    }
+
+    String restaurantKey(int r) {
+        return dictionary.get(restaurantObjectId[r]);
+    }
+
+    /**
+     * The key of a deal slot, see {@link #dealKey(String, String)}.
+     */
+    String dealKey(int d) {
+        return dealKey(dictionary.get(restaurantObjectId[dealRestaurant[d]]), dictionary.get(dealObjectId[d]));
+    }
+
+    /**
+     * Deal objectIds are only unique within a restaurant, so a deal is keyed by both.
+     */
+    static String dealKey(String restaurantObjectId, String dealObjectId) {
+        return restaurantObjectId + '/' + dealObjectId;
+    }
+}
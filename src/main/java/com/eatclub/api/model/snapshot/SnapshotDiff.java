@@ -0,0 +1,26 @@
+package com.eatclub.api.model.snapshot;
+
+/**
+ * What changed between a snapshot and the one before it, keyed on Restaurant.objectId / Deal.objectId.
+ *
+ * @param restaurantsAdded    restaurants which are new
+ * @param restaurantsRemoved  restaurants which are gone
+ * @param restaurantsModified restaurants whose own fields changed
+ * @param dealsAdded          deals which are new
+ * @param dealsRemoved        deals which are gone
+ * @param dealsModified       deals whose fields, or whose restaurant's fields, changed
+ * @param dealsUnchanged      deals which are the same
+ * @param changedMinutes      how many minute buckets were rebuilt
+ * @param fullRebuild         true means the snapshot was compiled from scratch instead of patched
+ */
+public record SnapshotDiff(int restaurantsAdded, int restaurantsRemoved, int restaurantsModified,
+                           int dealsAdded, int dealsRemoved, int dealsModified, int dealsUnchanged,
+                           int changedMinutes, boolean fullRebuild) {
+
+    /**
+     * Number of added, removed and modified deals.
+     */
+    public int changedDeals() {
+        return dealsAdded + dealsRemoved + dealsModified;
+    }
+}
@@ -0,0 +1,303 @@
+package com.eatclub.api.model.snapshot;
+
+import com.eatclub.api.model.domain.Deal;
+import com.eatclub.api.model.domain.Restaurant;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.eatclub.api.model.snapshot.DealSnapshot.MINUTES_OF_DAY;
+
+/**
+ * Patch a snapshot into the next one.
+ * 1) Diff the restaurants and deals by objectId: added, removed, modified or unchanged.
+ * 2) The columns are copied, modified deals are written to their old slot, so the API order is kept;
+ *    added deals are appended, removed deals leave an unused slot (tombstone).
+ *    A feed which reorders the previous restaurants or deals, or inserts a restaurant before a previous one,
+ *    is compiled instead: the old slots would keep the previous API order.
+ * 3) Only the minute buckets and per-minute counts covered by the old or the new window of a changed deal
+ *    are rebuilt, the other buckets are shared with the previous snapshot.
+ * 4) The start order, the facet bitsets and the objectId indexes of the previous snapshot are copied
+ *    and patched for the changed rows and slots, see {@link Changes}.
+ * Only the rebuilding scales with the size of the change, a patch still has an O(N) floor:
+ * the diff compares every record and indexes the previous objectIds, the dictionary and the columns are copied,
+ * and the content hash covers every field. Those are plain passes and array copies, without sorting or hashing
+ * into new indexes, which is what a full compile adds on top.
+ */
+final class SnapshotPatcher {
+
+    /**
+     * Compile from scratch once the changed deals, or the tombstones, exceed this share of the active deals.
+     */
+    private static final double FULL_REBUILD_RATIO = 0.25;
+
+    private SnapshotPatcher() {
+    }
+
+    /**
+     * What a patch changed, so the new snapshot patches the indexes of the previous one instead of building them.
+     * Rows and slots are appended past the end of the previous columns, so those are the added ones.
+     * @param previous the snapshot which was patched
+     * @param slots the deal slots added, removed or modified
+     * @param removedRows the restaurant rows removed
+     * @param removedSlots the deal slots removed
+     */
+    record Changes(DealSnapshot previous, BitSet slots, BitSet removedRows, BitSet removedSlots) {
+    }
+
+    static DealSnapshot patch(DealSnapshot previous, List<Restaurant> restaurants, long version) {
+        SnapshotColumns oldColumns = previous.columns();
+        int oldLive = oldColumns.activeDeals;
+        if (oldLive == 0) {
+            return DealSnapshot.compile(restaurants, version);
+        }
+
+        // 1) Index the previous restaurant rows and deal slots by objectId, and rank them in the previous API order.
+        Map<String, Integer> oldRows = new HashMap<>(oldColumns.restaurantOrder.length * 2);
+        Map<String, Integer> oldSlots = new HashMap<>(oldColumns.dealCount * 2);
+        int[] rowRank = new int[oldColumns.restaurantCount];
+        int[] slotRank = new int[oldColumns.dealCount];
+        if (!indexByObjectId(oldColumns, oldRows, oldSlots, rowRank, slotRank)) {
+            return DealSnapshot.compile(restaurants, version);
+        }
+
+        // 2) Diff the new restaurants against the previous ones, and patch a copy of the columns.
+        SnapshotColumns columns = new SnapshotColumns(oldColumns);
+        int[] restaurantOrder = new int[restaurants.size()];
+        int restaurantCount = 0;
+        // Window changes are collected as +1/-1 deltas, and added to the per-minute count once.
+        int[] delta = new int[MINUTES_OF_DAY + 1];
+        BitSet changedSlots = new BitSet();
+        BitSet changedMinutes = new BitSet(MINUTES_OF_DAY);
+        int restaurantsAdded = 0;
+        int restaurantsModified = 0;
+        int dealsAdded = 0;
+        int dealsModified = 0;
+        int dealsUnchanged = 0;
+        Set<String> seenRestaurants = new HashSet<>();
+        Set<String> seenDeals = new HashSet<>();
+        // The previous restaurants and deals must come in their previous order, new restaurants after them.
+        int lastRowRank = -1;
+        int lastSlotRank = -1;
+
+        for (Restaurant restaurant : restaurants) {
+            if (restaurant == null) continue;
+            // Without a unique objectId nothing can be diffed.
+            if (restaurant.getObjectId() == null || !seenRestaurants.add(restaurant.getObjectId())) {
+                return compileInstead(columns, restaurants, version, null);
+            }
+
+            Integer oldRow = oldRows.remove(restaurant.getObjectId());
+            int r;
+            boolean restaurantChanged;
+            if (oldRow == null) {
+                r = columns.addRestaurant(restaurant);
+                restaurantChanged = true;
+                restaurantsAdded++;
+            } else {
+                if (restaurantsAdded > 0 || rowRank[oldRow] < lastRowRank) {
+                    return compileInstead(columns, restaurants, version, null);
+                }
+                lastRowRank = rowRank[oldRow];
+                r = oldRow;
+                restaurantChanged = !columns.sameRestaurant(r, restaurant);
+                if (restaurantChanged) {
+                    columns.setRestaurant(r, restaurant);
+                    restaurantsModified++;
+                }
+            }
+            restaurantOrder[restaurantCount++] = r;
+            if (restaurant.getDeals() == null) {
+                columns.restaurantDeals[r] = null;
+                continue;
+            }
+
+            int[] row = new int[restaurant.getDeals().size()];
+            int n = 0;
+            for (Deal deal : restaurant.getDeals()) {
+                if (deal == null) continue;
+                String key = SnapshotColumns.dealKey(restaurant.getObjectId(), deal.getObjectId());
+                if (deal.getObjectId() == null || !seenDeals.add(key)) {
+                    return compileInstead(columns, restaurants, version, null);
+                }
+
+                // 2.1) Classify the deal, the restaurant fields are part of the deal's window and DTO.
+                Integer slot = oldSlots.remove(key);
+                if (slot != null) {
+                    if (slotRank[slot] < lastSlotRank) {
+                        return compileInstead(columns, restaurants, version, null);
+                    }
+                    lastSlotRank = slotRank[slot];
+                }
+                if (slot == null) {
+                    dealsAdded++;
+                } else if (restaurantChanged || !columns.sameDeal(slot, deal)) {
+                    dealsModified++;
+                } else {
+                    dealsUnchanged++;
+                    row[n++] = slot;
+                    continue;
+                }
+
+                // 2.2) Write the deal to its old slot, or append it, and move its window.
+                int d;
+                if (slot != null) {
+                    d = slot;
+                    removeWindow(columns, d, delta, changedMinutes);
+                    columns.setDeal(d, r, restaurant, deal);
+                } else {
+                    d = columns.addDeal(r, restaurant, deal);
+                }
+                addWindow(columns, d, delta, changedMinutes);
+                changedSlots.set(d);
+                row[n++] = d;
+            }
+            row = n == row.length ? row : Arrays.copyOf(row, n);
+            // Keep sharing the old row when the deals of the restaurant are the same.
+            if (!Arrays.equals(row, columns.restaurantDeals[r])) {
+                columns.restaurantDeals[r] = row;
+            }
+        }
+
+        // 3) The deals and restaurants which are left are removed.
+        int dealsRemoved = oldSlots.size();
+        BitSet removedSlots = new BitSet();
+        for (int slot : oldSlots.values()) {
+            removeWindow(columns, slot, delta, changedMinutes);
+            columns.removeDeal(slot);
+            changedSlots.set(slot);
+            removedSlots.set(slot);
+        }
+        int restaurantsRemoved = oldRows.size();
+        BitSet removedRows = new BitSet();
+        for (int row : oldRows.values()) {
+            columns.removeRestaurant(row);
+            removedRows.set(row);
+        }
+        columns.restaurantOrder = Arrays.copyOf(restaurantOrder, restaurantCount);
+
+        // 4) A large change is cheaper, and leaves a compact snapshot, when compiled from scratch.
+        int live = columns.dealCount - columns.removedDeals;
+        boolean fullRebuild = changedSlots.cardinality() > oldLive * FULL_REBUILD_RATIO
+                || columns.removedDeals > live * FULL_REBUILD_RATIO;
+        if (fullRebuild) {
+            SnapshotDiff diff = new SnapshotDiff(restaurantsAdded, restaurantsRemoved, restaurantsModified,
+                    dealsAdded, dealsRemoved, dealsModified, dealsUnchanged, MINUTES_OF_DAY, true);
+            return compileInstead(columns, restaurants, version, diff);
+        }
+
+        // 5) Rebuild the per-minute count and the changed buckets only.
+        int[] concurrency = previous.concurrency().clone();
+        DealSnapshot.prefixSum(delta);
+        for (int m = changedMinutes.nextSetBit(0); m >= 0; m = changedMinutes.nextSetBit(m + 1)) {
+            concurrency[m] += delta[m];
+        }
+        int[][] minuteIndex = previous.minuteIndex().clone();
+        for (int m = changedMinutes.nextSetBit(0); m >= 0; m = changedMinutes.nextSetBit(m + 1)) {
+            minuteIndex[m] = rebuildBucket(minuteIndex[m], m, columns, changedSlots, concurrency[m]);
+        }
+
+        SnapshotDiff diff = new SnapshotDiff(restaurantsAdded, restaurantsRemoved, restaurantsModified,
+                dealsAdded, dealsRemoved, dealsModified, dealsUnchanged, changedMinutes.cardinality(), false);
+        Changes changes = new Changes(previous, changedSlots, removedRows, removedSlots);
+        return new DealSnapshot(version, changes, DealSnapshot.hashContent(restaurants), columns,
+                minuteIndex, concurrency, diff, changedMinutes);
+    }
+
+    /**
+     * Give up a patch: release the strings the copied columns share with the previous snapshot, and compile.
+     * @param diff the diff to report, null to diff nothing
+     */
+    private static DealSnapshot compileInstead(SnapshotColumns columns, List<Restaurant> restaurants, long version,
+                                               SnapshotDiff diff) {
+        columns.dictionary.release();
+        return diff == null
+                ? DealSnapshot.compile(restaurants, version)
+                : DealSnapshot.compile(restaurants, version, diff);
+    }
+
+    /**
+     * Merge the unchanged slots of the old bucket with the changed slots active at the minute.
+     * Both are in ascending order, so the result keeps the slot order.
+     */
+    private static int[] rebuildBucket(int[] oldBucket, int minute, SnapshotColumns columns,
+                                       BitSet changedSlots, int bucketSize) {
+        if (bucketSize == 0) {
+            return DealSnapshot.EMPTY_BUCKET;
+        }
+        int[] bucket = new int[bucketSize];
+        int n = 0;
+        int i = 0;
+        int changed = nextActiveChangedSlot(changedSlots, 0, minute, columns);
+        while (i < oldBucket.length || changed >= 0) {
+            // Skip the old slots which changed, they are visited through changedSlots.
+            if (i < oldBucket.length && changedSlots.get(oldBucket[i])) {
+                i++;
+                continue;
+            }
+            if (changed < 0 || (i < oldBucket.length && oldBucket[i] < changed)) {
+                bucket[n++] = oldBucket[i++];
+            } else {
+                bucket[n++] = changed;
+                changed = nextActiveChangedSlot(changedSlots, changed + 1, minute, columns);
+            }
+        }
+        return bucket;
+    }
+
+    private static int nextActiveChangedSlot(BitSet changedSlots, int from, int minute, SnapshotColumns columns) {
+        for (int d = changedSlots.nextSetBit(from); d >= 0; d = changedSlots.nextSetBit(d + 1)) {
+            if (columns.startMinute[d] <= minute && minute < columns.endMinute[d]) {
+                return d;
+            }
+        }
+        return -1;
+    }
+
+    private static void addWindow(SnapshotColumns columns, int d, int[] delta, BitSet changedMinutes) {
+        if (!columns.isActive(d)) return;
+        delta[columns.startMinute[d]]++;
+        delta[columns.endMinute[d]]--;
+        changedMinutes.set(columns.startMinute[d], columns.endMinute[d]);
+    }
+
+    private static void removeWindow(SnapshotColumns columns, int d, int[] delta, BitSet changedMinutes) {
+        if (!columns.isActive(d)) return;
+        delta[columns.startMinute[d]]--;
+        delta[columns.endMinute[d]]++;
+        changedMinutes.set(columns.startMinute[d], columns.endMinute[d]);
+    }
+
+    /**
+     * Index the current restaurant rows and deal slots by objectId, and rank them in the API order.
+     * @return false if an objectId is missing or duplicated.
+     */
+    private static boolean indexByObjectId(SnapshotColumns columns,
+                                           Map<String, Integer> rowIndex, Map<String, Integer> slotIndex,
+                                           int[] rowRank, int[] slotRank) {
+        int rank = 0;
+        for (int i = 0; i < columns.restaurantOrder.length; i++) {
+            int r = columns.restaurantOrder[i];
+            String objectId = columns.restaurantKey(r);
+            if (objectId == null || rowIndex.put(objectId, r) != null) {
+                return false;
+            }
+            rowRank[r] = i;
+            if (columns.restaurantDeals[r] == null) continue;
+
+            for (int d : columns.restaurantDeals[r]) {
+                if (columns.dealObjectId[d] == StringDictionary.NULL_ID
+                        || slotIndex.put(columns.dealKey(d), d) != null) {
+                    return false;
+                }
+                slotRank[d] = rank++;
+            }
+        }
+        return true;
+    }
+}
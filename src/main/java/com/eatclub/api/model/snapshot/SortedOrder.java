@@ -0,0 +1,179 @@
+package com.eatclub.api.model.snapshot;
+
+import com.eatclub.api.util.DealUtils;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+
+import static com.eatclub.api.model.snapshot.DealSnapshot.MINUTES_OF_DAY;
+
+/**
+ * Every deal slot of a snapshot ranked by one {@link DealSort}, and the minute buckets in that order.
+ * 1) rank: the position of every slot in the sorted order, so sorting any set of slots is sorting ints.
+ *    The sort key is reduced to a dense rank of its distinct values first (there are few discounts
+ *    and restaurant names), then (key rank, slot) is sorted as one long, so ties keep the API order.
+ * 2) buckets: minuteIndex[m] sorted by rank, built the first time a minute is paged in this order,
+ *    then every page of that minute is a slice of it.
+ * 3) top: the first k of any set of slots, with a bounded heap of ranks, for the pages of a range.
+ */
+final class SortedOrder {
+
+    private final int[] rank;
+    /**
+     * order[rank[d]] == d.
+     */
+    private final int[] order;
+    private final AtomicReferenceArray<int[]> buckets;
+
+    SortedOrder(SnapshotColumns columns, DealSort sort) {
+        int dealCount = columns.dealCount;
+        int[] keys = sortKeys(columns, sort);
+        long[] sorted = new long[dealCount];
+        for (int d = 0; d < dealCount; d++) {
+            sorted[d] = (long) keys[d] << 32 | d;
+        }
+        Arrays.sort(sorted);
+        this.rank = new int[dealCount];
+        this.order = new int[dealCount];
+        for (int i = 0; i < dealCount; i++) {
+            int d = (int) sorted[i];
+            order[i] = d;
+            rank[d] = i;
+        }
+        this.buckets = new AtomicReferenceArray<>(MINUTES_OF_DAY);
+    }
+
+    /**
+     * The dense rank of the sort key of every slot, 0 comes first.
+     */
+    private static int[] sortKeys(SnapshotColumns columns, DealSort sort) {
+        int dealCount = columns.dealCount;
+        int[] keys = new int[dealCount];
+        if (sort == DealSort.NAME) {
+            // Rank the restaurant names once, deals take the rank of their restaurant.
+            // Names are read out of the dictionary once, rather than on every comparison.
+            Integer[] rows = new Integer[columns.restaurantCount];
+            String[] names = new String[columns.restaurantCount];
+            for (int r = 0; r < rows.length; r++) {
+                rows[r] = r;
+                names[r] = columns.dictionary.get(columns.restaurantName[r]);
+            }
+            Comparator<String> byName = Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER);
+            Arrays.sort(rows, (a, b) -> byName.compare(names[a], names[b]));
+            int[] rowRank = new int[rows.length];
+            int denseRank = 0;
+            for (int i = 0; i < rows.length; i++) {
+                if (i > 0 && byName.compare(names[rows[i - 1]], names[rows[i]]) != 0) {
+                    denseRank++;
+                }
+                rowRank[rows[i]] = denseRank;
+            }
+            for (int d = 0; d < dealCount; d++) {
+                int r = columns.dealRestaurant[d];
+                keys[d] = r == SnapshotColumns.REMOVED ? Integer.MAX_VALUE : rowRank[r];
+            }
+            return keys;
+        }
+
+        // Discount and qtyLeft are highest first: rank the distinct values descending.
+        for (int d = 0; d < dealCount; d++) {
+            keys[d] = sort == DealSort.DISCOUNT
+                    ? DealUtils.safeTransInt(columns.dictionary.get(columns.discount[d]))
+                    : columns.qtyLeft[d];
+        }
+        int[] distinct = Arrays.stream(keys).distinct().sorted().toArray();
+        for (int d = 0; d < dealCount; d++) {
+            keys[d] = distinct.length - 1 - Arrays.binarySearch(distinct, keys[d]);
+        }
+        return keys;
+    }
+
+    /**
+     * @return the deals active at a minute in this order; it must not be modified
+     */
+    int[] bucket(int minuteOfDay, int[] unsorted) {
+        int[] bucket = buckets.get(minuteOfDay);
+        if (bucket == null) {
+            // Building twice under a race is harmless, the result is the same.
+            bucket = unsorted.clone();
+            sort(bucket, bucket.length);
+            buckets.compareAndSet(minuteOfDay, null, bucket);
+        }
+        return bucket;
+    }
+
+    /**
+     * @param k the number of slots to keep, at least the number of slots it is given, or 1
+     * @return a consumer which keeps the first k slots it is given in this order
+     */
+    TopSlots top(int k) {
+        return new TopSlots(k);
+    }
+
+    /**
+     * The first k slots in this order, kept as a max-heap of their ranks:
+     * O(n log k) time and O(k) memory for n slots, rather than sorting all of them.
+     */
+    final class TopSlots implements IntConsumer {
+
+        private final int[] heap;
+        private int size;
+
+        private TopSlots(int k) {
+            this.heap = new int[k];
+        }
+
+        @Override
+        public void accept(int dealSlot) {
+            int r = rank[dealSlot];
+            if (size < heap.length) {
+                // Sift up.
+                int i = size++;
+                while (i > 0 && heap[(i - 1) >>> 1] < r) {
+                    heap[i] = heap[(i - 1) >>> 1];
+                    i = (i - 1) >>> 1;
+                }
+                heap[i] = r;
+            } else if (r < heap[0]) {
+                // Replace the last of the kept slots, and sift down.
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && heap[child + 1] > heap[child]) child++;
+                    if (heap[child] <= r) break;
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = r;
+            }
+        }
+
+        /**
+         * @return the kept slots, in this order
+         */
+        int[] toSortedSlots() {
+            int[] slots = Arrays.copyOf(heap, size);
+            Arrays.sort(slots);
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = order[slots[i]];
+            }
+            return slots;
+        }
+    }
+
+    /**
+     * Sort the first length slots in place.
+     */
+    void sort(int[] slots, int length) {
+        for (int i = 0; i < length; i++) {
+            slots[i] = rank[slots[i]];
+        }
+        Arrays.sort(slots, 0, length);
+        for (int i = 0; i < length; i++) {
+            slots[i] = order[slots[i]];
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.eatclub.api.model.snapshot;
+
+import com.eatclub.api.util.DirectBufferUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Deduplicate the strings of a snapshot: every distinct string is kept once, and referenced by an int id.
+ * Suburbs, discounts, times and "true"/"false" repeat a lot, so most ids point to a handful of strings.
+ * null is id -1.
+ * The dictionary is append-only while a snapshot is built, and frozen once it is published.
+ * Frozen, the strings used only once (objectIds, names, addresses, so one or more per deal) are moved into
+ * an off-heap buffer as UTF-8 and read back on demand; only the repeated strings stay on the heap,
+ * so the number of heap objects no longer grows with the number of deals.
+ * Which strings are repeated is told by the columns when they are frozen, from the rows they hold then:
+ * a string interned again by the same row of a patch is still used once.
+ * The dictionary of a patched snapshot starts from the frozen one of the previous snapshot: the off-heap buffer,
+ * its offsets and the lookup table are shared by reference, and new strings go into an overlay on the heap.
+ * Freezing it only moves the overlay off the heap once the strings used once on the heap are more than
+ * a quarter of those already off it; then one new buffer is written, the shared bytes copied over as they are.
+ * The dictionaries sharing a buffer are counted, the buffer is freed once the last of them is released,
+ * see {@link DealSnapshot#release()}; a dictionary which is never released leaves its buffer to the GC.
+ */
+final class StringDictionary {
+
+    static final int NULL_ID = -1;
+
+    private static final ByteBuffer EMPTY_DATA = ByteBuffer.allocateDirect(0);
+    private static final int[] NO_OFFSETS = {0};
+    private static final int[] NO_TABLE = new int[0];
+
+    // The frozen strings, shared with the dictionaries started from this one; never modified.
+    /**
+     * The frozen strings by id, null for a string which is off-heap.
+     */
+    private String[] values;
+    /**
+     * Number of frozen strings, the ids below it.
+     */
+    private int frozenSize;
+    /**
+     * Off-heap UTF-8 bytes of the strings, string id is at [offsets[id], offsets[id + 1]).
+     * offsets may be shorter than values, the ids after it are all on the heap.
+     */
+    private ByteBuffer data = EMPTY_DATA;
+    private int[] offsets = NO_OFFSETS;
+    private int offHeapCount;
+    /**
+     * The dictionaries sharing the buffer, this one included.
+     */
+    private AtomicInteger dataUsers = new AtomicInteger(1);
+    /**
+     * Open-addressing (linear probing) table of the frozen ids by hash, at most half full,
+     * so a string is found without a map of String keys; the hash of an entry is kept next to it.
+     */
+    private int[] tableHashes = NO_TABLE;
+    private int[] tableIds = NO_TABLE;
+
+    // The overlay, the strings added since; dropped once frozen.
+    private String[] added;
+    private int size;
+    private Map<String, Integer> ids;
+
+    StringDictionary() {
+        this.values = new String[0];
+        this.added = new String[64];
+        this.ids = new HashMap<>();
+    }
+
+    /**
+     * Start from the strings of a frozen dictionary, ids stay the same.
+     * Nothing is copied or decoded, the frozen strings are shared.
+     */
+    StringDictionary(StringDictionary base) {
+        this.values = base.values;
+        this.frozenSize = base.frozenSize;
+        this.data = base.data;
+        this.offsets = base.offsets;
+        this.offHeapCount = base.offHeapCount;
+        this.dataUsers = base.dataUsers;
+        dataUsers.incrementAndGet();
+        this.tableHashes = base.tableHashes;
+        this.tableIds = base.tableIds;
+        this.size = base.size;
+        this.added = new String[64];
+        this.ids = new HashMap<>();
+    }
+
+    int intern(String value) {
+        if (value == null) {
+            return NULL_ID;
+        }
+        int frozen = find(value);
+        if (frozen != NULL_ID) {
+            return frozen;
+        }
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        int index = size - frozenSize;
+        if (index == added.length) {
+            added = Arrays.copyOf(added, index * 2);
+        }
+        added[index] = value;
+        ids.put(value, size);
+        return size++;
+    }
+
+    /**
+     * @return the id of a frozen string, or NULL_ID
+     */
+    private int find(String value) {
+        if (tableIds.length == 0) {
+            return NULL_ID;
+        }
+        int mask = tableIds.length - 1;
+        int hash = hash(value.hashCode());
+        for (int i = hash & mask; tableIds[i] != NULL_ID; i = (i + 1) & mask) {
+            if (tableHashes[i] == hash && equals(tableIds[i], value)) {
+                return tableIds[i];
+            }
+        }
+        return NULL_ID;
+    }
+
+    private static int hash(int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return the string if it is on the heap, null if it is off-heap
+     */
+    private String heapValue(int id) {
+        return id < frozenSize ? values[id] : added[id - frozenSize];
+    }
+
+    String get(int id) {
+        if (id == NULL_ID) {
+            return null;
+        }
+        String value = heapValue(id);
+        if (value != null) {
+            return value;
+        }
+        // Absolute reads, so concurrent readers never move a shared position.
+        byte[] bytes = new byte[offsets[id + 1] - offsets[id]];
+        data.get(offsets[id], bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The hash of a string, the same as its String.hashCode(); an off-heap string is hashed from its bytes,
+     * without decoding it into a String.
+     */
+    int hashCode(int id) {
+        String value = heapValue(id);
+        if (value != null) {
+            return value.hashCode();
+        }
+        int hash = 0;
+        for (int i = offsets[id], end = offsets[id + 1]; i < end; i += utf8Length(data.get(i))) {
+            int codePoint = codePointAt(i);
+            if (Character.isBmpCodePoint(codePoint)) {
+                hash = 31 * hash + codePoint;
+            } else {
+                hash = 31 * (31 * hash + Character.highSurrogate(codePoint)) + Character.lowSurrogate(codePoint);
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Compare a string with a string of the dictionary; an off-heap string is compared against its bytes,
+     * without decoding it into a String.
+     */
+    boolean equals(int id, String string) {
+        if (id == NULL_ID || string == null) {
+            return id == NULL_ID && string == null;
+        }
+        String value = heapValue(id);
+        if (value != null) {
+            return value.equals(string);
+        }
+        int position = 0;
+        for (int i = offsets[id], end = offsets[id + 1]; i < end; i += utf8Length(data.get(i))) {
+            int codePoint = codePointAt(i);
+            if (position >= string.length() || string.codePointAt(position) != codePoint) {
+                return false;
+            }
+            position += Character.charCount(codePoint);
+        }
+        return position == string.length();
+    }
+
+    /**
+     * @return the bytes of the UTF-8 sequence starting with this byte
+     */
+    private static int utf8Length(byte lead) {
+        if (lead >= 0) return 1;
+        if ((lead & 0xE0) == 0xC0) return 2;
+        if ((lead & 0xF0) == 0xE0) return 3;
+        return 4;
+    }
+
+    /**
+     * Decode the UTF-8 sequence at a position of the off-heap data, it was encoded by String.getBytes,
+     * so it is well-formed.
+     */
+    private int codePointAt(int i) {
+        byte lead = data.get(i);
+        return switch (utf8Length(lead)) {
+            case 1 -> lead;
+            case 2 -> (lead & 0x1F) << 6 | data.get(i + 1) & 0x3F;
+            case 3 -> (lead & 0x0F) << 12 | (data.get(i + 1) & 0x3F) << 6 | data.get(i + 2) & 0x3F;
+            default -> (lead & 0x07) << 18 | (data.get(i + 1) & 0x3F) << 12 | (data.get(i + 2) & 0x3F) << 6
+                    | data.get(i + 3) & 0x3F;
+        };
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Drop the overlay and the spare capacity, no more strings can be added,
+     * and move the strings used once off the heap, unless there are too few of them yet, see the class comment.
+     * @param repeated the ids referenced more than once by the columns, they stay on the heap
+     */
+    void freeze(BitSet repeated) {
+        String[] strings = Arrays.copyOf(values, size);
+        System.arraycopy(added, 0, strings, frozenSize, size - frozenSize);
+        int firstAdded = frozenSize;
+
+        // 1) Add the new ids to a copy of the lookup table, or build a larger one with all of them.
+        int[] hashes;
+        int[] table;
+        if (size * 2 <= tableIds.length) {
+            hashes = tableHashes.clone();
+            table = tableIds.clone();
+        } else {
+            int capacity = Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+            hashes = new int[capacity];
+            table = new int[capacity];
+            Arrays.fill(table, NULL_ID);
+            firstAdded = 0;
+        }
+        int mask = table.length - 1;
+        for (int id = firstAdded; id < size; id++) {
+            int hash = hash(strings[id] != null ? strings[id].hashCode() : hashCode(id));
+            int i = hash & mask;
+            while (table[i] != NULL_ID) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = hash;
+            table[i] = id;
+        }
+        tableHashes = hashes;
+        tableIds = table;
+
+        // 2) Count the strings used once still on the heap, the new ones and the ones no longer repeated.
+        int candidates = 0;
+        for (int id = 0; id < size; id++) {
+            if (strings[id] != null && !repeated.get(id)) candidates++;
+        }
+        if (candidates > 0 && candidates * 4L > offHeapCount) {
+            // 3) Lay out the strings off-heap back to back, by id: the ones already off-heap are copied
+            //    from the shared buffer without decoding them, then drop the heap copy of the new ones.
+            byte[][] encoded = new byte[size][];
+            int[] newOffsets = new int[size + 1];
+            long length = 0;
+            for (int id = 0; id < size; id++) {
+                newOffsets[id] = (int) length;
+                if (strings[id] == null) {
+                    length += offsets[id + 1] - offsets[id];
+                } else if (!repeated.get(id)) {
+                    encoded[id] = strings[id].getBytes(StandardCharsets.UTF_8);
+                    length += encoded[id].length;
+                }
+                if (length > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("Too many strings for one buffer: " + length + " bytes");
+                }
+            }
+            newOffsets[size] = (int) length;
+            ByteBuffer buffer = length == 0 ? EMPTY_DATA : ByteBuffer.allocateDirect((int) length);
+            for (int id = 0; id < size; id++) {
+                if (strings[id] == null) {
+                    buffer.put(newOffsets[id], data, offsets[id], offsets[id + 1] - offsets[id]);
+                } else if (encoded[id] != null) {
+                    buffer.put(newOffsets[id], encoded[id]);
+                    strings[id] = null;
+                }
+            }
+            release();
+            data = buffer;
+            dataUsers = new AtomicInteger(1);
+            offsets = newOffsets;
+            offHeapCount += candidates;
+        }
+        values = strings;
+        frozenSize = size;
+        added = null;
+        ids = null;
+    }
+
+    /**
+     * Drop the share of this dictionary in the off-heap buffer, the last one frees it.
+     * Called once, when nothing reads the dictionary any more.
+     */
+    void release() {
+        if (dataUsers.decrementAndGet() == 0 && data != EMPTY_DATA) {
+            DirectBufferUtils.free(data);
+        }
+    }
+
+    /**
+     * Estimated heap bytes of the dictionary and its strings (compressed oops, compact Latin-1 strings).
+     */
+    long estimateHeapBytes() {
+        long bytes = HeapSize.array(values.length, HeapSize.REFERENCE);
+        bytes += HeapSize.array(offsets.length, HeapSize.INT);
+        bytes += 2 * HeapSize.array(tableIds.length, HeapSize.INT);
+        for (String value : values) {
+            if (value != null) bytes += HeapSize.string(value);
+        }
+        return bytes;
+    }
+
+    /**
+     * Bytes of the strings kept off the heap, the buffer may be shared with the previous snapshots.
+     */
+    long offHeapBytes() {
+        return data.capacity();
+    }
+}
@@ -0,0 +1,93 @@
+package com.eatclub.api.model.snapshot;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.eatclub.api.model.snapshot.DealSnapshot.MINUTES_OF_DAY;
+
+/**
+ * Difference arrays (+weight at the start, -weight at the end of every window) of the active deals,
+ * one per weight and per facet combination: suburb x dineIn x lightning.
+ * A filtered curve is the sum of at most 4 arrays (the dineIn x lightning combinations) and one prefix sum,
+ * so it is O(1440) whatever the number of deals, and the deals are never scanned again.
+ * Only the combinations which have deals get an array.
+ */
+final class WeightedPeakIndex {
+
+    private static final int COMBINATIONS = 4;
+
+    /**
+     * [weight][combination] of all suburbs.
+     */
+    private final int[][][] all;
+    /**
+     * [weight][combination] per normalized suburb.
+     */
+    private final Map<String, int[][][]> bySuburb;
+
+    WeightedPeakIndex(SnapshotColumns columns) {
+        this.all = new int[PeakWeight.values().length][COMBINATIONS][];
+        this.bySuburb = new HashMap<>();
+        Map<Integer, int[][][]> bySuburbId = new HashMap<>();
+        for (int d = 0; d < columns.dealCount; d++) {
+            if (!columns.isActive(d)) continue;
+
+            int combination = combination(columns.dineIn.get(d), columns.lightning.get(d));
+            add(all, combination, columns, d);
+            int suburbId = columns.restaurantSuburb[columns.dealRestaurant[d]];
+            if (suburbId != StringDictionary.NULL_ID) {
+                int[][][] group = bySuburbId.computeIfAbsent(suburbId, id -> bySuburb.computeIfAbsent(
+                        DealFilter.normalizeSuburb(columns.dictionary.get(id)),
+                        key -> new int[PeakWeight.values().length][COMBINATIONS][]));
+                add(group, combination, columns, d);
+            }
+        }
+    }
+
+    private static int combination(boolean dineIn, boolean lightning) {
+        return (dineIn ? 2 : 0) | (lightning ? 1 : 0);
+    }
+
+    private static void add(int[][][] group, int combination, SnapshotColumns columns, int d) {
+        int start = columns.startMinute[d];
+        int end = columns.endMinute[d];
+        for (PeakWeight weight : PeakWeight.values()) {
+            int[] delta = group[weight.ordinal()][combination];
+            if (delta == null) {
+                delta = group[weight.ordinal()][combination] = new int[MINUTES_OF_DAY + 1];
+            }
+            int value = weight == PeakWeight.COUNT ? 1 : columns.qtyLeft[d];
+            delta[start] += value;
+            delta[end] -= value;
+        }
+    }
+
+    /**
+     * Get the per-minute total of the deals matching a filter.
+     * @param filter suburb, dineIn and lightning are used, minDiscount must be null
+     * @return the total of every minute, 1440 values
+     */
+    int[] curve(PeakWeight weight, DealFilter filter) {
+        if (filter.minDiscount() != null) {
+            throw new IllegalArgumentException("minDiscount is not supported by the peak time");
+        }
+        int[] curve = new int[MINUTES_OF_DAY + 1];
+        int[][][] group = filter.suburb() == null ? all : bySuburb.get(filter.suburb());
+        if (group != null) {
+            for (int combination = 0; combination < COMBINATIONS; combination++) {
+                if (filter.dineIn() != null && ((combination & 2) != 0) != filter.dineIn()) continue;
+                if (filter.lightning() != null && ((combination & 1) != 0) != filter.lightning()) continue;
+
+                int[] delta = group[weight.ordinal()][combination];
+                if (delta == null) continue;
+                for (int m = 0; m <= MINUTES_OF_DAY; m++) {
+                    curve[m] += delta[m];
+                }
+            }
+        }
+        DealSnapshot.prefixSum(curve);
+        int[] result = new int[MINUTES_OF_DAY];
+        System.arraycopy(curve, 0, result, 0, MINUTES_OF_DAY);
+        return result;
+    }
+}
@@ -1,7 +1,32 @@
 package com.eatclub.api.service;
 
+import com.eatclub.api.dto.BatchDealResponse;
+import com.eatclub.api.dto.DealDto;
 import com.eatclub.api.dto.DealResponse;
+import com.eatclub.api.dto.EncodedResponse;
+import com.eatclub.api.model.snapshot.DealFilter;
+import com.eatclub.api.model.snapshot.DealQuery;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
 
 public interface IDealService {
     DealResponse queryActiveDealsByTime(String time);
+
+    EncodedResponse queryEncodedActiveDeals(DealSnapshot snapshot, int minuteOfDay);
+
+    EncodedResponse queryEncodedActiveDeals(DealSnapshot snapshot, int fromMinute, int toMinute, DealFilter filter);
+
+    EncodedResponse queryEncodedDealPage(DealSnapshot snapshot, DealQuery query, int position, int limit);
+
+    BatchDealResponse queryBatch(DealSnapshot snapshot, List<String> times, int[] minutes, DealFilter filter);
+
+    int streamActiveDeals(DealSnapshot snapshot, int fromMinute, int toMinute, DealFilter filter,
+                          OutputStream out) throws IOException;
+
+    DealDto getDeal(DealSnapshot snapshot, String dealObjectId);
+
+    DealResponse getDealsOfRestaurant(DealSnapshot snapshot, String restaurantObjectId);
 }
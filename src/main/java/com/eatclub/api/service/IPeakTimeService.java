@@ -1,8 +1,21 @@
 package com.eatclub.api.service;
 
+import com.eatclub.api.dto.EncodedResponse;
+import com.eatclub.api.dto.HistogramResponse;
 import com.eatclub.api.dto.PeakTimeResponse;
+import com.eatclub.api.model.snapshot.DealFilter;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import com.eatclub.api.model.snapshot.PeakWeight;
 
 public interface IPeakTimeService {
 
     PeakTimeResponse calculatePeakTime();
+
+    PeakTimeResponse calculatePeakTime(DealSnapshot snapshot);
+
+    EncodedResponse calculateEncodedPeakTime(DealSnapshot snapshot);
+
+    PeakTimeResponse calculatePeakTimes(DealSnapshot snapshot, PeakWeight weight, DealFilter filter, Integer top);
+
+    HistogramResponse getHistogram(DealSnapshot snapshot, PeakWeight weight, DealFilter filter);
 }
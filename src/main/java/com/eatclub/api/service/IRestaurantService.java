@@ -0,0 +1,9 @@
+package com.eatclub.api.service;
+
+import com.eatclub.api.dto.RestaurantDto;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+
+public interface IRestaurantService {
+
+    RestaurantDto getRestaurant(DealSnapshot snapshot, String objectId);
+}
@@ -1,21 +1,41 @@
 package com.eatclub.api.service.impl;
 
+import com.eatclub.api.cache.DealResponseCache;
 import com.eatclub.api.dao.IDealDao;
+import com.eatclub.api.dto.BatchDealResponse;
+import com.eatclub.api.dto.BatchTimeResult;
 import com.eatclub.api.dto.DealDto;
 import com.eatclub.api.dto.DealResponse;
-import com.eatclub.api.model.domain.Deal;
-import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.dto.EncodedResponse;
+import com.eatclub.api.exception.BadRequestException;
+import com.eatclub.api.exception.NotFoundException;
+import com.eatclub.api.model.snapshot.DealFilter;
+import com.eatclub.api.model.snapshot.DealQuery;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import com.eatclub.api.model.snapshot.DealSort;
 import com.eatclub.api.service.IDealService;
-import com.eatclub.api.util.DealUtils;
+import com.eatclub.api.util.CursorUtils;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalTime;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
 
-import static com.eatclub.api.util.TimeUtils.parseTime;
+import static com.eatclub.api.util.TimeUtils.INVALID_TIME;
+import static com.eatclub.api.util.TimeUtils.parseMinuteOfDay;
 
 /**
  * Service for querying deals.
@@ -25,10 +45,26 @@ public class DealServiceImpl implements IDealService {
 
     private static final Logger log = LoggerFactory.getLogger(DealServiceImpl.class);
 
+    /**
+     * The first deal of a stream is flushed at once, then the buffered deals every this many.
+     */
+    private static final int STREAM_FLUSH_EVERY = 256;
+
     private final IDealDao dealDao;
+    private final DealResponseCache responseCache;
+    private final ObjectMapper objectMapper;
+    /**
+     * One DealDto per line, the stream is flushed by the service, not after every deal.
+     */
+    private final ObjectWriter lineWriter;
 
-    public DealServiceImpl(IDealDao dealDao) {
+    public DealServiceImpl(IDealDao dealDao, DealResponseCache responseCache, ObjectMapper objectMapper) {
         this.dealDao = dealDao;
+        this.responseCache = responseCache;
+        this.objectMapper = objectMapper;
+        this.lineWriter = objectMapper.writerFor(DealDto.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
     }
 
     /**
@@ -40,48 +76,217 @@ public class DealServiceImpl implements IDealService {
     public DealResponse queryActiveDealsByTime(String time) {
         log.debug("Querying active deals for time: {}", time);
 
-        // 1) Time format check, and parse to local time.
-        LocalTime queryTime = parseTime(time);
+        // 1) Time format check, and parse to the minute of the day.
+        int minuteOfDay = parseMinuteOfDay(time);
+        if (minuteOfDay == INVALID_TIME) {
+            throw new BadRequestException("INVALID_TIME", "Invalid timeOfDay: " + time);
+        }
 
-        // 2) Get restaurants from the cache.
-        List<Restaurant> restaurants = dealDao.getRestaurants();
-        List<DealDto> result = new ArrayList<>();
+        // 2) Build the response from the current snapshot.
+        DealSnapshot snapshot = dealDao.acquireSnapshot();
+        try {
+            DealResponse response = buildDealResponse(snapshot, minuteOfDay);
+            log.debug("Found {} active deals for time: {}", response.getDeals().size(), time);
+            return response;
+        } finally {
+            snapshot.release();
+        }
+    }
 
-        // 3) Go through every deal in each restaurant.
-        for (Restaurant restaurant : restaurants) {
-            if (restaurant == null || restaurant.getDeals() == null) continue;
+    /**
+     * Query the active deals at a minute of a snapshot, and return the JSON encoded response.
+     * The body is encoded (and compressed with gzip) once per minute-of-day and snapshot,
+     * and then served from the cache.
+     * @param snapshot the snapshot to query, so the caller can pin one snapshot for the whole request
+     * @param minuteOfDay the normalized query time, between 0~1439
+     * @return EncodedResponse
+     */
+    @Override
+    public EncodedResponse queryEncodedActiveDeals(DealSnapshot snapshot, int minuteOfDay) {
+        log.debug("Querying encoded active deals of snapshot {} for minute: {}", snapshot.getVersion(), minuteOfDay);
+        return responseCache.get(snapshot, minuteOfDay, () -> encode(buildDealResponse(snapshot, minuteOfDay)));
+    }
 
-            // 3.1) Go through deals.
-            for (int j = 0; j < restaurant.getDeals().size(); j++) {
-                Deal deal = restaurant.getDeals().get(j);
-                if (deal == null) continue;
+    /**
+     * Query the deals active at any minute of a time range and matching a filter, and return the JSON encoded response.
+     * Every deal is listed once, see {@link DealSnapshot#forEachActiveDeal(int, int, DealFilter, IntConsumer)}.
+     * A one-minute range without filter is the same as the single minute query, and is served from its cache.
+     * @param snapshot the snapshot to query, so the caller can pin one snapshot for the whole request
+     * @param fromMinute range start (include), between 0~1439
+     * @param toMinute range end (not include), between fromMinute+1~1440
+     * @param filter the filter, DealFilter.NONE for all deals
+     * @return EncodedResponse
+     */
+    @Override
+    public EncodedResponse queryEncodedActiveDeals(DealSnapshot snapshot, int fromMinute, int toMinute,
+                                                   DealFilter filter) {
+        if (toMinute == fromMinute + 1 && filter.isEmpty()) {
+            return queryEncodedActiveDeals(snapshot, fromMinute);
+        }
+        log.debug("Querying encoded active deals of snapshot {} for range: {}~{}, filter: {}",
+                snapshot.getVersion(), fromMinute, toMinute, filter);
+        List<DealDto> result = new ArrayList<>();
+        snapshot.forEachActiveDeal(fromMinute, toMinute, filter,
+                dealSlot -> result.add(toDealDto(snapshot, dealSlot)));
+        return encode(new DealResponse(result));
+    }
 
-                // 3.2) Using the query time, restaurant info, deal info to check the deal is active or not
-                if (!DealUtils.isActiveDealContainsTime(queryTime, restaurant, deal)) continue;
+    /**
+     * Query one page of the deals active at any minute of a time range and matching a filter,
+     * and return the JSON encoded response with the cursor of the next page.
+     * A single minute is paged from its presorted bucket, and a range in the API order from its prebuilt slices,
+     * so a page costs its own deals; a sorted range keeps only the deals up to the end of the page, see
+     * {@link DealSnapshot#forEachActiveDeal(int, int, DealFilter, DealSort, int, int, IntConsumer)}.
+     * @param snapshot the snapshot to query, so the caller can pin one snapshot for the whole request
+     * @param query the time, filter and order
+     * @param position where the page starts, 0 for the first page
+     * @param limit the max number of deals of the page, at least 1
+     * @return EncodedResponse
+     */
+    @Override
+    public EncodedResponse queryEncodedDealPage(DealSnapshot snapshot, DealQuery query, int position, int limit) {
+        log.debug("Querying deal page of snapshot {} for query: {}, position: {}, limit: {}",
+                snapshot.getVersion(), query, position, limit);
+        List<DealDto> result = new ArrayList<>(Math.min(limit, snapshot.getActiveDealCount()));
+        int next = snapshot.forEachActiveDeal(query.fromMinute(), query.toMinute(), query.filter(), query.sort(),
+                position, limit, dealSlot -> result.add(toDealDto(snapshot, dealSlot)));
+        String nextCursor = next == DealSnapshot.END_OF_PAGES
+                ? null
+                : CursorUtils.encode(new CursorUtils.Cursor(snapshot.getVersion(), query.hash(), next));
+        return encode(new DealResponse(result, nextCursor));
+    }
 
-                // 3.3) Transfer to DTO and add to result.
-                result.add(toDealDto(restaurant, deal));
+    /**
+     * Query the deals active at several times of one snapshot, with the same filter.
+     * Every deal is converted once, the first time it is found, and the results of the times
+     * refer to it by its position in the deal list.
+     * @param snapshot the snapshot to query, every time sees the same data
+     * @param times the times as the client sent them, echoed in the results
+     * @param minutes the normalized times, between 0~1439, same order as times
+     * @param filter the filter, DealFilter.NONE for all deals
+     * @return BatchDealResponse
+     */
+    @Override
+    public BatchDealResponse queryBatch(DealSnapshot snapshot, List<String> times, int[] minutes, DealFilter filter) {
+        log.debug("Querying batch of {} times of snapshot {}, filter: {}", minutes.length, snapshot.getVersion(), filter);
+        List<DealDto> deals = new ArrayList<>();
+        Map<Integer, Integer> positions = new HashMap<>();
+        List<BatchTimeResult> results = new ArrayList<>(minutes.length);
+        for (int i = 0; i < minutes.length; i++) {
+            int[] refs = new int[snapshot.getActiveDealCount(minutes[i])];
+            int[] count = {0};
+            snapshot.forEachActiveDeal(minutes[i], minutes[i] + 1, filter, dealSlot ->
+                    refs[count[0]++] = positions.computeIfAbsent(dealSlot, slot -> {
+                        deals.add(toDealDto(snapshot, slot));
+                        return deals.size() - 1;
+                    }));
+            results.add(new BatchTimeResult(times.get(i), Arrays.copyOf(refs, count[0])));
+        }
+        return new BatchDealResponse(deals, results, snapshot.getVersion());
+    }
+
+    /**
+     * Stream the deals active at any minute of a time range and matching a filter as NDJSON, one DealDto per line.
+     * Every deal is encoded and written as soon as it is visited, nothing is collected,
+     * so the memory per request does not grow with the number of deals.
+     * @param snapshot the snapshot to query, so the caller can pin one snapshot for the whole request
+     * @param fromMinute range start (include), between 0~1439
+     * @param toMinute range end (not include), between fromMinute+1~1440
+     * @param filter the filter, DealFilter.NONE for all deals
+     * @param out the response body, it is flushed but not closed
+     * @return the number of deals written
+     * @throws IOException if the client went away
+     */
+    @Override
+    public int streamActiveDeals(DealSnapshot snapshot, int fromMinute, int toMinute, DealFilter filter,
+                                 OutputStream out) throws IOException {
+        log.debug("Streaming active deals of snapshot {} for range: {}~{}, filter: {}",
+                snapshot.getVersion(), fromMinute, toMinute, filter);
+        int[] count = {0};
+        try (JsonGenerator generator = lineWriter.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            snapshot.forEachActiveDeal(fromMinute, toMinute, filter, dealSlot -> {
+                try {
+                    lineWriter.writeValue(generator, toDealDto(snapshot, dealSlot));
+                    if (count[0]++ % STREAM_FLUSH_EVERY == 0) {
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (count[0] > 0) {
+                generator.writeRaw('\n');
             }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+        return count[0];
+    }
+
+    /**
+     * Get the current state of one deal, active or not, through the snapshot's objectId index.
+     * @param snapshot the snapshot to query, so the caller can pin one snapshot for the whole request
+     * @param dealObjectId the deal objectId
+     * @return DealDto
+     */
+    @Override
+    public DealDto getDeal(DealSnapshot snapshot, String dealObjectId) {
+        int dealSlot = snapshot.findDeal(dealObjectId);
+        if (dealSlot == DealSnapshot.NOT_FOUND) {
+            throw new NotFoundException("DEAL_NOT_FOUND", "Deal not found: " + dealObjectId);
+        }
+        return toDealDto(snapshot, dealSlot);
+    }
 
-        // 4) Wrap in DealResponse and return.
-        log.debug("Found {} active deals for time: {}", result.size(), time);
+    /**
+     * Get every deal of one restaurant in API order, active or not, through the snapshot's objectId index.
+     * @param snapshot the snapshot to query, so the caller can pin one snapshot for the whole request
+     * @param restaurantObjectId the restaurant objectId
+     * @return DealResponse
+     */
+    @Override
+    public DealResponse getDealsOfRestaurant(DealSnapshot snapshot, String restaurantObjectId) {
+        int restaurantRow = snapshot.findRestaurant(restaurantObjectId);
+        if (restaurantRow == DealSnapshot.NOT_FOUND) {
+            throw new NotFoundException("RESTAURANT_NOT_FOUND", "Restaurant not found: " + restaurantObjectId);
+        }
+        List<DealDto> result = new ArrayList<>(snapshot.getDealCountOf(restaurantRow));
+        snapshot.forEachDealOf(restaurantRow, dealSlot -> result.add(toDealDto(snapshot, dealSlot)));
+        return new DealResponse(result);
+    }
+
+    private DealResponse buildDealResponse(DealSnapshot snapshot, int minuteOfDay) {
+        // 1) Look up the deals active at that minute from the snapshot's minute index, and transfer to DTO.
+        List<DealDto> result = new ArrayList<>(snapshot.getActiveDealCount(minuteOfDay));
+        snapshot.forEachActiveDeal(minuteOfDay, dealSlot -> result.add(toDealDto(snapshot, dealSlot)));
+
+        // 2) Wrap in DealResponse and return.
         return new DealResponse(result);
     }
 
-    private DealDto toDealDto(Restaurant restaurant, Deal deal) {
+    private EncodedResponse encode(DealResponse response) {
+        try {
+            return new EncodedResponse(objectMapper.writeValueAsBytes(response), response.getDeals().size());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode deal response", e);
+        }
+    }
+
+    private DealDto toDealDto(DealSnapshot snapshot, int dealSlot) {
+        int restaurantRow = snapshot.getRestaurantOf(dealSlot);
         return new DealDto(
-                setEmptyStringIfNull(restaurant.getObjectId()),     //restaurantObjectId
-                setEmptyStringIfNull(restaurant.getName()),         //restaurantName
-                setEmptyStringIfNull(restaurant.getAddress1()),     //restaurantAddress1
-                setEmptyStringIfNull(restaurant.getSuburb()),       //restaurantSuburb
-                setEmptyStringIfNull(restaurant.getOpen()),         //restaurantOpen
-                setEmptyStringIfNull(restaurant.getClose()),        //restaurantClose
-                setEmptyStringIfNull(deal.getObjectId()),           //dealObjectId
-                setEmptyStringIfNull(deal.getDiscount()),           //discount
-                setEmptyStringIfNull(deal.getDineIn()),             //dineIn
-                setEmptyStringIfNull(deal.getLightning()),          //lightning
-                setEmptyStringIfNull(deal.getQtyLeft())             //qtyLeft
+                setEmptyStringIfNull(snapshot.getRestaurantObjectId(restaurantRow)),    //restaurantObjectId
+                setEmptyStringIfNull(snapshot.getRestaurantName(restaurantRow)),        //restaurantName
+                setEmptyStringIfNull(snapshot.getRestaurantAddress1(restaurantRow)),    //restaurantAddress1
+                setEmptyStringIfNull(snapshot.getRestaurantSuburb(restaurantRow)),      //restaurantSuburb
+                setEmptyStringIfNull(snapshot.getRestaurantOpen(restaurantRow)),        //restaurantOpen
+                setEmptyStringIfNull(snapshot.getRestaurantClose(restaurantRow)),       //restaurantClose
+                setEmptyStringIfNull(snapshot.getDealObjectId(dealSlot)),               //dealObjectId
+                setEmptyStringIfNull(snapshot.getDiscount(dealSlot)),                   //discount
+                setEmptyStringIfNull(snapshot.getDineIn(dealSlot)),                     //dineIn
+                setEmptyStringIfNull(snapshot.getLightning(dealSlot)),                  //lightning
+                setEmptyStringIfNull(snapshot.getQtyLeft(dealSlot))                     //qtyLeft
         );
     }
 
@@ -1,22 +1,33 @@
 package com.eatclub.api.service.impl;
 
+import com.eatclub.api.cache.PeakTimeResponseCache;
 import com.eatclub.api.dao.IDealDao;
+import com.eatclub.api.dto.EncodedResponse;
+import com.eatclub.api.dto.HistogramResponse;
+import com.eatclub.api.dto.PeakIntervalDto;
 import com.eatclub.api.dto.PeakTimeResponse;
-import com.eatclub.api.model.domain.Deal;
-import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.model.snapshot.ConcurrencyProfile;
+import com.eatclub.api.model.snapshot.DealFilter;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import com.eatclub.api.model.snapshot.PeakTime;
+import com.eatclub.api.model.snapshot.PeakWeight;
 import com.eatclub.api.service.IPeakTimeService;
-import com.eatclub.api.util.DealUtils;
 import com.eatclub.api.util.TimeUtils;
-import com.eatclub.api.util.TimeWindow;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Service for calculate the peak time
  * (the time period which has the most active deals).
+ * The peak time is calculated once per refresh when the snapshot is compiled,
+ * this service only reads it. Weighted or filtered peak times are summed from
+ * difference arrays precomputed per facet, without scanning the deals.
  */
 @Service
 public class PeakTimeServiceImpl implements IPeakTimeService {
@@ -24,80 +35,130 @@ public class PeakTimeServiceImpl implements IPeakTimeService {
     private static final Logger log = LoggerFactory.getLogger(PeakTimeServiceImpl.class);
 
     private final IDealDao dealDao;
+    private final PeakTimeResponseCache responseCache;
+    private final ObjectMapper objectMapper;
 
-    public PeakTimeServiceImpl(IDealDao dealDao) {
+    public PeakTimeServiceImpl(IDealDao dealDao, PeakTimeResponseCache responseCache, ObjectMapper objectMapper) {
         this.dealDao = dealDao;
+        this.responseCache = responseCache;
+        this.objectMapper = objectMapper;
     }
 
     @Override
     public PeakTimeResponse calculatePeakTime() {
-        log.debug("Starting peak time calculation");
-        // 1) Get all the active deals
-        List<Restaurant> restaurants = dealDao.getRestaurants();
-        // This array indicates in every minute of the day, the change of the deal's number.
-        int[] change = new int[24 * 60];
-
-        // 1.1) Go through every deal in each restaurant, and set up the change array.
-        for (Restaurant restaurant : restaurants) {
-            if (restaurant == null || restaurant.getDeals() == null) continue;
-
-            // 1.2) Go through deals.
-            for (int j = 0; j < restaurant.getDeals().size(); j++) {
-                Deal deal = restaurant.getDeals().get(j);
-                if (deal == null) continue;
-
-                // 1.3) Get the active period of each deal
-                TimeWindow window = DealUtils.getActiveWindowOfDeal(restaurant, deal);
-
-                // 1.4) Add to the change array
-                if (window == null) continue;
-
-                int startMinute = window.start().getHour() * 60 + window.start().getMinute();
-                int endMinute = window.end().getHour() * 60 + window.end().getMinute();
-                change[startMinute] += 1; // Means at that minute, one more deal
-                change[endMinute] -= 1; // Means at that minute, one less deal
-            }
+        DealSnapshot snapshot = dealDao.acquireSnapshot();
+        try {
+            return calculatePeakTime(snapshot);
+        } finally {
+            snapshot.release();
         }
+    }
 
-        // 2) Calculate the max deal, the start time and end time
-        int currentDealNo = 0;
-        int maxDealNo = 0;
-        int startMinute = -1;
-        int endMinute = -1;
-        // 2.1) Get the max deal number.
-        for (int i = 0; i < 1440; i++) {
-            currentDealNo += change[i];
-            if (currentDealNo > maxDealNo){
-                maxDealNo = currentDealNo;
-            }
-        }
+    @Override
+    public PeakTimeResponse calculatePeakTime(DealSnapshot snapshot) {
+        // 1) Get the peak time calculated with the snapshot.
+        PeakTime peakTime = snapshot.getPeakTime();
 
-        // 2.2) If the max deal number is 0, means no available deal, return an empty response.
-        if (maxDealNo == 0) {
+        // 2) If there is no peak time, means no available deal, return an empty response.
+        if (peakTime.isEmpty()) {
             log.debug("No active deals found, returning empty peak time response");
-            return new PeakTimeResponse();
+            PeakTimeResponse response = new PeakTimeResponse();
+            response.setSnapshotVersion(snapshot.getVersion());
+            return response;
         }
 
-        // 2.3) Use the max deal number to calculate the peak start time and end time.
-        currentDealNo = 0;
-        for (int i = 0; i < 1440; i++) {
-            currentDealNo += change[i];
-            boolean isPeak = currentDealNo == maxDealNo;
-            // Means now is the peak time, and the startMinutes never been set before.
-            if (isPeak && startMinute == -1){
-                startMinute = i;
+        // 3) Wrap in PeakTimeResponse and return.
+        String start = TimeUtils.parseTime(peakTime.startMinute());
+        String end = TimeUtils.parseTime(peakTime.endMinute());
+        log.debug("Peak time of snapshot {}: {} - {} with {} max concurrent deals",
+                snapshot.getVersion(), start, end, peakTime.maxConcurrentDeals());
+        return new PeakTimeResponse(start, end, peakTime.maxConcurrentDeals(), snapshot.getVersion());
+    }
+
+    /**
+     * The peak time of a snapshot as the JSON encoded response.
+     * The body is encoded (and compressed with gzip) once per snapshot, and then served from the cache.
+     * @param snapshot the snapshot to read, so the caller can pin one snapshot for the whole request
+     * @return EncodedResponse, with 1 item, or 0 if there is no peak time
+     */
+    @Override
+    public EncodedResponse calculateEncodedPeakTime(DealSnapshot snapshot) {
+        return responseCache.get(snapshot, () -> encode(calculatePeakTime(snapshot)));
+    }
+
+    /**
+     * The peak time of the deals matching a filter, weighted by count or by qtyLeft.
+     * With top, plus every period at the max and the top local peaks.
+     * The curves are summed from difference arrays precomputed per facet, the deals are not scanned.
+     * @param filter suburb, dineIn and lightning, can be empty
+     * @param top how many local peaks, at least 1, null for the peak time only
+     */
+    @Override
+    public PeakTimeResponse calculatePeakTimes(DealSnapshot snapshot, PeakWeight weight, DealFilter filter,
+                                               Integer top) {
+        // 1) The curve of the weight, and the deal count curve to report the deals during a weighted period.
+        ConcurrencyProfile profile = snapshot.getConcurrencyProfile(weight, filter);
+        ConcurrencyProfile counts = weight == PeakWeight.COUNT
+                ? profile
+                : snapshot.getConcurrencyProfile(PeakWeight.COUNT, filter);
+
+        // 2) Same as the unweighted peak time, empty if there is no matching deal.
+        PeakTimeResponse response = new PeakTimeResponse();
+        response.setSnapshotVersion(snapshot.getVersion());
+        PeakTime peakTime = profile.getPeakTime();
+        if (!peakTime.isEmpty()) {
+            response.setPeakTimeStart(TimeUtils.parseTime(peakTime.startMinute()));
+            response.setPeakTimeEnd(TimeUtils.parseTime(peakTime.endMinute()));
+            response.setMaxConcurrentDeals(counts.getValueAt(peakTime.startMinute()));
+            if (weight == PeakWeight.QTY_LEFT) {
+                response.setMaxQtyLeft(peakTime.maxConcurrentDeals());
             }
-            //Means now is not the peak time, the startMinutes has been set before but endMinutes not.
-            if (!isPeak && startMinute >= 0){
-                endMinute = i;
-                break;
+        }
+
+        // 3) Every period at the max and the top local peaks.
+        if (top != null) {
+            response.setPeaks(toIntervals(profile.getPeaks(), weight, counts));
+            response.setPlateaus(toIntervals(profile.getTopPlateaus(top), weight, counts));
+        }
+        log.debug("Peak time of snapshot {} by {} with filter {}: {} - {}", snapshot.getVersion(),
+                weight.getParameter(), filter, response.getPeakTimeStart(), response.getPeakTimeEnd());
+        return response;
+    }
+
+    /**
+     * The per-minute active deal count (or total qtyLeft) of the deals matching a filter,
+     * as runs of [startMinute, value].
+     */
+    @Override
+    public HistogramResponse getHistogram(DealSnapshot snapshot, PeakWeight weight, DealFilter filter) {
+        ConcurrencyProfile profile = snapshot.getConcurrencyProfile(weight, filter);
+        int[][] runs = new int[profile.getRunCount()][];
+        for (int i = 0; i < runs.length; i++) {
+            runs[i] = new int[]{profile.getRunStart(i), profile.getRunValue(i)};
+        }
+        return new HistogramResponse(runs, weight.getParameter(), snapshot.getVersion());
+    }
+
+    private List<PeakIntervalDto> toIntervals(List<PeakTime> periods, PeakWeight weight, ConcurrencyProfile counts) {
+        List<PeakIntervalDto> intervals = new ArrayList<>(periods.size());
+        for (PeakTime period : periods) {
+            PeakIntervalDto interval = new PeakIntervalDto(TimeUtils.parseTime(period.startMinute()),
+                    TimeUtils.parseTime(period.endMinute()), counts.getValueAt(period.startMinute()));
+            if (weight == PeakWeight.QTY_LEFT) {
+                interval.setQtyLeft(period.maxConcurrentDeals());
             }
+            intervals.add(interval);
         }
+        return intervals;
+    }
 
-        // 4) Wrap in PeakTimeResponse and return.
-        log.debug("Peak time calculated: {} - {} with {} max concurrent deals",
-                TimeUtils.parseTime(startMinute), TimeUtils.parseTime(endMinute), maxDealNo);
-        return new PeakTimeResponse(TimeUtils.parseTime(startMinute), TimeUtils.parseTime(endMinute));
+    private EncodedResponse encode(PeakTimeResponse response) {
+        try {
+            return new EncodedResponse(objectMapper.writeValueAsBytes(response),
+                    response.getPeakTimeStart() == null ? 0 : 1);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode peak time response", e);
+        }
     }
 
 }
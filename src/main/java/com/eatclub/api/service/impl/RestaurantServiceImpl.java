@@ -0,0 +1,44 @@
+package com.eatclub.api.service.impl;
+
+import com.eatclub.api.dto.RestaurantDto;
+import com.eatclub.api.exception.NotFoundException;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import com.eatclub.api.service.IRestaurantService;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service for looking up restaurants.
+ * Restaurants are found through the objectId hash index built with the snapshot, no list is scanned.
+ */
+@Service
+public class RestaurantServiceImpl implements IRestaurantService {
+
+    /**
+     * Get one restaurant by objectId.
+     * @param snapshot the snapshot to query, so the caller can pin one snapshot for the whole request
+     * @param objectId the restaurant objectId
+     * @return RestaurantDto
+     */
+    @Override
+    public RestaurantDto getRestaurant(DealSnapshot snapshot, String objectId) {
+        int row = snapshot.findRestaurant(objectId);
+        if (row == DealSnapshot.NOT_FOUND) {
+            throw new NotFoundException("RESTAURANT_NOT_FOUND", "Restaurant not found: " + objectId);
+        }
+        return new RestaurantDto(
+                setEmptyStringIfNull(snapshot.getRestaurantObjectId(row)),
+                setEmptyStringIfNull(snapshot.getRestaurantName(row)),
+                setEmptyStringIfNull(snapshot.getRestaurantAddress1(row)),
+                setEmptyStringIfNull(snapshot.getRestaurantSuburb(row)),
+                setEmptyStringIfNull(snapshot.getRestaurantOpen(row)),
+                setEmptyStringIfNull(snapshot.getRestaurantClose(row)),
+                snapshot.getDealCountOf(row));
+    }
+
+    /**
+     * Set an empty string if the String is null
+     */
+    private String setEmptyStringIfNull(String string) {
+        return string == null ? "" : string;
+    }
+}
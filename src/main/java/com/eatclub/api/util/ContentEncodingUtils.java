@@ -0,0 +1,79 @@
+package com.eatclub.api.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Helpers for the Content-Encoding of precompressed bodies: gzip compression and Accept-Encoding negotiation.
+ */
+public class ContentEncodingUtils {
+
+    public static final String GZIP = "gzip";
+
+    /**
+     * Compress a body with gzip at the best compression level,
+     * it is done once per body and snapshot, and the result is served many times.
+     * @param body the body to compress
+     * @return the gzip bytes
+     */
+    public static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes, 8192) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(body);
+        } catch (IOException e) {
+            // Never thrown by a ByteArrayOutputStream.
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Check the Accept-Encoding header accepts gzip, as RFC 9110 describes it:
+     * a comma separated list of codings with an optional weight (q), q=0 means not acceptable,
+     * and '*' stands for every coding not listed.
+     * @param acceptEncoding the Accept-Encoding header, can be null
+     * @return true means a gzip body can be sent
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) {
+            return false;
+        }
+        boolean wildcard = false;
+        for (String candidate : acceptEncoding.split(",")) {
+            String[] parts = candidate.split(";");
+            String coding = parts[0].trim();
+            boolean acceptable = weight(parts) > 0;
+            if (coding.equalsIgnoreCase(GZIP) || coding.equalsIgnoreCase("x-gzip")) {
+                return acceptable;
+            }
+            if (coding.equals("*")) {
+                wildcard = acceptable;
+            }
+        }
+        return wildcard;
+    }
+
+    /**
+     * @return the q parameter of a coding, 1 if there is none, 0 if it is not a number
+     */
+    private static double weight(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.length() > 2 && (parameter.charAt(0) | 0x20) == 'q' && parameter.charAt(1) == '=') {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,47 @@
+package com.eatclub.api.util;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Opaque page cursors: the snapshot version, the query hash and the position of the next page,
+ * encoded as URL-safe base64. A cursor is only valid for the same query on the same snapshot.
+ */
+public class CursorUtils {
+
+    private static final int LENGTH = Long.BYTES * 2 + Integer.BYTES;
+
+    /**
+     * @param snapshotVersion the version of the snapshot the page came from
+     * @param queryHash the hash of the query the page came from
+     * @param position the position of the next page
+     */
+    public record Cursor(long snapshotVersion, long queryHash, int position) {
+    }
+
+    public static String encode(Cursor cursor) {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH)
+                .putLong(cursor.snapshotVersion())
+                .putLong(cursor.queryHash())
+                .putInt(cursor.position());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @return the cursor, or null if the token is not a cursor
+     */
+    public static Cursor decode(String token) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (bytes.length != LENGTH) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        Cursor cursor = new Cursor(buffer.getLong(), buffer.getLong(), buffer.getInt());
+        return cursor.position() < 0 ? null : cursor;
+    }
+}
@@ -2,14 +2,23 @@ package com.eatclub.api.util;
 
 import com.eatclub.api.model.domain.Deal;
 import com.eatclub.api.model.domain.Restaurant;
-import io.micrometer.common.util.StringUtils;
 
 import java.time.LocalTime;
 
-import static com.eatclub.api.util.TimeUtils.parseTime;
-
 public class DealUtils {
 
+    /**
+     * Returned by {@link #getActiveMinutesOfDeal(Restaurant, Deal)} when the deal is not active.
+     */
+    public static final int NO_WINDOW = -1;
+    /**
+     * Returned by {@link #getActiveMinutesOfDeal(Restaurant, Deal)} when a time is invalid,
+     * or a start time is not before its end time.
+     */
+    public static final int INVALID_WINDOW = -2;
+
+    private static final int ABSENT = -3;
+
     /**
      * Active window logic:
      * restaurantWindow = [restaurant.open, restaurant.close)
@@ -26,61 +35,104 @@ public class DealUtils {
     /**
      * Get the active time window from restaurantWindow and deal.
      * The deal's quantity must > 0, otherwise is inactive deal.
+     * A thin wrapper of {@link #getActiveMinutesOfDeal(Restaurant, Deal)}.
      * @return if the deal is active, return the TimeWindow, or return null;
      */
     public static TimeWindow getActiveWindowOfDeal(Restaurant restaurant, Deal deal) {
-        // 1) Generate the TimeWindow object of the restaurant.
-        LocalTime restaurantOpen = parseTime(restaurant.getOpen());
-        LocalTime restaurantClose = parseTime(restaurant.getClose());
-        TimeWindow restaurantWindow = new TimeWindow(restaurantOpen, restaurantClose);
+        int window = getActiveMinutesOfDeal(restaurant, deal);
+        if (window == INVALID_WINDOW) {
+            throw new IllegalArgumentException("Invalid time window of deal " + deal.getObjectId());
+        }
+        if (window == NO_WINDOW) {
+            return null;
+        }
+        int start = windowStart(window);
+        int end = windowEnd(window);
+        return new TimeWindow(LocalTime.of(start / 60, start % 60), LocalTime.of(end / 60, end % 60));
+    }
+
+    /**
+     * Same as {@link #getActiveWindowOfDeal(Restaurant, Deal)}, in minutes of the day,
+     * without LocalTime, TimeWindow or exception.
+     * @return the window packed in an int, read it by windowStart / windowEnd; or NO_WINDOW, or INVALID_WINDOW
+     */
+    public static int getActiveMinutesOfDeal(Restaurant restaurant, Deal deal) {
+        // 1) The window of the restaurant.
+        int restaurantOpen = TimeUtils.parseMinuteOfDay(restaurant.getOpen());
+        int restaurantClose = TimeUtils.parseMinuteOfDay(restaurant.getClose());
+        if (restaurantOpen == TimeUtils.INVALID_TIME || restaurantClose == TimeUtils.INVALID_TIME
+                || restaurantOpen >= restaurantClose) {
+            return INVALID_WINDOW;
+        }
 
         /* 2) Calculate the deal's start time.
             Because the API might return 'open' field or 'start' field that indicates the start time,
             use the latest one.
          */
-        LocalTime dealOpen = StringUtils.isNotBlank(deal.getOpen()) ? parseTime(deal.getOpen()) : null;
-        LocalTime dealStart = StringUtils.isNotBlank(deal.getStart()) ? parseTime(deal.getStart()) : null;
-        LocalTime dealStartResult;
-        if (dealOpen == null && dealStart != null) {
-            dealStartResult = dealStart;
-        } else if (dealOpen != null && dealStart == null) {
-            dealStartResult = dealOpen;
-        } else if (dealOpen != null) {
-            dealStartResult = dealOpen.isAfter(dealStart) ? dealOpen : dealStart;
-        } else {
-            dealStartResult = restaurantOpen;
+        int dealOpen = parseOptionalTime(deal.getOpen());
+        int dealStart = parseOptionalTime(deal.getStart());
+        if (dealOpen == TimeUtils.INVALID_TIME || dealStart == TimeUtils.INVALID_TIME) {
+            return INVALID_WINDOW;
         }
+        int dealStartResult = dealOpen == ABSENT && dealStart == ABSENT
+                ? restaurantOpen
+                : Math.max(dealOpen, dealStart);
 
         /* 3) Calculate the deal's end time.
             Because the API might return 'close' field or 'end' field that indicates the end time,
             use the earliest one.
          */
-        LocalTime dealClose = StringUtils.isNotBlank(deal.getClose()) ? parseTime(deal.getClose()) : null;
-        LocalTime dealEnd = StringUtils.isNotBlank(deal.getEnd()) ? parseTime(deal.getEnd()) : null;
-        LocalTime dealEndResult;
-        if (dealClose == null && dealEnd != null) {
-            dealEndResult = dealEnd;
-        } else if (dealClose != null && dealEnd == null) {
-            dealEndResult = dealClose;
-        } else if (dealClose != null) {
-            dealEndResult = dealClose.isBefore(dealEnd) ? dealClose : dealEnd;
-        } else {
+        int dealClose = parseOptionalTime(deal.getClose());
+        int dealEnd = parseOptionalTime(deal.getEnd());
+        if (dealClose == TimeUtils.INVALID_TIME || dealEnd == TimeUtils.INVALID_TIME) {
+            return INVALID_WINDOW;
+        }
+        int dealEndResult;
+        if (dealClose == ABSENT && dealEnd == ABSENT) {
             dealEndResult = restaurantClose;
+        } else if (dealClose == ABSENT || dealEnd == ABSENT) {
+            dealEndResult = Math.max(dealClose, dealEnd);
+        } else {
+            dealEndResult = Math.min(dealClose, dealEnd);
         }
 
-        // 4) Create the deal's TimeWindow.
-        TimeWindow dealWindow = new TimeWindow(dealStartResult, dealEndResult);
+        // 4) The deal's window.
+        if (dealStartResult >= dealEndResult) {
+            return INVALID_WINDOW;
+        }
 
         /* 5) Judge the deal is active or not
-          Get intersection between restaurant's open window and deal's open window,
-          and check the time contains in the window or not.
+          Get intersection between restaurant's open window and deal's open window.
         */
-        TimeWindow effective = TimeWindow.windowIntersection(restaurantWindow, dealWindow);
-        if (safeTransInt(deal.getQtyLeft()) > 0) {
-            return effective;
-        } else {
-            return null;
+        int start = Math.max(restaurantOpen, dealStartResult);
+        int end = Math.min(restaurantClose, dealEndResult);
+        if (start >= end || safeTransInt(deal.getQtyLeft()) <= 0) {
+            return NO_WINDOW;
+        }
+        return start << 16 | end;
+    }
+
+    public static int windowStart(int window) {
+        return window >>> 16;
+    }
+
+    public static int windowEnd(int window) {
+        return window & 0xFFFF;
+    }
+
+    /**
+     * @return ABSENT if the time is blank, otherwise the minute of the day or INVALID_TIME
+     */
+    private static int parseOptionalTime(String time) {
+        if (time == null) {
+            return ABSENT;
+        }
+        for (int i = 0; i < time.length(); i++) {
+            if (time.charAt(i) > ' ') {
+                return TimeUtils.parseMinuteOfDay(time);
+            }
         }
+        return ABSENT;
     }
 
     /**
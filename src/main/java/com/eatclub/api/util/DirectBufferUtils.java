@@ -0,0 +1,61 @@
+package com.eatclub.api.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+
+/**
+ * Free a direct buffer as soon as its owner is done with it, rather than when the GC finds it unreachable.
+ * Java 17 has no public way to do it, so this goes through sun.misc.Unsafe.invokeCleaner (module jdk.unsupported).
+ * If that is not available, a warning is logged once and the buffers are left to the GC, which frees them anyway.
+ * Only the owner of a buffer frees it, once, and only when nothing can read it any more.
+ */
+public class DirectBufferUtils {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectBufferUtils.class);
+
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+
+    /**
+     * Free the memory of a buffer allocated by ByteBuffer.allocateDirect; it must not be read after.
+     * A null or heap buffer is ignored.
+     * @param buffer the buffer to free, not a slice or duplicate of another one
+     * @return true if it was freed, false if it is left to the GC
+     * @throws IllegalArgumentException if the buffer is a view of another buffer
+     */
+    public static boolean free(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || INVOKE_CLEANER == null) {
+            return false;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact(buffer);
+            return true;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to free a direct buffer", e);
+        }
+    }
+
+    /**
+     * @return Unsafe.invokeCleaner bound to the Unsafe instance, null if it is not available
+     */
+    private static MethodHandle invokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Direct buffers cannot be freed explicitly, they are left to the GC. Error: {}", e.toString());
+            return null;
+        }
+    }
+}
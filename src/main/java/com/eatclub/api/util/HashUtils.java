@@ -0,0 +1,56 @@
+package com.eatclub.api.util;
+
+/**
+ * 64-bit FNV-1a hash, cheap and good enough to detect content changes.
+ * It is not a cryptographic hash.
+ */
+public class HashUtils {
+
+    /**
+     * The initial hash value, continue from it with the update methods.
+     */
+    public static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Continue the hash with a string, null is hashed differently from an empty string.
+     * @param hash the hash so far
+     * @param string the string to hash
+     * @return the new hash
+     */
+    public static long update(long hash, String string) {
+        if (string == null) {
+            return (hash ^ 0xff) * FNV_PRIME;
+        }
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        // Separator, so "ab" + "c" and "a" + "bc" are hashed differently.
+        return (hash ^ 0xfe) * FNV_PRIME;
+    }
+
+    /**
+     * Continue the hash with a range of bytes.
+     * @param hash the hash so far
+     * @param bytes the bytes to hash
+     * @param offset the start of the range
+     * @param length the length of the range
+     * @return the new hash
+     */
+    public static long update(long hash, byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Hash all the bytes.
+     */
+    public static long hash(byte[] bytes) {
+        return update(FNV_OFFSET, bytes, 0, bytes.length);
+    }
+}
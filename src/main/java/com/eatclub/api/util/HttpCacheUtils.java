@@ -0,0 +1,112 @@
+package com.eatclub.api.util;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Helpers for HTTP conditional GET: ETag and Cache-Control max-age.
+ */
+public class HttpCacheUtils {
+
+    /**
+     * Build a strong ETag from the snapshot content hash.
+     * @param contentHash the content hash of the snapshot
+     * @return ETag, like "3f2a9c1d0b4e5f67"
+     */
+    public static String etag(long contentHash) {
+        return "\"" + Long.toHexString(contentHash) + "\"";
+    }
+
+    /**
+     * Build a strong ETag from the snapshot content hash and the normalized query minute.
+     * @param contentHash the content hash of the snapshot
+     * @param minuteOfDay the query minute, between 0~1439
+     * @return ETag, like "3f2a9c1d0b4e5f67-660"
+     */
+    public static String etag(long contentHash, int minuteOfDay) {
+        return "\"" + Long.toHexString(contentHash) + "-" + minuteOfDay + "\"";
+    }
+
+    /**
+     * Build a strong ETag from the snapshot content hash and the normalized query range.
+     * @param contentHash the content hash of the snapshot
+     * @param fromMinute the range start, between 0~1439
+     * @param toMinute the range end, between 1~1440
+     * @return ETag, like "3f2a9c1d0b4e5f67-1020-1170"
+     */
+    public static String etag(long contentHash, int fromMinute, int toMinute) {
+        return "\"" + Long.toHexString(contentHash) + "-" + fromMinute + "-" + toMinute + "\"";
+    }
+
+    /**
+     * Build a strong ETag from the snapshot content hash, the normalized query range and the filter.
+     * @param contentHash the content hash of the snapshot
+     * @param fromMinute the range start, between 0~1439
+     * @param toMinute the range end, between 1~1440
+     * @param filterHash the hash of the filter
+     * @return ETag, like "3f2a9c1d0b4e5f67-1020-1170-9e3779b97f4a7c15"
+     */
+    public static String etag(long contentHash, int fromMinute, int toMinute, long filterHash) {
+        return "\"" + Long.toHexString(contentHash) + "-" + fromMinute + "-" + toMinute
+                + "-" + Long.toHexString(filterHash) + "\"";
+    }
+
+    /**
+     * Build a strong ETag from the snapshot content hash and the hash of every other query parameter.
+     * @param contentHash the content hash of the snapshot
+     * @param queryHash the hash of the normalized query parameters
+     * @return ETag, like "3f2a9c1d0b4e5f67-q9e3779b97f4a7c15"
+     */
+    public static String queryEtag(long contentHash, long queryHash) {
+        return "\"" + Long.toHexString(contentHash) + "-q" + Long.toHexString(queryHash) + "\"";
+    }
+
+    /**
+     * Build the ETag of another representation of the same body, e.g. another media type.
+     * @param etag the ETag of the default representation
+     * @param variant the representation, like "ndjson"
+     * @return ETag, like "3f2a9c1d0b4e5f67-660-ndjson"
+     */
+    public static String variantEtag(String etag, String variant) {
+        return etag.substring(0, etag.length() - 1) + "-" + variant + "\"";
+    }
+
+    /**
+     * Check the If-None-Match header matches the ETag.
+     * The header can be '*' or a comma separated list, weak comparison is used as RFC 9110 requires.
+     * @param ifNoneMatch the If-None-Match header, can be null
+     * @param etag the current ETag
+     * @return true means the client already has the current body.
+     */
+    public static boolean isNotModified(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the seconds left until the next scheduled refresh, it is how long the body stays fresh.
+     * @param nextRefreshTime the next refresh time, can be null if unknown
+     * @param now the current time
+     * @return the seconds, never negative
+     */
+    public static long secondsUntil(Instant nextRefreshTime, Instant now) {
+        if (nextRefreshTime == null || !nextRefreshTime.isAfter(now)) {
+            return 0;
+        }
+        return Duration.between(now, nextRefreshTime).getSeconds();
+    }
+}
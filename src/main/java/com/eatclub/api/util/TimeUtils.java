@@ -6,28 +6,13 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.util.Locale;
-import java.util.regex.Pattern;
 
 public class TimeUtils {
 
     /**
-     * Regular expression for 24-HOUR FORMAT
-     * hour: from 0 to 23, allow 1 digit or 2 digits
-     * minute: from 00 to 59, only allow 2 digits
+     * Returned by {@link #parseMinuteOfDay(CharSequence)} when the input is not a valid time.
      */
-    private static final Pattern REG_FORMAT_24H = Pattern.compile("^([01]?\\d|2[0-3]):[0-5]\\d$");
-    /**
-     * DateTimeFormat for 24-hour
-     */
-    private static final DateTimeFormatter DT_FORMAT_24H = DateTimeFormatter.ofPattern("H:mm");
-
-    /**
-     * Regular expression for 12-HOUR FORMAT
-     * hour: from 0 to 12, allow 1 digit or 2 digits
-     * minute: from 00 to 59, only allow 2 digits
-     * must have 'am' or 'pm' at the end of the string
-     */
-    private static final Pattern REG_FORMAT_12H = Pattern.compile("^(0?[1-9]|1[0-2]):[0-5]\\d(?i)(am|pm)$");
+    public static final int INVALID_TIME = -1;
 
     /**
      * DateTimeFormat for 12-hour
@@ -39,6 +24,76 @@ public class TimeUtils {
                     .appendPattern("h:mma")
                     .toFormatter(Locale.ENGLISH);
 
+    /**
+     * Parse a time to the minute of the day, without regex, LocalTime, String or exception.
+     * Accepts the same formats as before (leading/trailing whitespace and spaces anywhere are ignored):
+     * 24-HOUR FORMAT: hour from 0 to 23 (1 or 2 digits), minute from 00 to 59 (2 digits), like 9:05 or 21:30
+     * 12-HOUR FORMAT: hour from 1 to 12 (1 or 2 digits), minute from 00 to 59 (2 digits),
+     * then 'am' or 'pm' in any case, like 9:05am or 12:30 PM
+     * @param time time in String
+     * @return integer between 0~1439, or INVALID_TIME
+     */
+    public static int parseMinuteOfDay(CharSequence time) {
+        if (time == null) {
+            return INVALID_TIME;
+        }
+        // 1) Trim the whitespace at both ends.
+        int end = time.length();
+        int i = 0;
+        while (i < end && time.charAt(i) <= ' ') i++;
+        while (end > i && time.charAt(end - 1) <= ' ') end--;
+
+        // 2) Hour, 1 or 2 digits.
+        i = skipSpaces(time, i, end);
+        int hour = digit(time, i, end);
+        if (hour < 0) return INVALID_TIME;
+        i = skipSpaces(time, i + 1, end);
+        int next = digit(time, i, end);
+        if (next >= 0) {
+            hour = hour * 10 + next;
+            i = skipSpaces(time, i + 1, end);
+        }
+
+        // 3) ':' and the minute, exactly 2 digits.
+        if (i >= end || time.charAt(i) != ':') return INVALID_TIME;
+        i = skipSpaces(time, i + 1, end);
+        int minuteTens = digit(time, i, end);
+        i = skipSpaces(time, i + 1, end);
+        int minuteOnes = digit(time, i, end);
+        if (minuteTens < 0 || minuteTens > 5 || minuteOnes < 0) return INVALID_TIME;
+        int minute = minuteTens * 10 + minuteOnes;
+        i = skipSpaces(time, i + 1, end);
+
+        // 4) No suffix means 24-hour format.
+        if (i == end) {
+            return hour <= 23 ? hour * 60 + minute : INVALID_TIME;
+        }
+
+        // 5) 'am' or 'pm' means 12-hour format, 12am is midnight and 12pm is noon.
+        char meridiem = (char) (time.charAt(i) | 0x20);
+        if (meridiem != 'a' && meridiem != 'p') return INVALID_TIME;
+        i = skipSpaces(time, i + 1, end);
+        if (i >= end || (time.charAt(i) | 0x20) != 'm') return INVALID_TIME;
+        if (skipSpaces(time, i + 1, end) != end) return INVALID_TIME;
+        if (hour < 1 || hour > 12) return INVALID_TIME;
+        hour = hour % 12 + (meridiem == 'p' ? 12 : 0);
+        return hour * 60 + minute;
+    }
+
+    private static int skipSpaces(CharSequence time, int i, int end) {
+        while (i < end && time.charAt(i) == ' ') i++;
+        return i;
+    }
+
+    /**
+     * @return the digit at i, or -1 if it is not a digit
+     */
+    private static int digit(CharSequence time, int i, int end) {
+        if (i >= end) return -1;
+        char c = time.charAt(i);
+        return c >= '0' && c <= '9' ? c - '0' : -1;
+    }
+
     /**
      * Check the input string is a valid 24-HOUR format or a valid 12-HOUR format
      * @param time time in String
@@ -52,29 +107,36 @@ public class TimeUtils {
         //trim; if string has AM PM, change to lowercase; replace space.
         time = time.trim().toLowerCase().replace(" ", "");
 
-        boolean is24H = REG_FORMAT_24H.matcher(time).matches();
-        boolean is12H = REG_FORMAT_12H.matcher(time).matches();
-
-        if (!is24H && !is12H) {
+        if (parseMinuteOfDay(time) == INVALID_TIME) {
             throw new IllegalArgumentException("Invalid time format: " + time);
         }
         return time;
     }
 
     /**
-     * Check the time validation, and parse time to LocalTime
+     * Check the time validation, and parse time to LocalTime.
+     * A thin wrapper of {@link #parseMinuteOfDay(CharSequence)}.
      * @param time in String
      * @return LocalTime object
      */
     public static LocalTime parseTime(String time) {
-        //Check the time format.
-        String validTime = isValidTime(time);
-
-        if (validTime.endsWith("am") || validTime.endsWith("pm")) {
-            return LocalTime.parse(validTime, DT_FORMAT_12H);
-        } else {
-            return LocalTime.parse(validTime, DT_FORMAT_24H);
+        if (StringUtils.isBlank(time)) {
+            throw new IllegalArgumentException("Time is null or empty.");
+        }
+        int minuteOfDay = parseMinuteOfDay(time);
+        if (minuteOfDay == INVALID_TIME) {
+            throw new IllegalArgumentException("Invalid time format: " + time);
         }
+        return LocalTime.of(minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    /**
+     * Transfer a LocalTime to the minute of the day
+     * @param time LocalTime object
+     * @return integer between 0~1439
+     */
+    public static int toMinuteOfDay(LocalTime time) {
+        return time.getHour() * 60 + time.getMinute();
     }
 
     /**
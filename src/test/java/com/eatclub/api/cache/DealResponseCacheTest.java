@@ -0,0 +1,64 @@
+package com.eatclub.api.cache;
+
+import com.eatclub.api.dto.EncodedResponse;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Bodies are encoded and compressed once per minute and snapshot, a request holding an older snapshot
+ * bypasses the cache and pays for nothing it does not use.
+ */
+class DealResponseCacheTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DealResponseCache cache = new DealResponseCache(meterRegistry);
+    private final AtomicInteger encodes = new AtomicInteger();
+
+    private EncodedResponse encode() {
+        encodes.incrementAndGet();
+        return new EncodedResponse("{\"deals\":[]}".getBytes(StandardCharsets.UTF_8), 0);
+    }
+
+    @Test
+    @DisplayName("Encodes and compresses a stored body once, and serves it from then on")
+    void get_whenSameMinuteTwice_shouldEncodeAndCompressOnce() throws IOException {
+        DealSnapshot snapshot = DealSnapshot.compile(Collections.emptyList(), 1L);
+
+        EncodedResponse first = cache.get(snapshot, 720, this::encode);
+        EncodedResponse second = cache.get(snapshot, 720, this::encode);
+
+        assertSame(first, second);
+        assertEquals(1, encodes.get());
+        assertNotNull(first.gzipBody());
+        assertArrayEquals(first.body(),
+                new GZIPInputStream(new ByteArrayInputStream(first.gzipBody())).readAllBytes());
+    }
+
+    @Test
+    @DisplayName("Does not compress the body of a request holding an older snapshot")
+    void get_whenOlderSnapshot_shouldBypassWithoutCompressing() {
+        DealSnapshot older = DealSnapshot.compile(Collections.emptyList(), 1L);
+        DealSnapshot newer = DealSnapshot.compile(Collections.emptyList(), 2L);
+        cache.get(newer, 720, this::encode);
+
+        EncodedResponse bypassed = cache.get(older, 720, this::encode);
+
+        assertNull(bypassed.gzipBody());
+        assertNotNull(bypassed.gzipped());
+        assertEquals(2, encodes.get());
+        assertEquals(1, meterRegistry.get("deals.response.cache").tag("result", "bypass").counter().count());
+        assertNotNull(cache.get(newer, 720, this::encode).gzipBody());
+    }
+}
@@ -3,20 +3,32 @@ package com.eatclub.api.controller;
 import com.eatclub.api.dao.IDealDao;
 import com.eatclub.api.model.domain.Deal;
 import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import com.jayway.jsonpath.JsonPath;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.ByteArrayInputStream;
 import java.util.Collections;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 /**
@@ -35,6 +47,19 @@ class DealControllerTest {
     @MockitoBean
     private IDealDao dealDao;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Serve a snapshot from the mocked DAO the way the DAO does, retained for every request, which releases it.
+     */
+    private void publish(DealSnapshot snapshot) {
+        when(dealDao.acquireSnapshot()).thenAnswer(invocation -> {
+            snapshot.retain();
+            return snapshot;
+        });
+    }
+
     private Restaurant createMockRestaurant(String objectId, String name, String address,
                                             String suburb, String open, String close,
                                             List<Deal> deals) {
@@ -91,7 +116,7 @@ class DealControllerTest {
                 List.of(activeDeal)
         );
 
-        when(dealDao.getRestaurants()).thenReturn(List.of(restaurant));
+        publish(DealSnapshot.compile(List.of(restaurant), 1L));
 
         // When: querying at 12:00pm (inside the window)
         // Then: one deal returned with the expected fields
@@ -138,7 +163,7 @@ class DealControllerTest {
                 List.of(deal)
         );
 
-        when(dealDao.getRestaurants()).thenReturn(List.of(restaurant));
+        publish(DealSnapshot.compile(List.of(restaurant), 1L));
 
         // When: querying at 18:00 (6:00pm), which is outside the window
         // Then: nothing should be returned
@@ -151,7 +176,7 @@ class DealControllerTest {
     @Test
     @DisplayName("Returns empty list when DAO returns no restaurants")
     void getDeals_whenDaoReturnsEmpty_shouldReturnEmptyDeals() throws Exception {
-        when(dealDao.getRestaurants()).thenReturn(Collections.emptyList());
+        publish(DealSnapshot.compile(Collections.emptyList(), 1L));
 
         mockMvc.perform(get("/deals")
                         .param("timeOfDay", "12:00pm"))
@@ -184,7 +209,7 @@ class DealControllerTest {
                 List.of(soldOutDeal)
         );
 
-        when(dealDao.getRestaurants()).thenReturn(List.of(restaurant));
+        publish(DealSnapshot.compile(List.of(restaurant), 1L));
 
         mockMvc.perform(get("/deals")
                         .param("timeOfDay", "12:00pm"))
@@ -193,14 +218,426 @@ class DealControllerTest {
     }
 
     @Test
-    @DisplayName("Invalid time format -> INTERNAL_ERROR")
+    @DisplayName("Equivalent time formats share one minute and return the same deals")
+    void getDeals_whenEquivalentTimeFormats_shouldReturnSameDeals() throws Exception {
+        Deal deal = createMockDeal(
+                "deal-004",
+                "15",
+                "false",
+                "true",
+                "3",
+                "11:00am",
+                "2:00pm",
+                null,
+                null
+        );
+
+        Restaurant restaurant = createMockRestaurant(
+                "rest-004",
+                "Taco Town",
+                "12 Smith Street",
+                "Collingwood",
+                "10:00am",
+                "10:00pm",
+                List.of(deal)
+        );
+
+        publish(DealSnapshot.compile(List.of(restaurant), 1L));
+
+        for (String timeOfDay : List.of("11:00", "11:00am", "11:00 AM")) {
+            mockMvc.perform(get("/deals")
+                            .param("timeOfDay", timeOfDay))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentTypeCompatibleWith("application/json"))
+                    .andExpect(jsonPath("$.deals", hasSize(1)))
+                    .andExpect(jsonPath("$.deals[0].dealObjectId", is("deal-004")));
+        }
+    }
+
+    @Test
+    @DisplayName("Returns 304 when If-None-Match carries the current ETag")
+    void getDeals_whenETagMatches_shouldReturnNotModified() throws Exception {
+        publish(DealSnapshot.compile(Collections.emptyList(), 1L));
+
+        String etag = mockMvc.perform(get("/deals")
+                        .param("timeOfDay", "12:00pm"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(header().string("Cache-Control", containsString("max-age=")))
+                .andReturn().getResponse().getHeader("ETag");
+
+        // Same minute in another format shares the ETag.
+        mockMvc.perform(get("/deals")
+                        .param("timeOfDay", "12:00")
+                        .header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag));
+
+        // Another minute has another ETag.
+        mockMvc.perform(get("/deals")
+                        .param("timeOfDay", "12:01")
+                        .header("If-None-Match", etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @DisplayName("Returns each deal active at any point of a from/to range once")
+    void getDeals_whenTimeRange_shouldReturnOverlappingDeals() throws Exception {
+        Restaurant restaurant = createMockRestaurant(
+                "rest-005",
+                "Noodle Bar",
+                "8 Lygon Street",
+                "Carlton",
+                "10:00am",
+                "11:00pm",
+                List.of(
+                        createMockDeal("deal-lunch", "10", "true", "false", "5", "11:00am", "3:00pm", null, null),
+                        createMockDeal("deal-early", "20", "true", "false", "5", "4:00pm", "5:00pm", null, null),
+                        createMockDeal("deal-dinner", "30", "true", "false", "5", "6:00pm", "9:00pm", null, null),
+                        createMockDeal("deal-late", "40", "true", "false", "5", "7:30pm", "10:00pm", null, null)
+                )
+        );
+
+        publish(DealSnapshot.compile(List.of(restaurant), 1L));
+
+        // [17:00, 19:30): deal-early ends at 17:00 and deal-late starts at 19:30, both are left out.
+        mockMvc.perform(get("/deals")
+                        .param("from", "17:00")
+                        .param("to", "7:30pm"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", endsWith("-1020-1170\"")))
+                .andExpect(jsonPath("$.deals", hasSize(1)))
+                .andExpect(jsonPath("$.deals[0].dealObjectId", is("deal-dinner")));
+
+        mockMvc.perform(get("/deals")
+                        .param("from", "12:00pm")
+                        .param("to", "20:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deals[*].dealObjectId",
+                        contains("deal-lunch", "deal-early", "deal-dinner", "deal-late")));
+    }
+
+    @Test
+    @DisplayName("Filters deals by suburb, dineIn, lightning and minDiscount")
+    void getDeals_whenFiltered_shouldReturnMatchingDeals() throws Exception {
+        Restaurant carlton = createMockRestaurant(
+                "rest-006", "Pasta Place", "1 Lygon Street", "Carlton", "10:00am", "11:00pm",
+                List.of(
+                        createMockDeal("deal-a", "10", "true", "false", "5", null, null, null, null),
+                        createMockDeal("deal-b", "30", "true", "true", "5", null, null, null, null),
+                        createMockDeal("deal-c", "40", "false", "true", "5", null, null, null, null)
+                )
+        );
+        Restaurant richmond = createMockRestaurant(
+                "rest-007", "Pho Corner", "2 Victoria Street", "Richmond", "10:00am", "11:00pm",
+                List.of(createMockDeal("deal-d", "50", "true", "true", "5", null, null, null, null))
+        );
+
+        publish(DealSnapshot.compile(List.of(carlton, richmond), 1L));
+
+        mockMvc.perform(get("/deals")
+                        .param("timeOfDay", "12:00")
+                        .param("suburb", "carlton")
+                        .param("dineIn", "true")
+                        .param("minDiscount", "20"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deals[*].dealObjectId", contains("deal-b")));
+
+        mockMvc.perform(get("/deals")
+                        .param("from", "12:00")
+                        .param("to", "13:00")
+                        .param("lightning", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deals[*].dealObjectId", contains("deal-b", "deal-c", "deal-d")));
+
+        mockMvc.perform(get("/deals")
+                        .param("timeOfDay", "12:00")
+                        .param("dineIn", "maybe"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("INVALID_PARAMETER")));
+    }
+
+    @Test
+    @DisplayName("Range ending at 24:00 reaches the end of the day, 24:00 is only a range end")
+    void getDeals_whenRangeEndsAtMidnight_shouldReturnLateDeals() throws Exception {
+        Restaurant restaurant = createMockRestaurant(
+                "rest-008", "Night Owl", "9 Chapel Street", "Windsor", "10:00am", "11:59pm",
+                List.of(
+                        createMockDeal("deal-dinner", "30", "true", "false", "5", "6:00pm", "9:00pm", null, null),
+                        createMockDeal("deal-late", "40", "true", "false", "5", "10:00pm", "11:59pm", null, null)
+                )
+        );
+
+        publish(DealSnapshot.compile(List.of(restaurant), 1L));
+
+        mockMvc.perform(get("/deals")
+                        .param("from", "22:30")
+                        .param("to", "24:00"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", endsWith("-1350-1440\"")))
+                .andExpect(jsonPath("$.deals[*].dealObjectId", contains("deal-late")));
+
+        mockMvc.perform(get("/deals")
+                        .param("from", "24:00")
+                        .param("to", "24:00"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("INVALID_TIME")));
+
+        mockMvc.perform(get("/deals")
+                        .param("timeOfDay", "24:00"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("INVALID_TIME")));
+    }
+
+    @Test
+    @DisplayName("Range whose end is not after its start -> 400 INVALID_RANGE")
+    void getDeals_whenRangeEndsBeforeStart_shouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/deals")
+                        .param("from", "19:30")
+                        .param("to", "17:00"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("INVALID_RANGE")));
+    }
+
+    @Test
+    @DisplayName("Invalid time format -> 400 INVALID_TIME")
     void getDeals_whenInvalidTimeFormat_shouldReturnError() throws Exception {
         // DAO shouldn't really matter here; request should fail during parsing/validation
-        when(dealDao.getRestaurants()).thenReturn(Collections.emptyList());
+        publish(DealSnapshot.compile(Collections.emptyList(), 1L));
 
         mockMvc.perform(get("/deals")
                         .param("timeOfDay", "123456"))
-                .andExpect(status().isInternalServerError())
-                .andExpect(jsonPath("$.code", is("INTERNAL_ERROR")));
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("INVALID_TIME")));
+    }
+
+    @Test
+    @DisplayName("Missing timeOfDay -> 400 MISSING_PARAMETER")
+    void getDeals_whenTimeMissing_shouldReturnBadRequest() throws Exception {
+        mockMvc.perform(get("/deals"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("MISSING_PARAMETER")));
+    }
+
+    @Test
+    @DisplayName("Returns one deal by objectId, or 404")
+    void getDeal_shouldReturnDealOrNotFound() throws Exception {
+        Deal soldOut = createMockDeal("deal-001", "30", "true", "false", "0",
+                "11:00am", "2:00pm", null, null);
+        Restaurant restaurant = createMockRestaurant("rest-001", "Golden Dragon Restaurant", "123 Main Street",
+                "Melbourne CBD", "10:00am", "10:00pm", List.of(soldOut));
+        publish(DealSnapshot.compile(List.of(restaurant), 1L));
+
+        mockMvc.perform(get("/deals/deal-001"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(jsonPath("$.restaurantObjectId", is("rest-001")))
+                .andExpect(jsonPath("$.dealObjectId", is("deal-001")))
+                .andExpect(jsonPath("$.qtyLeft", is("0")));
+
+        mockMvc.perform(get("/deals/deal-404"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.code", is("DEAL_NOT_FOUND")));
+    }
+
+    @Test
+    @DisplayName("Streams one deal per line with Accept: application/x-ndjson")
+    void getDeals_whenAcceptNdjson_shouldStreamLines() throws Exception {
+        Restaurant restaurant = createMockRestaurant("rest-001", "Golden Dragon Restaurant", "123 Main Street",
+                "Melbourne CBD", "10:00am", "10:00pm", List.of(
+                        createMockDeal("deal-001", "30", "true", "false", "5", "11:00am", "2:00pm", null, null),
+                        createMockDeal("deal-002", "20", "false", "false", "3", "12:00pm", "1:00pm", null, null)));
+        publish(DealSnapshot.compile(List.of(restaurant), 1L));
+
+        MvcResult started = mockMvc.perform(get("/deals").param("timeOfDay", "12:30pm")
+                        .accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+                .andExpect(header().string("ETag", endsWith("-750-ndjson\"")))
+                .andExpect(header().string("Vary", "Accept"))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(body.endsWith("}\n"));
+        assertTrue(lines[0].contains("\"dealObjectId\":\"deal-001\""));
+        assertTrue(lines[1].contains("\"dealObjectId\":\"deal-002\""));
+
+        // Without the Accept header the JSON body is unchanged, and errors stay JSON with it.
+        mockMvc.perform(get("/deals").param("timeOfDay", "12:30pm"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deals", hasSize(2)));
+        mockMvc.perform(get("/deals").param("timeOfDay", "25:00").accept("application/x-ndjson"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("INVALID_TIME")));
+    }
+
+    @Test
+    @DisplayName("Pages the deals sorted by discount with a cursor tied to the snapshot")
+    void getDeals_whenLimitAndSort_shouldPageWithCursor() throws Exception {
+        Restaurant restaurant = createMockRestaurant("rest-001", "Golden Dragon Restaurant", "123 Main Street",
+                "Melbourne CBD", "10:00am", "10:00pm", List.of(
+                        createMockDeal("deal-001", "10", "true", "false", "5", "11:00am", "2:00pm", null, null),
+                        createMockDeal("deal-002", "30", "true", "false", "5", "11:00am", "2:00pm", null, null),
+                        createMockDeal("deal-003", "20", "true", "false", "5", "11:00am", "2:00pm", null, null)));
+        publish(DealSnapshot.compile(List.of(restaurant), 1L));
+
+        MvcResult first = mockMvc.perform(get("/deals").param("timeOfDay", "12:00pm")
+                        .param("limit", "2").param("sort", "discount"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deals[*].dealObjectId", contains("deal-002", "deal-003")))
+                .andExpect(jsonPath("$.nextCursor").exists())
+                .andReturn();
+        String firstPage = first.getResponse().getContentAsString();
+        String firstEtag = first.getResponse().getHeader("ETag");
+        String cursor = JsonPath.read(firstPage, "$.nextCursor");
+
+        mockMvc.perform(get("/deals").param("timeOfDay", "12:00pm")
+                        .param("limit", "2").param("sort", "discount").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deals[*].dealObjectId", contains("deal-001")))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+        // The cursor belongs to one query and one snapshot.
+        mockMvc.perform(get("/deals").param("timeOfDay", "1:00pm")
+                        .param("limit", "2").param("sort", "discount").param("cursor", cursor))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("INVALID_CURSOR")));
+        mockMvc.perform(get("/deals").param("timeOfDay", "12:00pm").param("sort", "price"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("INVALID_PARAMETER")));
+        publish(DealSnapshot.compile(List.of(restaurant), 2L));
+        mockMvc.perform(get("/deals").param("timeOfDay", "12:00pm")
+                        .param("limit", "2").param("sort", "discount").param("cursor", cursor))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("CURSOR_EXPIRED")));
+
+        // Same content in a new snapshot: the page is sent again, with a cursor of the new snapshot.
+        String refreshedPage = mockMvc.perform(get("/deals").param("timeOfDay", "12:00pm")
+                        .param("limit", "2").param("sort", "discount").header("If-None-Match", firstEtag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(firstEtag)))
+                .andReturn().getResponse().getContentAsString();
+        mockMvc.perform(get("/deals").param("timeOfDay", "12:00pm").param("limit", "2").param("sort", "discount")
+                        .param("cursor", JsonPath.<String>read(refreshedPage, "$.nextCursor")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deals[*].dealObjectId", contains("deal-001")));
+    }
+
+    @Test
+    @DisplayName("Returns the deals of several times from one snapshot, each deal once")
+    void getDealsBatch_shouldGroupPerTimeAndShareDeals() throws Exception {
+        Restaurant restaurant = createMockRestaurant("rest-001", "Golden Dragon Restaurant", "123 Main Street",
+                "Melbourne CBD", "10:00am", "10:00pm", List.of(
+                        createMockDeal("deal-001", "30", "true", "false", "5", "11:00am", "8:00pm", null, null),
+                        createMockDeal("deal-002", "20", "false", "false", "3", "6:00pm", "7:00pm", null, null)));
+        publish(DealSnapshot.compile(List.of(restaurant), 3L));
+
+        mockMvc.perform(post("/deals/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"times\": [\"12:00pm\", \"6:30pm\", \"9:00pm\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Snapshot-Version", "3"))
+                .andExpect(jsonPath("$.snapshotVersion", is(3)))
+                .andExpect(jsonPath("$.deals[*].dealObjectId", contains("deal-001", "deal-002")))
+                .andExpect(jsonPath("$.results[*].time", contains("12:00pm", "6:30pm", "9:00pm")))
+                .andExpect(jsonPath("$.results[0].deals", contains(0)))
+                .andExpect(jsonPath("$.results[1].deals", contains(0, 1)))
+                .andExpect(jsonPath("$.results[2].deals", hasSize(0)));
+
+        mockMvc.perform(post("/deals/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"times\": [\"6:30pm\"], \"dineIn\": false}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deals[*].dealObjectId", contains("deal-002")));
+
+        mockMvc.perform(post("/deals/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"times\": [\"12:00pm\", \"25:00\"]}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("INVALID_TIME")))
+                .andExpect(jsonPath("$.message", containsString("times[1]")));
+        mockMvc.perform(post("/deals/batch").contentType(MediaType.APPLICATION_JSON).content("{\"times\": []}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("MISSING_PARAMETER")));
+        mockMvc.perform(post("/deals/batch").contentType(MediaType.APPLICATION_JSON).content("{"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("INVALID_BODY")));
+    }
+
+    @Test
+    @DisplayName("Serves the precompressed gzip body with Accept-Encoding: gzip, with its own ETag")
+    void getDeals_whenAcceptGzip_shouldServeGzipBody() throws Exception {
+        Restaurant restaurant = createMockRestaurant("rest-001", "Golden Dragon Restaurant", "123 Main Street",
+                "Melbourne CBD", "10:00am", "10:00pm", List.of(
+                        createMockDeal("deal-001", "30", "true", "false", "5", "11:00am", "2:00pm", null, null),
+                        createMockDeal("deal-002", "20", "false", "false", "3", "12:00pm", "1:00pm", null, null)));
+        publish(DealSnapshot.compile(List.of(restaurant), 1L));
+
+        MvcResult identity = mockMvc.perform(get("/deals").param("timeOfDay", "12:30pm"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(header().string("ETag", endsWith("-750\"")))
+                .andExpect(header().string("Vary", "Accept, Accept-Encoding"))
+                .andReturn();
+        MvcResult gzip = mockMvc.perform(get("/deals").param("timeOfDay", "12:30pm")
+                        .header("Accept-Encoding", "gzip, deflate, br"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().string("ETag", endsWith("-750-gzip\"")))
+                .andExpect(header().string("Vary", "Accept, Accept-Encoding"))
+                .andReturn();
+
+        byte[] body = new GZIPInputStream(new ByteArrayInputStream(gzip.getResponse().getContentAsByteArray()))
+                .readAllBytes();
+        assertArrayEquals(identity.getResponse().getContentAsByteArray(), body);
+
+        // Each ETag only matches its own coding.
+        String etag = gzip.getResponse().getHeader("ETag");
+        mockMvc.perform(get("/deals").param("timeOfDay", "12:30pm")
+                        .header("Accept-Encoding", "gzip").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/deals").param("timeOfDay", "12:30pm").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deals", hasSize(2)));
+
+        // A filtered or paged body is not cached, so it is not compressed either.
+        mockMvc.perform(get("/deals").param("timeOfDay", "12:30pm").param("dineIn", "true")
+                        .header("Accept-Encoding", "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(jsonPath("$.deals", hasSize(1)));
+        mockMvc.perform(get("/deals").param("timeOfDay", "12:30pm").param("limit", "1")
+                        .header("Accept-Encoding", "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(jsonPath("$.deals", hasSize(1)));
+    }
+
+    @Test
+    @DisplayName("Counts body cache hits and misses, and the deals returned")
+    void getDeals_whenSameMinuteTwice_shouldRecordCacheHitAndResultSize() throws Exception {
+        Deal deal = createMockDeal("deal-001", "30", "true", "false", "5", "11:00am", "2:00pm", null, null);
+        Restaurant restaurant = createMockRestaurant("rest-001", "Golden Dragon Restaurant", "123 Main Street",
+                "Melbourne CBD", "10:00am", "10:00pm", List.of(deal));
+        // Newer than the snapshots of the other tests, so the cache takes it rather than bypassing it.
+        publish(DealSnapshot.compile(List.of(restaurant), 1_000_000L));
+        double hits = cacheLookups("hit");
+        double misses = cacheLookups("miss");
+        long responses = meterRegistry.get("deals.response.items").tag("uri", "/deals").summary().count();
+        double items = meterRegistry.get("deals.response.items").tag("uri", "/deals").summary().totalAmount();
+
+        mockMvc.perform(get("/deals").param("timeOfDay", "12:00pm")).andExpect(status().isOk());
+        mockMvc.perform(get("/deals").param("timeOfDay", "12:00PM")).andExpect(status().isOk());
+
+        assertEquals(misses + 1, cacheLookups("miss"));
+        assertEquals(hits + 1, cacheLookups("hit"));
+        assertEquals(responses + 2, meterRegistry.get("deals.response.items").tag("uri", "/deals").summary().count());
+        assertEquals(items + 2, meterRegistry.get("deals.response.items").tag("uri", "/deals").summary().totalAmount());
+    }
+
+    private double cacheLookups(String result) {
+        return meterRegistry.get("deals.response.cache").tag("uri", "/deals").tag("result", result).counter().count();
     }
 }
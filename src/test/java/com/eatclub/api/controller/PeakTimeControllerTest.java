@@ -0,0 +1,214 @@
+package com.eatclub.api.controller;
+
+import com.eatclub.api.dao.IDealDao;
+import com.eatclub.api.model.domain.Deal;
+import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * PeakTimeController tests
+ * Mock the DAO (IDealDao), the request flows through:
+ * Controller -> Service -> DAO (mocked)
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class PeakTimeControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private IDealDao dealDao;
+
+    /**
+     * Serve a snapshot from the mocked DAO the way the DAO does, retained for every request, which releases it.
+     */
+    private void publish(DealSnapshot snapshot) {
+        when(dealDao.acquireSnapshot()).thenAnswer(invocation -> {
+            snapshot.retain();
+            return snapshot;
+        });
+    }
+
+    private Deal createMockDeal(String objectId, String open, String close) {
+        Deal deal = new Deal();
+        deal.setObjectId(objectId);
+        deal.setQtyLeft("5");
+        deal.setOpen(open);
+        deal.setClose(close);
+        return deal;
+    }
+
+    /**
+     * Two peaks of 2 deals (12:00~13:00 and 18:00~19:00), and a local peak of 1 deal in between.
+     */
+    private DealSnapshot createSnapshot() {
+        Restaurant restaurant = new Restaurant();
+        restaurant.setObjectId("rest-001");
+        restaurant.setOpen("9:00am");
+        restaurant.setClose("11:00pm");
+        restaurant.setDeals(new ArrayList<>(List.of(
+                createMockDeal("deal-001", "11:00am", "1:00pm"),
+                createMockDeal("deal-002", "12:00pm", "1:00pm"),
+                createMockDeal("deal-003", "3:00pm", "4:00pm"),
+                createMockDeal("deal-004", "6:00pm", "7:00pm"),
+                createMockDeal("deal-005", "6:00pm", "8:00pm"))));
+        return DealSnapshot.compile(List.of(restaurant), 1L);
+    }
+
+    @Test
+    @DisplayName("Returns the first peak time without top")
+    void getPeakTime_shouldReturnFirstPeak() throws Exception {
+        publish(createSnapshot());
+
+        mockMvc.perform(get("/peaktime"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.peakTimeStart", is("12:00pm")))
+                .andExpect(jsonPath("$.peakTimeEnd", is("1:00pm")))
+                .andExpect(jsonPath("$.maxConcurrentDeals", is(2)))
+                .andExpect(jsonPath("$.peaks").doesNotExist());
+    }
+
+    @Test
+    @DisplayName("Serves the precompressed gzip body with Accept-Encoding: gzip, with its own ETag")
+    void getPeakTime_whenAcceptGzip_shouldServeGzipBody() throws Exception {
+        publish(createSnapshot());
+
+        MvcResult identity = mockMvc.perform(get("/peaktime"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(header().string("Vary", "Accept-Encoding"))
+                .andReturn();
+        MvcResult gzip = mockMvc.perform(get("/peaktime").header("Accept-Encoding", "gzip, deflate, br"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().string("ETag", endsWith("-gzip\"")))
+                .andExpect(header().string("Vary", "Accept-Encoding"))
+                .andReturn();
+
+        byte[] body = new GZIPInputStream(new ByteArrayInputStream(gzip.getResponse().getContentAsByteArray()))
+                .readAllBytes();
+        assertArrayEquals(identity.getResponse().getContentAsByteArray(), body);
+
+        // Each ETag only matches its own coding.
+        String etag = gzip.getResponse().getHeader("ETag");
+        mockMvc.perform(get("/peaktime").header("Accept-Encoding", "gzip").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/peaktime").header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.peakTimeStart", is("12:00pm")));
+        mockMvc.perform(get("/peaktime").header("Accept-Encoding", "gzip;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"));
+    }
+
+    @Test
+    @DisplayName("Gives the same content in a new snapshot a new ETag, as the body carries its version")
+    void getPeakTime_whenSameContentNewVersion_shouldChangeEtag() throws Exception {
+        publish(createSnapshot());
+        String peakTimeEtag = mockMvc.perform(get("/peaktime"))
+                .andReturn().getResponse().getHeader("ETag");
+        String histogramEtag = mockMvc.perform(get("/peaktime/histogram").param("weight", "qtyLeft"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        DealSnapshot refreshed = createSnapshot();
+        publish(DealSnapshot.update(refreshed, refreshed.getRestaurants(), 2L));
+
+        mockMvc.perform(get("/peaktime").header("If-None-Match", peakTimeEtag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.snapshotVersion", is(2)));
+        mockMvc.perform(get("/peaktime/histogram").param("weight", "qtyLeft").header("If-None-Match", histogramEtag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.snapshotVersion", is(2)));
+    }
+
+    @Test
+    @DisplayName("Returns every peak and the top local peaks with top")
+    void getPeakTime_whenTop_shouldReturnPeaksAndPlateaus() throws Exception {
+        publish(createSnapshot());
+
+        mockMvc.perform(get("/peaktime").param("top", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.peaks[*].start", contains("12:00pm", "6:00pm")))
+                .andExpect(jsonPath("$.peaks[*].end", contains("1:00pm", "7:00pm")))
+                .andExpect(jsonPath("$.plateaus[*].start", contains("12:00pm", "6:00pm", "3:00pm")))
+                .andExpect(jsonPath("$.plateaus[2].concurrentDeals", is(1)));
+
+        mockMvc.perform(get("/peaktime").param("top", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("INVALID_PARAMETER")));
+    }
+
+    @Test
+    @DisplayName("Returns the peak time weighted by qtyLeft and filtered by dineIn")
+    void getPeakTime_whenWeightedAndFiltered_shouldUseMatchingDeals() throws Exception {
+        Restaurant restaurant = new Restaurant();
+        restaurant.setObjectId("rest-001");
+        restaurant.setSuburb("Carlton");
+        restaurant.setOpen("9:00am");
+        restaurant.setClose("11:00pm");
+        Deal lunch = createMockDeal("deal-001", "12:00pm", "1:00pm");
+        Deal afternoon = createMockDeal("deal-002", "12:30pm", "1:00pm");
+        Deal dinner = createMockDeal("deal-003", "6:00pm", "7:00pm");
+        dinner.setQtyLeft("20");
+        dinner.setDineIn("true");
+        restaurant.setDeals(new ArrayList<>(List.of(lunch, afternoon, dinner)));
+        publish(DealSnapshot.compile(List.of(restaurant), 1L));
+
+        // By count, 2 deals at 12:30pm; by qtyLeft, 20 left at 6:00pm.
+        mockMvc.perform(get("/peaktime").param("weight", "qtyLeft"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.peakTimeStart", is("6:00pm")))
+                .andExpect(jsonPath("$.maxConcurrentDeals", is(1)))
+                .andExpect(jsonPath("$.maxQtyLeft", is(20)));
+
+        mockMvc.perform(get("/peaktime").param("dineIn", "false").param("suburb", " carlton"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.peakTimeStart", is("12:30pm")))
+                .andExpect(jsonPath("$.maxConcurrentDeals", is(2)))
+                .andExpect(jsonPath("$.maxQtyLeft").doesNotExist());
+
+        mockMvc.perform(get("/peaktime/histogram").param("weight", "qtyLeft").param("dineIn", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.weight", is("qtyLeft")))
+                .andExpect(jsonPath("$.runs[1]", contains(18 * 60, 20)));
+
+        mockMvc.perform(get("/peaktime").param("weight", "price"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.code", is("INVALID_PARAMETER")));
+    }
+
+    @Test
+    @DisplayName("Returns the run-length encoded histogram")
+    void getHistogram_shouldReturnRuns() throws Exception {
+        publish(createSnapshot());
+
+        mockMvc.perform(get("/peaktime/histogram"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andExpect(jsonPath("$.runs", hasSize(9)))
+                .andExpect(jsonPath("$.runs[0]", contains(0, 0)))
+                .andExpect(jsonPath("$.runs[1]", contains(11 * 60, 1)))
+                .andExpect(jsonPath("$.runs[2]", contains(12 * 60, 2)))
+                .andExpect(jsonPath("$.snapshotVersion", is(1)));
+    }
+}
@@ -0,0 +1,101 @@
+package com.eatclub.api.controller;
+
+import com.eatclub.api.dao.IDealDao;
+import com.eatclub.api.model.domain.Deal;
+import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * RestaurantController tests
+ * Mock the DAO (IDealDao), the request flows through:
+ * Controller -> Service -> DAO (mocked)
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class RestaurantControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private IDealDao dealDao;
+
+    /**
+     * Serve a snapshot from the mocked DAO the way the DAO does, retained for every request, which releases it.
+     */
+    private void publish(DealSnapshot snapshot) {
+        when(dealDao.acquireSnapshot()).thenAnswer(invocation -> {
+            snapshot.retain();
+            return snapshot;
+        });
+    }
+
+    private Deal createMockDeal(String objectId, String qtyLeft, String open, String close) {
+        Deal deal = new Deal();
+        deal.setObjectId(objectId);
+        deal.setQtyLeft(qtyLeft);
+        deal.setOpen(open);
+        deal.setClose(close);
+        return deal;
+    }
+
+    private DealSnapshot createSnapshot() {
+        Restaurant restaurant = new Restaurant();
+        restaurant.setObjectId("rest-001");
+        restaurant.setName("Golden Dragon Restaurant");
+        restaurant.setSuburb("Melbourne CBD");
+        restaurant.setOpen("9:00am");
+        restaurant.setClose("11:00pm");
+        restaurant.setDeals(new ArrayList<>(List.of(
+                createMockDeal("deal-001", "5", "11:00am", "1:00pm"),
+                createMockDeal("deal-002", "0", "6:00pm", "7:00pm"))));
+        return DealSnapshot.compile(List.of(restaurant), 1L);
+    }
+
+    @Test
+    @DisplayName("Returns one restaurant by objectId, or 404")
+    void getRestaurant_shouldReturnRestaurantOrNotFound() throws Exception {
+        publish(createSnapshot());
+
+        mockMvc.perform(get("/restaurants/rest-001"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Snapshot-Version", "1"))
+                .andExpect(jsonPath("$.objectId", is("rest-001")))
+                .andExpect(jsonPath("$.name", is("Golden Dragon Restaurant")))
+                .andExpect(jsonPath("$.address1", is("")))
+                .andExpect(jsonPath("$.dealCount", is(2)));
+
+        mockMvc.perform(get("/restaurants/rest-404"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.code", is("RESTAURANT_NOT_FOUND")));
+    }
+
+    @Test
+    @DisplayName("Returns every deal of a restaurant, active or not")
+    void getRestaurantDeals_shouldReturnAllDeals() throws Exception {
+        publish(createSnapshot());
+
+        mockMvc.perform(get("/restaurants/rest-001/deals"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deals[*].dealObjectId", contains("deal-001", "deal-002")))
+                .andExpect(jsonPath("$.deals[1].qtyLeft", is("0")));
+
+        mockMvc.perform(get("/restaurants/rest-404/deals"))
+                .andExpect(status().isNotFound());
+    }
+}
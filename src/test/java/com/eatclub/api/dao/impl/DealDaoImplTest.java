@@ -2,14 +2,29 @@ package com.eatclub.api.dao.impl;
 
 import com.eatclub.api.config.WebClientProperties;
 import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.model.snapshot.DealSnapshot;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.reactive.function.client.WebClient;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,24 +35,45 @@ import static org.junit.jupiter.api.Assertions.*;
 class DealDaoImplTest {
 
     private MockWebServer mockWebServer;
+    private MeterRegistry meterRegistry;
     private DealDaoImpl dealDao;
 
     @BeforeEach
     void setUp() throws IOException {
         mockWebServer = new MockWebServer();
         mockWebServer.start();
+        meterRegistry = new SimpleMeterRegistry();
 
-        String baseUrl = mockWebServer.url("/").toString();
-        
+        dealDao = newDao(Duration.ofSeconds(10), 0, 100);
+    }
+
+    /**
+     * A DAO of the mock server, with a short backoff so retries do not slow the tests down.
+     */
+    private DealDaoImpl newDao(Duration refreshTimeout, int maxRetries, int failureThreshold) {
+        return newDao(refreshTimeout, maxRetries, failureThreshold, List.of(), null);
+    }
+
+    private DealDaoImpl newDao(Duration refreshTimeout, int maxRetries, int failureThreshold,
+                               List<WebClientProperties.Source> sources) {
+        return newDao(refreshTimeout, maxRetries, failureThreshold, sources, null);
+    }
+
+    private DealDaoImpl newDao(Duration refreshTimeout, int maxRetries, int failureThreshold,
+                               List<WebClientProperties.Source> sources, Path snapshotFile) {
         WebClientProperties properties = new WebClientProperties(
-                baseUrl,
+                mockWebServer.url("/").toString(),
                 Duration.ofSeconds(5),
                 Duration.ofSeconds(2),
-                Duration.ofSeconds(4)
+                Duration.ofSeconds(4),
+                DataSize.ofMegabytes(1),
+                refreshTimeout,
+                new WebClientProperties.Retry(maxRetries, Duration.ofMillis(10), Duration.ofMillis(50), 0.5),
+                new WebClientProperties.CircuitBreaker(failureThreshold, Duration.ofMillis(300)),
+                sources,
+                snapshotFile
         );
-
-        WebClient webClient = WebClient.builder().build();
-        dealDao = new DealDaoImpl(webClient, properties);
+        return new DealDaoImpl(WebClient.builder().build(), properties, meterRegistry);
     }
 
     @AfterEach
@@ -45,6 +81,432 @@ class DealDaoImplTest {
         mockWebServer.shutdown();
     }
 
+    private static final String FEED = """
+            {"restaurants":[{"objectId":"rest-001","name":"Golden Dragon","address1":"123 Main Street",
+            "suburb":"Melbourne CBD","open":"10:00am","close":"10:00pm",
+            "deals":[{"objectId":"deal-001","discount":"30","dineIn":"true","lightning":"false",
+            "qtyLeft":"5","open":"11:00am","close":"2:00pm"}]}]}
+            """;
+
+    @Test
+    @DisplayName("Should parse the feed and swap in a new snapshot")
+    void refreshSnapshot_whenFeedReturned_shouldLoadSnapshot() {
+        mockWebServer.enqueue(new MockResponse().setBody(FEED).addHeader("Content-Type", "application/json"));
+
+        dealDao.refresh().block();
+
+        assertEquals(1, dealDao.getRestaurants().size());
+        assertEquals(1, dealDao.getSnapshot().getActiveDealCount(12 * 60));
+        assertEquals(1, dealDao.getRefreshStats().changed());
+    }
+
+    @Test
+    @DisplayName("Should send If-None-Match and keep the snapshot on 304")
+    void refreshSnapshot_whenUpstreamNotModified_shouldKeepSnapshot() throws InterruptedException {
+        mockWebServer.enqueue(new MockResponse().setBody(FEED).addHeader("ETag", "\"v1\""));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(304));
+
+        dealDao.refresh().block();
+        long version = dealDao.getSnapshot().getVersion();
+        dealDao.refresh().block();
+
+        assertNotNull(mockWebServer.takeRequest(5, TimeUnit.SECONDS));
+        RecordedRequest conditional = mockWebServer.takeRequest(5, TimeUnit.SECONDS);
+        assertNotNull(conditional, "No conditional request was sent");
+        assertEquals("\"v1\"", conditional.getHeader("If-None-Match"));
+        assertEquals(version, dealDao.getSnapshot().getVersion());
+        assertEquals(1, dealDao.getRefreshStats().changed());
+        assertEquals(1, dealDao.getRefreshStats().unchanged());
+    }
+
+    @Test
+    @DisplayName("Should detect an unchanged body when the upstream ignores conditional headers, without parsing it")
+    void refreshSnapshot_whenSameBody_shouldKeepSnapshot() {
+        mockWebServer.enqueue(new MockResponse().setBody(FEED));
+        mockWebServer.enqueue(new MockResponse().setBody(FEED));
+
+        dealDao.refresh().block();
+        long version = dealDao.getSnapshot().getVersion();
+        dealDao.refresh().block();
+
+        assertEquals(version, dealDao.getSnapshot().getVersion());
+        assertEquals(1, dealDao.getRefreshStats().unchanged());
+        assertEquals(1, meterRegistry.get("deals.refresh.parse").timer().count());
+        assertEquals(2, meterRegistry.get("deals.refresh.payload").summary().count());
+    }
+
+    @Test
+    @DisplayName("Should not use up a version when a different body has the same content")
+    void refreshSnapshot_whenSameContent_shouldKeepVersionsConsecutive() {
+        mockWebServer.enqueue(new MockResponse().setBody(FEED));
+        mockWebServer.enqueue(new MockResponse().setBody(FEED.replace(",", ", ")));
+        mockWebServer.enqueue(new MockResponse().setBody(FEED.replace("\"30\"", "\"40\"")));
+
+        dealDao.refresh().block();
+        long version = dealDao.getSnapshot().getVersion();
+        dealDao.refresh().block();
+        assertEquals(version, dealDao.getSnapshot().getVersion());
+        dealDao.refresh().block();
+
+        assertEquals(version + 1, dealDao.getSnapshot().getVersion());
+        assertEquals(2, dealDao.getRefreshStats().changed());
+        assertEquals(1, dealDao.getRefreshStats().unchanged());
+    }
+
+    @Test
+    @DisplayName("Should keep a swapped out snapshot readable for the reader holding it, and release it after")
+    void acquireSnapshot_whenSwappedOut_shouldStayReadableUntilReleased() {
+        mockWebServer.enqueue(new MockResponse().setBody(FEED));
+        mockWebServer.enqueue(new MockResponse().setBody(FEED.replace("\"30\"", "\"40\"")));
+
+        dealDao.refresh().block();
+        DealSnapshot held = dealDao.acquireSnapshot();
+        dealDao.refresh().block();
+
+        assertNotSame(held, dealDao.getSnapshot());
+        assertEquals("deal-001", held.getDealObjectId(held.findDeal("deal-001")));
+        held.release();
+        // The DAO dropped its reference at the swap, the reader had the last one.
+        assertFalse(held.retain());
+
+        DealSnapshot current = dealDao.acquireSnapshot();
+        assertSame(dealDao.getSnapshot(), current);
+        current.release();
+        assertTrue(current.retain());
+        current.release();
+    }
+
+    @Test
+    @DisplayName("Should keep the last snapshot and count the failure when the upstream fails")
+    void refreshSnapshot_whenUpstreamFails_shouldKeepSnapshot() {
+        mockWebServer.enqueue(new MockResponse().setBody(FEED));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+
+        dealDao.refresh().block();
+        dealDao.refresh().block();
+
+        assertEquals(1, dealDao.getRestaurants().size());
+        assertEquals(1, dealDao.getRefreshStats().failed());
+    }
+
+    @Test
+    @DisplayName("Should record the fetch, parse, payload and snapshot metrics of a refresh")
+    void refreshSnapshot_whenFeedReturned_shouldRecordMetrics() {
+        mockWebServer.enqueue(new MockResponse().setBody(FEED));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(304));
+
+        dealDao.refresh().block();
+        dealDao.refresh().block();
+
+        assertEquals(1, meterRegistry.get("deals.refresh.fetch")
+                .tags("source", "default", "status", "200").timer().count());
+        assertEquals(1, meterRegistry.get("deals.refresh.fetch")
+                .tags("source", "default", "status", "304").timer().count());
+        assertEquals(1, meterRegistry.get("deals.refresh.parse").timer().count());
+        assertEquals(FEED.getBytes(StandardCharsets.UTF_8).length,
+                meterRegistry.get("deals.refresh.payload").summary().totalAmount());
+        assertEquals(1, meterRegistry.get("deals.refresh.publish").timer().count());
+        assertEquals(1, meterRegistry.get("deals.refresh.results").tag("result", "changed").functionCounter().count());
+        assertEquals(1, meterRegistry.get("deals.refresh.results").tag("result", "unchanged").functionCounter().count());
+        assertEquals(1, meterRegistry.get("deals.snapshot.restaurants").gauge().value());
+        assertEquals(1, meterRegistry.get("deals.snapshot.deals").gauge().value());
+        assertTrue(meterRegistry.get("deals.snapshot.age").timeGauge().value(TimeUnit.SECONDS) < 5);
+        assertTrue(meterRegistry.get("deals.source.age").tag("source", "default").timeGauge()
+                .value(TimeUnit.SECONDS) < 5);
+    }
+
+    @Test
+    @DisplayName("Should report no snapshot age before the first refresh")
+    void metrics_beforeFirstRefresh_shouldReportNoAge() {
+        assertTrue(Double.isNaN(meterRegistry.get("deals.snapshot.age").timeGauge().value(TimeUnit.SECONDS)));
+        assertEquals(0, meterRegistry.get("deals.snapshot.restaurants").gauge().value());
+    }
+
+    @Test
+    @DisplayName("Should report the snapshot of the DAO which replaced a closed one in the same registry")
+    void metrics_whenDaoReplaced_shouldReportTheNewOne() {
+        mockWebServer.enqueue(new MockResponse().setBody(FEED));
+        dealDao.refresh().block();
+        assertEquals(1, meterRegistry.get("deals.snapshot.restaurants").gauge().value());
+
+        dealDao.close();
+        dealDao = newDao(Duration.ofSeconds(10), 0, 100);
+
+        assertEquals(1, meterRegistry.find("deals.snapshot.restaurants").gauges().size());
+        assertEquals(0, meterRegistry.get("deals.snapshot.restaurants").gauge().value());
+        assertEquals(0, meterRegistry.get("deals.refresh.parse").timer().count());
+    }
+
+    @Test
+    @DisplayName("Should inflate a gzip encoded feed")
+    void refreshSnapshot_whenGzipBody_shouldLoadSnapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(FEED.getBytes(StandardCharsets.UTF_8));
+        }
+        mockWebServer.enqueue(new MockResponse()
+                .setBody(new Buffer().write(bytes.toByteArray()))
+                .addHeader("Content-Encoding", "gzip"));
+
+        dealDao.refresh().block();
+
+        assertEquals(1, dealDao.getRestaurants().size());
+    }
+
+    @Test
+    @DisplayName("Should reject a feed larger than the maximum payload size")
+    void refreshSnapshot_whenPayloadTooLarge_shouldKeepSnapshot() {
+        String padding = " ".repeat(2 * 1024 * 1024);
+        mockWebServer.enqueue(new MockResponse().setBody(FEED + padding));
+
+        dealDao.refresh().block();
+
+        assertTrue(dealDao.getRestaurants().isEmpty());
+        assertEquals(1, dealDao.getRefreshStats().failed());
+    }
+
+    @Test
+    @DisplayName("Should retry a 5xx response and load the feed")
+    void refresh_whenUpstreamFailsOnce_shouldRetry() {
+        DealDaoImpl dao = newDao(Duration.ofSeconds(10), 2, 100);
+        mockWebServer.enqueue(new MockResponse().setResponseCode(503));
+        mockWebServer.enqueue(new MockResponse().setBody(FEED));
+
+        dao.refresh().block();
+
+        assertEquals(2, mockWebServer.getRequestCount());
+        assertEquals(1, dao.getRestaurants().size());
+        assertEquals(0, dao.getRefreshStats().failed());
+    }
+
+    @Test
+    @DisplayName("Should not retry a 4xx response")
+    void refresh_whenUpstreamRejects_shouldNotRetry() {
+        DealDaoImpl dao = newDao(Duration.ofSeconds(10), 2, 100);
+        mockWebServer.enqueue(new MockResponse().setResponseCode(404));
+
+        dao.refresh().block();
+
+        assertEquals(1, mockWebServer.getRequestCount());
+        assertEquals(1, dao.getRefreshStats().failed());
+    }
+
+    @Test
+    @DisplayName("Should give up at the deadline when the upstream is slow to answer")
+    void refresh_whenHeadersLate_shouldFailAtDeadline() {
+        DealDaoImpl dao = newDao(Duration.ofMillis(300), 2, 100);
+        mockWebServer.enqueue(new MockResponse().setBody(FEED).setHeadersDelay(3, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        dao.refresh().block();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis < 2000, "refresh took " + elapsedMillis + " ms");
+        assertTrue(dao.getRestaurants().isEmpty());
+        assertEquals(1, dao.getRefreshStats().failed());
+    }
+
+    @Test
+    @DisplayName("Should give up at the deadline when the body stalls, without leaving the reader waiting")
+    void refresh_whenBodyStalls_shouldFailAtDeadline() {
+        DealDaoImpl dao = newDao(Duration.ofMillis(300), 0, 100);
+        mockWebServer.enqueue(new MockResponse().setBody(FEED).setBodyDelay(3, TimeUnit.SECONDS));
+        mockWebServer.enqueue(new MockResponse().setBody(FEED));
+
+        long start = System.nanoTime();
+        dao.refresh().block();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMillis < 2000, "refresh took " + elapsedMillis + " ms");
+        assertEquals(1, dao.getRefreshStats().failed());
+
+        // The next refresh is not blocked by the cancelled one.
+        dao.refresh().block();
+        assertEquals(1, dao.getRestaurants().size());
+    }
+
+    @Test
+    @DisplayName("Should open the circuit after consecutive failures, and close it after a successful trial")
+    void refresh_whenFailuresReachThreshold_shouldOpenCircuit() throws InterruptedException {
+        DealDaoImpl dao = newDao(Duration.ofSeconds(10), 0, 2);
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500));
+        mockWebServer.enqueue(new MockResponse().setBody(FEED));
+
+        dao.refresh().block();
+        dao.refresh().block();
+        // Open: skipped without calling the upstream.
+        dao.refresh().block();
+        assertEquals(2, mockWebServer.getRequestCount());
+        assertEquals(2, dao.getRefreshStats().failed());
+        assertEquals(1, dao.getRefreshStats().skipped());
+
+        // Past the open duration, one trial refresh goes through and closes the circuit.
+        Thread.sleep(400);
+        dao.refresh().block();
+        assertEquals(3, mockWebServer.getRequestCount());
+        assertEquals(1, dao.getRestaurants().size());
+    }
+
+    @Test
+    @DisplayName("Should start refreshing in the background, without waiting for the upstream")
+    void init_whenUpstreamSlow_shouldReturnAtOnce() throws InterruptedException {
+        DealDaoImpl dao = newDao(Duration.ofSeconds(10), 0, 100);
+        mockWebServer.enqueue(new MockResponse().setBody(FEED).setHeadersDelay(500, TimeUnit.MILLISECONDS));
+
+        long start = System.nanoTime();
+        dao.init();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis < 400, "init took " + elapsedMillis + " ms");
+        assertTrue(dao.getRestaurants().isEmpty());
+
+        // The first refresh still lands.
+        awaitRestaurants(dao, 1);
+        assertEquals(1, mockWebServer.getRequestCount());
+        assertNotNull(dao.getNextRefreshTime());
+        dao.close();
+    }
+
+    @Test
+    @DisplayName("Should skip a refresh while the previous one of the same source is still running")
+    void refresh_whenPreviousRunning_shouldSkip() {
+        DealDaoImpl dao = newDao(Duration.ofSeconds(10), 0, 100);
+        mockWebServer.enqueue(new MockResponse().setBody(FEED).setHeadersDelay(300, TimeUnit.MILLISECONDS));
+
+        dao.refresh().subscribe();
+        dao.refresh().block();
+
+        assertEquals(1, dao.getRefreshStats().skipped());
+        awaitRestaurants(dao, 1);
+        assertEquals(1, mockWebServer.getRequestCount());
+    }
+
+    @Test
+    @DisplayName("Should merge every source into one snapshot, the first source wins a shared objectId")
+    void refresh_whenSeveralSources_shouldMerge() {
+        mockWebServer.setDispatcher(new CityDispatcher());
+        DealDaoImpl dao = newDao(Duration.ofSeconds(10), 0, 100, List.of(
+                source("melbourne", null), source("sydney", null)));
+
+        dao.refresh().block();
+
+        assertEquals(3, dao.getRestaurants().size());
+        assertEquals("Golden Dragon", dao.getRestaurants().get(0).getName());
+        assertEquals(2, dao.getSnapshot().getActiveDealCount(12 * 60));
+    }
+
+    @Test
+    @DisplayName("Should keep the last good data of a source which fails, and the data of the others")
+    void refresh_whenOneSourceFails_shouldKeepItsLastData() {
+        CityDispatcher dispatcher = new CityDispatcher();
+        mockWebServer.setDispatcher(dispatcher);
+        DealDaoImpl dao = newDao(Duration.ofSeconds(10), 0, 100, List.of(
+                source("melbourne", null), source("sydney", null)));
+        dao.refresh().block();
+
+        dispatcher.sydneyStatus = 500;
+        dao.refresh().block();
+
+        assertEquals(3, dao.getRestaurants().size());
+        assertEquals(1, dao.getRefreshStats().failed());
+    }
+
+    @Test
+    @DisplayName("Should not wait for a slow source past its own timeout")
+    void refresh_whenOneSourceSlow_shouldLoadTheOthers() {
+        CityDispatcher dispatcher = new CityDispatcher();
+        dispatcher.sydneyDelayMillis = 3000;
+        mockWebServer.setDispatcher(dispatcher);
+        DealDaoImpl dao = newDao(Duration.ofSeconds(10), 0, 100, List.of(
+                source("melbourne", null), source("sydney", Duration.ofMillis(300))));
+
+        long start = System.nanoTime();
+        dao.refresh().block();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis < 2000, "refresh took " + elapsedMillis + " ms");
+        assertEquals(1, dao.getRestaurants().size());
+        assertEquals(1, dao.getRefreshStats().failed());
+    }
+
+    @Test
+    @DisplayName("Should serve the snapshot file at startup, before the upstream answers")
+    void init_whenSnapshotFileExists_shouldWarmStart(@TempDir Path dir) {
+        Path file = dir.resolve("deal-snapshot.bin");
+        DealDaoImpl first = newDao(Duration.ofSeconds(10), 0, 100, List.of(), file);
+        mockWebServer.enqueue(new MockResponse().setBody(FEED));
+        first.refresh().block();
+        assertTrue(Files.isRegularFile(file));
+
+        // The restart finds the upstream hanging.
+        DealDaoImpl restarted = newDao(Duration.ofSeconds(10), 0, 100, List.of(), file);
+        mockWebServer.enqueue(new MockResponse().setBody(FEED).setHeadersDelay(3, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+        restarted.init();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis < 1000, "init took " + elapsedMillis + " ms");
+        assertEquals(1, restarted.getRestaurants().size());
+        assertEquals(1, restarted.getSnapshot().getActiveDealCount(12 * 60));
+        assertEquals(first.getSnapshot().getVersion(), restarted.getSnapshot().getVersion());
+        assertEquals(first.getSnapshot().getContentHash(), restarted.getSnapshot().getContentHash());
+        restarted.close();
+    }
+
+    @Test
+    @DisplayName("Should ignore a corrupt snapshot file and start empty")
+    void init_whenSnapshotFileCorrupt_shouldStartEmpty(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("deal-snapshot.bin");
+        Files.write(file, "not a snapshot file, but long enough to have a header".getBytes(StandardCharsets.UTF_8));
+        mockWebServer.enqueue(new MockResponse().setBody(FEED).setHeadersDelay(3, TimeUnit.SECONDS));
+        DealDaoImpl dao = newDao(Duration.ofSeconds(10), 0, 100, List.of(), file);
+
+        dao.init();
+
+        assertTrue(dao.getRestaurants().isEmpty());
+        dao.close();
+    }
+
+    private WebClientProperties.Source source(String city, Duration refreshTimeout) {
+        return new WebClientProperties.Source(city, mockWebServer.url("/" + city).toString(), null, refreshTimeout);
+    }
+
+    private static void awaitRestaurants(DealDaoImpl dao, int count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (dao.getRestaurants().size() != count && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+        assertEquals(count, dao.getRestaurants().size());
+    }
+
+    /**
+     * Answers /melbourne with FEED, and /sydney with two restaurants, one of them also in FEED.
+     */
+    private static class CityDispatcher extends Dispatcher {
+
+        private static final String SYDNEY_FEED = """
+                {"restaurants":[{"objectId":"rest-001","name":"Golden Dragon Sydney","suburb":"Sydney CBD",
+                "open":"10:00am","close":"10:00pm","deals":[]},
+                {"objectId":"rest-101","name":"Harbour Grill","suburb":"Sydney CBD","open":"10:00am","close":"10:00pm",
+                "deals":[{"objectId":"deal-101","discount":"20","dineIn":"true","lightning":"false",
+                "qtyLeft":"3","open":"11:00am","close":"2:00pm"}]},
+                {"objectId":"rest-102","name":"Bondi Cafe","suburb":"Bondi","open":"7:00am","close":"3:00pm",
+                "deals":[]}]}
+                """;
+
+        private volatile int sydneyStatus = 200;
+        private volatile long sydneyDelayMillis;
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            if ("/melbourne".equals(request.getPath())) {
+                return new MockResponse().setBody(FEED);
+            }
+            return new MockResponse().setResponseCode(sydneyStatus).setBody(SYDNEY_FEED)
+                    .setHeadersDelay(sydneyDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
     /**
      * Integration test - calls the real EatClub API
      * Remove @Disabled to run this test manually
@@ -59,14 +521,20 @@ class DealDaoImplTest {
                 realApiUrl,
                 Duration.ofSeconds(5),
                 Duration.ofSeconds(5),
-                Duration.ofSeconds(10)
+                Duration.ofSeconds(10),
+                DataSize.ofMegabytes(64),
+                Duration.ofSeconds(20),
+                new WebClientProperties.Retry(2, Duration.ofMillis(500), Duration.ofSeconds(4), 0.5),
+                new WebClientProperties.CircuitBreaker(3, Duration.ofSeconds(60)),
+                List.of(),
+                null
         );
 
         WebClient webClient = WebClient.builder().build();
-        DealDaoImpl realDao = new DealDaoImpl(webClient, properties);
+        DealDaoImpl realDao = new DealDaoImpl(webClient, properties, new SimpleMeterRegistry());
 
         // Act - Call the real API
-        realDao.refreshSnapshot();
+        realDao.refresh().block();
 
         // Assert - Verify we got real data
         List<Restaurant> restaurants = realDao.getRestaurants();
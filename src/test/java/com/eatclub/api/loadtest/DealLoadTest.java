@@ -0,0 +1,281 @@
+package com.eatclub.api.loadtest;
+
+import com.eatclub.api.dao.IDealDao;
+import com.eatclub.api.model.snapshot.RefreshStats;
+import com.eatclub.api.testdata.SyntheticFeed;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load test: boot the app against a local synthetic upstream, and drive mixed /deals and /peaktime traffic
+ * from many concurrent clients while the snapshot refreshes underneath.
+ * Fully offline. Tagged "load", so it only runs with the loadtest profile:
+ * mvn -Ploadtest test -Dloadtest.deals=100000 -Dloadtest.clients=64 -Dloadtest.duration=60s
+ * The clients are closed-loop (the next request is sent when the last one returns), so the latencies are
+ * service times at the throughput reached, not at a fixed arrival rate.
+ * Report: requests per second and latency percentiles per endpoint on stdout and in target/loadtest/report.txt,
+ * the full HdrHistogram percentile distribution per endpoint in target/loadtest/{endpoint}.hgrm.
+ * Gate: no failed request, p99 of every endpoint within loadtest.maxP99, at least loadtest.minRps overall.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "logging.level.com.eatclub.api=WARN")
+class DealLoadTest {
+
+    private static final int DEALS = Integer.getInteger("loadtest.deals", 20_000);
+    private static final double CHANGE_RATE = Double.parseDouble(System.getProperty("loadtest.changeRate", "0.02"));
+    private static final Duration CHANGE_INTERVAL = duration("loadtest.changeInterval", "5s");
+    private static final Duration REFRESH_INTERVAL = duration("loadtest.refreshInterval", "2s");
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 32);
+    private static final Duration WARMUP = duration("loadtest.warmup", "10s");
+    private static final Duration DURATION = duration("loadtest.duration", "30s");
+    private static final Duration MAX_P99 = duration("loadtest.maxP99", "500ms");
+    private static final double MIN_RPS = Double.parseDouble(System.getProperty("loadtest.minRps", "0"));
+
+    /**
+     * Latencies are recorded in microseconds, up to one minute.
+     */
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private static SyntheticUpstream upstream;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private IDealDao dealDao;
+
+    @DynamicPropertySource
+    static void upstreamProperties(DynamicPropertyRegistry registry) throws IOException {
+        upstream = new SyntheticUpstream(DEALS, CHANGE_RATE, CHANGE_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+        // Created here, the suppliers cannot throw IOException.
+        String snapshotFile = Files.createTempDirectory("loadtest").resolve("deal-snapshot.bin").toString();
+        registry.add("webclient.data.url", upstream::url);
+        registry.add("webclient.data.refresh-interval", REFRESH_INTERVAL::toString);
+        registry.add("webclient.data.snapshot-file", () -> snapshotFile);
+    }
+
+    @AfterAll
+    static void stopUpstream() throws IOException {
+        upstream.close();
+    }
+
+    /**
+     * The traffic mix, by weight.
+     */
+    private enum Endpoint {
+        DEALS(50) {
+            @Override
+            String path(SplittableRandom random, String[] times) {
+                return "/deals?timeOfDay=" + encode(times[random.nextInt(times.length)]);
+            }
+        },
+        DEALS_RANGE(10) {
+            @Override
+            String path(SplittableRandom random, String[] times) {
+                int from = random.nextInt(23);
+                return "/deals?from=" + from + ":00&to=" + (from + 1) + ":30&dineIn=true";
+            }
+        },
+        PEAKTIME(25) {
+            @Override
+            String path(SplittableRandom random, String[] times) {
+                return "/peaktime";
+            }
+        },
+        PEAKTIME_TOP(10) {
+            @Override
+            String path(SplittableRandom random, String[] times) {
+                return "/peaktime?top=3&weight=qtyLeft";
+            }
+        },
+        HISTOGRAM(5) {
+            @Override
+            String path(SplittableRandom random, String[] times) {
+                return "/peaktime/histogram";
+            }
+        };
+
+        private final int weight;
+        private final Recorder latency = new Recorder(HIGHEST_LATENCY_MICROS, 3);
+        private final AtomicLong errors = new AtomicLong();
+
+        Endpoint(int weight) {
+            this.weight = weight;
+        }
+
+        abstract String path(SplittableRandom random, String[] times);
+
+        static Endpoint pick(SplittableRandom random) {
+            int total = 0;
+            for (Endpoint endpoint : values()) total += endpoint.weight;
+            int pick = random.nextInt(total);
+            for (Endpoint endpoint : values()) {
+                pick -= endpoint.weight;
+                if (pick < 0) return endpoint;
+            }
+            throw new IllegalStateException();
+        }
+
+        private static String encode(String time) {
+            return time.replace(" ", "%20");
+        }
+    }
+
+    @Test
+    @DisplayName("[Load] Sustained throughput and p99 of /deals and /peaktime while the snapshot refreshes")
+    void mixedTraffic_whileRefreshing_shouldMeetLatencyGate() throws Exception {
+        // 1) Wait for the first snapshot, the load is meaningless against the empty one.
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (dealDao.getSnapshot().getRestaurantCount() == 0) {
+            assertTrue(System.nanoTime() < deadline, "No snapshot within 60s");
+            Thread.sleep(100);
+        }
+        RefreshStats before = dealDao.getRefreshStats();
+
+        // 2) Warm up, then measure.
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        for (int c = 0; c < CLIENTS; c++) {
+            long seed = SyntheticFeed.DEFAULT_SEED + c;
+            clients.execute(() -> drive(client, running, seed));
+        }
+        Thread.sleep(WARMUP.toMillis());
+        for (Endpoint endpoint : Endpoint.values()) {
+            endpoint.latency.reset();
+            endpoint.errors.set(0);
+        }
+        long start = System.nanoTime();
+        Thread.sleep(DURATION.toMillis());
+        List<Histogram> histograms = new ArrayList<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            histograms.add(endpoint.latency.getIntervalHistogram());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        running.set(false);
+        clients.shutdown();
+        assertTrue(clients.awaitTermination(30, TimeUnit.SECONDS));
+        RefreshStats after = dealDao.getRefreshStats();
+
+        // 3) Report.
+        Path dir = Path.of("target", "loadtest");
+        Files.createDirectories(dir);
+        Histogram total = new Histogram(HIGHEST_LATENCY_MICROS, 3);
+        long errors = 0;
+        try (PrintStream report = new PrintStream(Files.newOutputStream(dir.resolve("report.txt")), true)) {
+            for (PrintStream out : new PrintStream[]{System.out, report}) {
+                out.printf("Load test: %d deals (%d KB feed), %d clients, %.0f s measured after %s warm-up%n",
+                        DEALS, upstream.bodyBytes() / 1024, CLIENTS, seconds, WARMUP);
+                out.printf("Upstream: %d changes, %d bodies served, %d not modified; refreshes changed %d, "
+                                + "unchanged %d, failed %d, skipped %d%n",
+                        upstream.changes(), upstream.served(), upstream.notModified(),
+                        after.changed() - before.changed(), after.unchanged() - before.unchanged(),
+                        after.failed() - before.failed(), after.skipped() - before.skipped());
+                out.printf("%-14s %10s %10s %8s %8s %8s %8s %8s %8s%n",
+                        "endpoint", "requests", "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+            }
+            for (int e = 0; e < histograms.size(); e++) {
+                Endpoint endpoint = Endpoint.values()[e];
+                Histogram histogram = histograms.get(e);
+                total.add(histogram);
+                errors += endpoint.errors.get();
+                printRow(report, endpoint.name(), histogram, seconds, endpoint.errors.get());
+                try (PrintStream out = new PrintStream(
+                        Files.newOutputStream(dir.resolve(endpoint.name().toLowerCase() + ".hgrm")))) {
+                    histogram.outputPercentileDistribution(out, 1000.0);
+                }
+            }
+            printRow(report, "TOTAL", total, seconds, errors);
+        }
+
+        // 4) Gate.
+        assertEquals(0, errors, "Failed requests");
+        assertTrue(after.changed() > before.changed(), "The snapshot never refreshed during the run");
+        for (int e = 0; e < histograms.size(); e++) {
+            long p99 = histograms.get(e).getValueAtPercentile(99);
+            assertTrue(p99 <= MAX_P99.toNanos() / 1000,
+                    Endpoint.values()[e] + " p99 " + p99 / 1000.0 + " ms is above " + MAX_P99);
+        }
+        double rps = total.getTotalCount() / seconds;
+        assertTrue(rps >= MIN_RPS, "Throughput " + rps + " req/s is below " + MIN_RPS);
+    }
+
+    /**
+     * One client: send the next request as soon as the last one returns, until stopped.
+     */
+    private void drive(HttpClient client, AtomicBoolean running, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        String[] times = SyntheticFeed.queryTimes(256, seed);
+        String base = "http://localhost:" + port;
+        while (running.get()) {
+            Endpoint endpoint = Endpoint.pick(random);
+            HttpRequest request = HttpRequest.newBuilder(URI.create(base + endpoint.path(random, times)))
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+            long start = System.nanoTime();
+            try {
+                HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                long micros = (System.nanoTime() - start) / 1000;
+                endpoint.latency.recordValue(Math.min(micros, HIGHEST_LATENCY_MICROS));
+                if (response.statusCode() != 200) {
+                    endpoint.errors.incrementAndGet();
+                }
+            } catch (IOException e) {
+                endpoint.errors.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static void printRow(PrintStream report, String name, Histogram histogram, double seconds, long errors) {
+        for (PrintStream out : new PrintStream[]{System.out, report}) {
+            out.printf("%-14s %10d %10.0f %8d %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+                    name, histogram.getTotalCount(), histogram.getTotalCount() / seconds, errors,
+                    histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getMaxValue() / 1000.0);
+        }
+    }
+
+    private static Duration duration(String property, String defaultValue) {
+        return DurationStyle.detectAndParse(System.getProperty(property, defaultValue));
+    }
+}
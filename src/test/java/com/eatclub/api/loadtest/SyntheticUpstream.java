@@ -0,0 +1,100 @@
+package com.eatclub.api.loadtest;
+
+import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.testdata.SyntheticFeed;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in of the upstream feed: a MockWebServer serving a synthetic feed, which changes on a schedule.
+ * Every change mutates a share of the deals (changeRate) and gets a new ETag, a request still holding
+ * the current ETag is answered with 304, as the real CDN does.
+ */
+final class SyntheticUpstream implements AutoCloseable {
+
+    private final MockWebServer server = new MockWebServer();
+    private final ScheduledExecutorService changer = Executors.newSingleThreadScheduledExecutor();
+    private final List<Restaurant> restaurants;
+    private final double changeRate;
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    /**
+     * The body and its ETag, swapped together.
+     */
+    private volatile Feed feed;
+
+    private record Feed(byte[] body, String etag) {
+    }
+
+    /**
+     * @param deals          the deals of the feed
+     * @param changeRate     share of the deals changed by every change, between 0 and 1
+     * @param changeInterval how often the feed changes
+     */
+    SyntheticUpstream(int deals, double changeRate, long changeInterval, TimeUnit unit) throws IOException {
+        this.restaurants = SyntheticFeed.restaurants(deals, SyntheticFeed.DEFAULT_SEED);
+        this.changeRate = changeRate;
+        this.feed = new Feed(SyntheticFeed.json(restaurants), "\"v0\"");
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                Feed current = feed;
+                if (current.etag().equals(request.getHeader("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    return new MockResponse().setResponseCode(304).addHeader("ETag", current.etag());
+                }
+                served.incrementAndGet();
+                return new MockResponse()
+                        .addHeader("Content-Type", "application/json")
+                        .addHeader("ETag", current.etag())
+                        .setBody(new Buffer().write(current.body()));
+            }
+        });
+        server.start();
+        changer.scheduleAtFixedRate(this::change, changeInterval, changeInterval, unit);
+    }
+
+    private void change() {
+        long version = changes.incrementAndGet();
+        SyntheticFeed.mutate(restaurants, changeRate, SyntheticFeed.DEFAULT_SEED + version);
+        feed = new Feed(SyntheticFeed.json(restaurants), "\"v" + version + "\"");
+    }
+
+    String url() {
+        return server.url("/feed.json").toString();
+    }
+
+    int bodyBytes() {
+        return feed.body().length;
+    }
+
+    long changes() {
+        return changes.get();
+    }
+
+    long served() {
+        return served.get();
+    }
+
+    long notModified() {
+        return notModified.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        changer.shutdownNow();
+        server.shutdown();
+    }
+}
@@ -0,0 +1,452 @@
+package com.eatclub.api.model.snapshot;
+
+import com.eatclub.api.model.domain.Deal;
+import com.eatclub.api.model.domain.Restaurant;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for DealSnapshot
+ * Tests the minute index, the peak time and the incremental update
+ */
+class DealSnapshotTest {
+
+    private Restaurant createRestaurant(String objectId, Deal... deals) {
+        Restaurant restaurant = new Restaurant();
+        restaurant.setObjectId(objectId);
+        restaurant.setName("Restaurant " + objectId);
+        restaurant.setOpen("9:00am");
+        restaurant.setClose("11:00pm");
+        restaurant.setDeals(new ArrayList<>(List.of(deals)));
+        return restaurant;
+    }
+
+    private Deal createDeal(String objectId, String qtyLeft, String open, String close) {
+        Deal deal = new Deal();
+        deal.setObjectId(objectId);
+        deal.setQtyLeft(qtyLeft);
+        deal.setOpen(open);
+        deal.setClose(close);
+        return deal;
+    }
+
+    private List<String> dealIdsAt(DealSnapshot snapshot, int minuteOfDay) {
+        List<String> ids = new ArrayList<>();
+        snapshot.forEachActiveDeal(minuteOfDay, dealSlot -> ids.add(snapshot.getDealObjectId(dealSlot)));
+        return ids;
+    }
+
+    @Test
+    @DisplayName("Should index deals by minute and calculate the peak time")
+    void compile_shouldIndexDealsAndPeakTime() {
+        Restaurant restaurant = createRestaurant("rest-001",
+                createDeal("deal-001", "5", "11:00am", "2:00pm"),
+                createDeal("deal-002", "5", "12:00pm", "1:00pm"),
+                createDeal("deal-003", "0", "12:00pm", "1:00pm"));
+
+        DealSnapshot snapshot = DealSnapshot.compile(List.of(restaurant), 1L);
+
+        assertEquals(List.of("deal-001"), dealIdsAt(snapshot, 11 * 60));
+        assertEquals(List.of("deal-001", "deal-002"), dealIdsAt(snapshot, 12 * 60));
+        assertEquals(List.of(), dealIdsAt(snapshot, 14 * 60));
+        assertEquals(new PeakTime(12 * 60, 13 * 60, 2), snapshot.getPeakTime());
+    }
+
+    @Test
+    @DisplayName("Should return every deal overlapping a range once")
+    void forEachActiveDeal_whenRange_shouldReturnOverlappingDealsOnce() {
+        Restaurant restaurant = createRestaurant("rest-001",
+                createDeal("deal-001", "5", "11:00am", "2:00pm"),
+                createDeal("deal-002", "5", "1:00pm", "3:00pm"),
+                createDeal("deal-003", "5", "3:00pm", "4:00pm"),
+                createDeal("deal-004", "0", "1:00pm", "3:00pm"));
+        DealSnapshot snapshot = DealSnapshot.compile(List.of(restaurant), 1L);
+
+        List<String> ids = new ArrayList<>();
+        snapshot.forEachActiveDeal(12 * 60, 15 * 60,
+                dealSlot -> ids.add(snapshot.getDealObjectId(dealSlot)));
+
+        // [12:00, 15:00): deal-003 starts at the end, deal-004 is sold out.
+        assertEquals(List.of("deal-001", "deal-002"), ids);
+        assertEquals(2, snapshot.getActiveDealCount(12 * 60, 15 * 60));
+        assertEquals(3, snapshot.getActiveDealCount(0, DealSnapshot.MINUTES_OF_DAY));
+    }
+
+    @Test
+    @DisplayName("Should resolve the deal fields once into columns")
+    void compile_shouldResolveColumns() {
+        Deal deal = createDeal("deal-001", "7", "11:00am", "2:00pm");
+        deal.setDineIn("true");
+        deal.setLightning("false");
+        Restaurant restaurant = createRestaurant("rest-001", deal);
+        restaurant.setSuburb("Melbourne");
+
+        DealSnapshot snapshot = DealSnapshot.compile(List.of(restaurant), 1L);
+
+        List<Integer> slots = new ArrayList<>();
+        snapshot.forEachActiveDeal(12 * 60, slots::add);
+        int dealSlot = slots.get(0);
+        assertEquals(11 * 60, snapshot.getStartMinute(dealSlot));
+        assertEquals(14 * 60, snapshot.getEndMinute(dealSlot));
+        assertEquals(7, snapshot.getQtyLeftValue(dealSlot));
+        assertTrue(snapshot.isDineIn(dealSlot));
+        assertFalse(snapshot.isLightning(dealSlot));
+        assertEquals("Melbourne", snapshot.getRestaurantSuburb(snapshot.getRestaurantOf(dealSlot)));
+        // The POJOs can still be rebuilt from the columns.
+        assertEquals("deal-001", snapshot.getRestaurants().get(0).getDeals().get(0).getObjectId());
+    }
+
+    @Test
+    @DisplayName("Should patch only the changed minutes and match a full compile")
+    void update_whenFewDealsChange_shouldPatchChangedMinutes() {
+        List<Restaurant> before = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            before.add(createRestaurant("rest-" + i,
+                    createDeal("deal-a", "5", "11:00am", "2:00pm"),
+                    createDeal("deal-b", "5", "5:00pm", "9:00pm")));
+        }
+        DealSnapshot previous = DealSnapshot.compile(before, 1L);
+
+        // One deal sells out, one gets a new window, one is added.
+        List<Restaurant> after = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            after.add(createRestaurant("rest-" + i,
+                    createDeal("deal-a", i == 0 ? "0" : "5", "11:00am", "2:00pm"),
+                    createDeal("deal-b", "5", i == 1 ? "6:00pm" : "5:00pm", "9:00pm")));
+        }
+        after.get(2).getDeals().add(createDeal("deal-c", "1", "3:00pm", "4:00pm"));
+
+        DealSnapshot patched = DealSnapshot.update(previous, after, 2L);
+        DealSnapshot compiled = DealSnapshot.compile(after, 2L);
+
+        SnapshotDiff diff = patched.getDiff();
+        assertFalse(diff.fullRebuild());
+        assertEquals(1, diff.dealsAdded());
+        assertEquals(2, diff.dealsModified());
+        assertEquals(0, diff.dealsRemoved());
+        assertEquals(1L, patched.getPreviousVersion());
+        assertFalse(patched.isMinuteChanged(16 * 60 + 30));
+        assertTrue(patched.isMinuteChanged(17 * 60));
+        for (int m = 0; m < DealSnapshot.MINUTES_OF_DAY; m++) {
+            assertEquals(dealIdsAt(compiled, m), dealIdsAt(patched, m), "minute " + m);
+        }
+        assertEquals(compiled.getPeakTime(), patched.getPeakTime());
+        assertEquals(compiled.getContentHash(), patched.getContentHash());
+    }
+
+    @Test
+    @DisplayName("Should patch the start order, the facets and the objectId indexes like a full compile")
+    void update_whenPatched_shouldPatchIndexesLikeCompile() {
+        List<Restaurant> before = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            before.add(createFacetRestaurant(i, "Suburb " + (i % 3), "20"));
+        }
+        DealSnapshot previous = DealSnapshot.compile(before, 1L);
+
+        // A restaurant is removed and one added, one moves suburb, a new discount, a moved start, a replaced deal.
+        List<Restaurant> after = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            after.add(createFacetRestaurant(i, i == 1 ? "Elsewhere" : "Suburb " + (i % 3), "20"));
+        }
+        after.get(1).getDeals().get(0).setDiscount("35");
+        after.get(2).getDeals().get(1).setStart("6:00pm");
+        after.get(3).getDeals().get(0).setObjectId("deal-z");
+
+        DealSnapshot patched = DealSnapshot.update(previous, after, 2L);
+        DealSnapshot compiled = DealSnapshot.compile(after, 2L);
+
+        assertFalse(patched.getDiff().fullRebuild());
+        List<DealFilter> filters = List.of(new DealFilter(null, null, null, null),
+                new DealFilter("elsewhere", null, null, null), new DealFilter("suburb 2", true, null, null),
+                new DealFilter(null, false, null, 30), new DealFilter(null, null, null, 20),
+                new DealFilter(null, null, null, 11), new DealFilter(null, null, false, null),
+                new DealFilter("suburb 0", null, null, 40));
+        int[][] ranges = {{0, 1440}, {11 * 60, 17 * 60 + 30}, {17 * 60 + 30, 18 * 60 + 30}, {18 * 60, 18 * 60 + 1}};
+        for (int[] range : ranges) {
+            assertEquals(compiled.getActiveDealCount(range[0], range[1]), patched.getActiveDealCount(range[0], range[1]));
+            for (DealFilter filter : filters) {
+                assertEquals(dealKeysIn(compiled, range, filter), dealKeysIn(patched, range, filter),
+                        filter + " " + range[0] + "~" + range[1]);
+            }
+        }
+        for (Restaurant restaurant : after) {
+            int row = patched.findRestaurant(restaurant.getObjectId());
+            assertEquals(restaurant.getObjectId(), patched.getRestaurantObjectId(row));
+        }
+        assertEquals(DealSnapshot.NOT_FOUND, patched.findRestaurant("rest-0"));
+        assertEquals("rest-4", patched.getRestaurantObjectId(patched.getRestaurantOf(patched.findDeal("deal-z"))));
+        assertEquals("rest-40", patched.getRestaurantObjectId(patched.getRestaurantOf(patched.findDeal("deal-b-40"))));
+        assertEquals(DealSnapshot.NOT_FOUND, patched.findDeal("deal-a-0"));
+        assertEquals(DealSnapshot.NOT_FOUND, patched.findDeal("deal-a-4"));
+    }
+
+    @Test
+    @DisplayName("Should list the deals of a reordered feed in its new order, like a full compile")
+    void update_whenFeedReordered_shouldMatchCompile() {
+        List<Restaurant> before = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            before.add(createFacetRestaurant(i, "Suburb " + (i % 3), "20"));
+        }
+        DealSnapshot previous = DealSnapshot.compile(before, 1L);
+
+        // Two restaurants swap places, one is inserted in the middle, two deals of a restaurant swap places.
+        List<List<Restaurant>> feeds = new ArrayList<>();
+        List<Restaurant> swapped = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            swapped.add(createFacetRestaurant(i == 5 ? 30 : i == 30 ? 5 : i, "Suburb " + (i % 3), "20"));
+        }
+        feeds.add(swapped);
+        List<Restaurant> inserted = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            inserted.add(createFacetRestaurant(i, "Suburb " + (i % 3), "20"));
+        }
+        inserted.add(20, createFacetRestaurant(40, "Suburb 1", "20"));
+        feeds.add(inserted);
+        List<Restaurant> dealsSwapped = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            dealsSwapped.add(createFacetRestaurant(i, "Suburb " + (i % 3), "20"));
+        }
+        dealsSwapped.get(10).getDeals().add(dealsSwapped.get(10).getDeals().remove(0));
+        dealsSwapped.get(10).getDeals().forEach(deal -> deal.setStart("1:00pm"));
+        feeds.add(dealsSwapped);
+
+        for (List<Restaurant> after : feeds) {
+            DealSnapshot patched = DealSnapshot.update(previous, after, 2L);
+            DealSnapshot compiled = DealSnapshot.compile(after, 2L);
+
+            for (int m = 0; m < DealSnapshot.MINUTES_OF_DAY; m += 30) {
+                assertEquals(dealIdsAt(compiled, m), dealIdsAt(patched, m), "minute " + m);
+            }
+            List<String> compiledIds = new ArrayList<>();
+            compiled.forEachActiveDeal(0, DealSnapshot.MINUTES_OF_DAY, DealFilter.NONE,
+                    dealSlot -> compiledIds.add(compiled.getDealObjectId(dealSlot)));
+            List<String> patchedIds = new ArrayList<>();
+            patched.forEachActiveDeal(0, DealSnapshot.MINUTES_OF_DAY, DealFilter.NONE,
+                    dealSlot -> patchedIds.add(patched.getDealObjectId(dealSlot)));
+            assertEquals(compiledIds, patchedIds);
+            assertEquals(compiled.getRestaurants().stream().map(Restaurant::getObjectId).toList(),
+                    patched.getRestaurants().stream().map(Restaurant::getObjectId).toList());
+        }
+    }
+
+    @Test
+    @DisplayName("Should page a range in the API order and sorted, the pages adding up to the whole result")
+    void forEachActiveDeal_whenPaged_shouldMatchTheWholeResult() {
+        List<Restaurant> restaurants = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Restaurant restaurant = createFacetRestaurant(i, "Suburb " + (i % 3), String.valueOf(i % 7 * 5));
+            restaurant.getDeals().get(0).setStart(List.of("11:00am", "11:30am", "12:00pm", "1:00pm").get(i % 4));
+            restaurants.add(restaurant);
+        }
+        DealSnapshot snapshot = DealSnapshot.compile(restaurants, 1L);
+
+        int[][] ranges = {{11 * 60, 11 * 60 + 1}, {11 * 60, 14 * 60}, {11 * 60 + 15, 18 * 60}, {0, 1440}};
+        List<DealFilter> filters = List.of(DealFilter.NONE, new DealFilter(null, true, null, null),
+                new DealFilter("suburb 1", null, null, 10));
+        for (int[] range : ranges) {
+            for (DealFilter filter : filters) {
+                List<Integer> apiOrder = new ArrayList<>();
+                snapshot.forEachActiveDeal(range[0], range[1], filter, apiOrder::add);
+                List<Integer> byDiscount = new ArrayList<>(apiOrder);
+                // Highest discount first, ties in slot order.
+                byDiscount.sort(Comparator.<Integer>comparingInt(d -> -Integer.parseInt(snapshot.getDiscount(d)))
+                        .thenComparingInt(d -> d));
+                for (int limit : new int[]{1, 3, 7, 100}) {
+                    String name = range[0] + "~" + range[1] + " " + filter + " limit " + limit;
+                    assertEquals(apiOrder, pages(snapshot, range, filter, null, limit), name);
+                    assertEquals(byDiscount, pages(snapshot, range, filter, DealSort.DISCOUNT, limit), name);
+                }
+            }
+        }
+    }
+
+    private List<Integer> pages(DealSnapshot snapshot, int[] range, DealFilter filter, DealSort sort, int limit) {
+        List<Integer> slots = new ArrayList<>();
+        int position = 0;
+        do {
+            List<Integer> page = new ArrayList<>();
+            position = snapshot.forEachActiveDeal(range[0], range[1], filter, sort, position, limit, page::add);
+            assertTrue(page.size() == limit || position == DealSnapshot.END_OF_PAGES);
+            slots.addAll(page);
+        } while (position != DealSnapshot.END_OF_PAGES);
+        return slots;
+    }
+
+    private Restaurant createFacetRestaurant(int i, String suburb, String discount) {
+        Deal lunch = createDeal("deal-a-" + i, "5", "11:00am", "2:00pm");
+        lunch.setDiscount(discount);
+        lunch.setDineIn(String.valueOf(i % 2 == 0));
+        Deal dinner = createDeal("deal-b-" + i, "5", "5:00pm", "9:00pm");
+        dinner.setDiscount(i % 4 == 0 ? "10" : "30");
+        dinner.setLightning("true");
+        Restaurant restaurant = createRestaurant("rest-" + i, lunch, dinner);
+        restaurant.setSuburb(suburb);
+        return restaurant;
+    }
+
+    private List<String> dealKeysIn(DealSnapshot snapshot, int[] range, DealFilter filter) {
+        List<String> keys = new ArrayList<>();
+        snapshot.forEachActiveDeal(range[0], range[1], filter, dealSlot -> keys.add(
+                snapshot.getRestaurantObjectId(snapshot.getRestaurantOf(dealSlot)) + "/" + snapshot.getDealObjectId(dealSlot)));
+        keys.sort(null);
+        return keys;
+    }
+
+    @Test
+    @DisplayName("Should find restaurants and deals by objectId after a patch")
+    void findByObjectId_whenPatched_shouldFollowTheNewData() {
+        DealSnapshot previous = DealSnapshot.compile(List.of(
+                createRestaurant("rest-001", createDeal("deal-001", "5", "11:00am", "2:00pm")),
+                createRestaurant("rest-002", createDeal("deal-002", "5", "11:00am", "2:00pm"))), 1L);
+
+        DealSnapshot patched = DealSnapshot.update(previous, List.of(
+                createRestaurant("rest-001",
+                        createDeal("deal-001", "0", "11:00am", "2:00pm"),
+                        createDeal("deal-003", "5", "5:00pm", "9:00pm"))), 2L);
+
+        int row = patched.findRestaurant("rest-001");
+        assertEquals("rest-001", patched.getRestaurantObjectId(row));
+        assertEquals(2, patched.getDealCountOf(row));
+        assertEquals(DealSnapshot.NOT_FOUND, patched.findRestaurant("rest-002"));
+        assertEquals(DealSnapshot.NOT_FOUND, patched.findDeal("deal-002"));
+        assertEquals(DealSnapshot.NOT_FOUND, patched.findDeal(null));
+        // A sold out deal is still found, with its current qtyLeft.
+        assertEquals("0", patched.getQtyLeft(patched.findDeal("deal-001")));
+        assertEquals(17 * 60, patched.getStartMinute(patched.findDeal("deal-003")));
+    }
+
+    @Test
+    @DisplayName("Should find objectIds kept off-heap by their bytes, multi-byte and colliding ones included")
+    void findByObjectId_whenOffHeap_shouldCompareInPlace() {
+        // "Aa" and "BB" have the same String.hashCode().
+        List<String> objectIds = List.of("Aa", "BB", "café-ü", "店-001", "deal-\uD83C\uDF55");
+        List<Restaurant> restaurants = new ArrayList<>();
+        for (String objectId : objectIds) {
+            restaurants.add(createRestaurant(objectId, createDeal("d-" + objectId, "5", "11:00am", "2:00pm")));
+        }
+        DealSnapshot snapshot = DealSnapshot.compile(restaurants, 1L);
+
+        for (String objectId : objectIds) {
+            int row = snapshot.findRestaurant(objectId);
+            assertNotEquals(DealSnapshot.NOT_FOUND, row, objectId);
+            assertEquals(objectId, snapshot.getRestaurantObjectId(row));
+            assertEquals("d-" + objectId, snapshot.getDealObjectId(snapshot.findDeal("d-" + objectId)));
+        }
+        for (String missing : List.of("A", "Aaa", "aa", "café-u", "店-00", "deal-\uD83C", "")) {
+            assertEquals(DealSnapshot.NOT_FOUND, snapshot.findRestaurant(missing), missing);
+        }
+    }
+
+    @Test
+    @DisplayName("Should read the strings kept off-heap back, before and after a patch")
+    void getStrings_whenOffHeap_shouldReadBack() {
+        Restaurant restaurant = createRestaurant("rest-001", createDeal("deal-001", "5", "11:00am", "2:00pm"));
+        restaurant.setName("Café Ünïcode");
+        DealSnapshot previous = DealSnapshot.compile(List.of(restaurant), 1L);
+
+        // Every string is used once here, so all of them are kept off-heap.
+        assertTrue(previous.getDataOffHeapBytes() > 0);
+        int row = previous.findRestaurant("rest-001");
+        assertEquals("Café Ünïcode", previous.getRestaurantName(row));
+
+        restaurant.getDeals().add(createDeal("deal-002", "5", "5:00pm", "9:00pm"));
+        DealSnapshot patched = DealSnapshot.update(previous, List.of(restaurant), 2L);
+
+        assertEquals("Café Ünïcode", patched.getRestaurantName(patched.findRestaurant("rest-001")));
+        assertEquals("deal-001", patched.getDealObjectId(patched.findDeal("deal-001")));
+        assertEquals("5:00pm", patched.getRestaurants().get(0).getDeals().get(1).getOpen());
+    }
+
+    @Test
+    @DisplayName("Should keep the strings of a patched deal off-heap when only that deal uses them")
+    void update_whenPatchedRepeatedly_shouldKeepStringsUsedOnceOffHeap() {
+        List<Restaurant> restaurants = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            restaurants.add(createRestaurant("rest-" + i, createDeal("deal-" + i, "5", "11:00am", "2:00pm")));
+        }
+        DealSnapshot snapshot = DealSnapshot.compile(restaurants, 1L);
+
+        // The same deal sells down on every refresh, its objectId and times are interned again each time,
+        // they stay off-heap: the off-heap strings are shared with the previous snapshot, never moved back.
+        for (int qtyLeft = 4; qtyLeft > 0; qtyLeft--) {
+            restaurants.get(0).getDeals().get(0).setQtyLeft(String.valueOf(qtyLeft));
+            DealSnapshot patched = DealSnapshot.update(snapshot, restaurants, snapshot.getVersion() + 1);
+
+            assertFalse(patched.getDiff().fullRebuild());
+            assertTrue(patched.getDataOffHeapBytes() >= snapshot.getDataOffHeapBytes(),
+                    patched.getDataOffHeapBytes() + " < " + snapshot.getDataOffHeapBytes());
+            assertEquals(String.valueOf(qtyLeft), patched.getQtyLeft(patched.findDeal("deal-0")));
+            snapshot = patched;
+        }
+        assertEquals("deal-0", snapshot.getDealObjectId(snapshot.findDeal("deal-0")));
+    }
+
+    @Test
+    @DisplayName("Should share the off-heap strings with the previous snapshot, and move new ones off-heap in bulk")
+    void update_whenPatched_shouldShareOffHeapStrings() {
+        List<Restaurant> restaurants = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            restaurants.add(createRestaurant("rest-" + i, createDeal("deal-" + i, "5", "11:00am", "2:00pm")));
+        }
+        DealSnapshot compiled = DealSnapshot.compile(restaurants, 1L);
+
+        // A few new deals stay in the heap overlay, the buffer of the previous snapshot is shared as it is.
+        restaurants.get(0).getDeals().add(createDeal("new-deal-0", "5", "5:00pm", "9:00pm"));
+        DealSnapshot patched = DealSnapshot.update(compiled, restaurants, 2L);
+        assertFalse(patched.getDiff().fullRebuild());
+        assertEquals(compiled.getDataOffHeapBytes(), patched.getDataOffHeapBytes());
+
+        // Enough of them, and the next freeze writes one larger buffer with all the strings used once.
+        DealSnapshot snapshot = patched;
+        for (int i = 1; i < 40; i++) {
+            restaurants.get(i).getDeals().add(createDeal("new-deal-" + i, "5", "5:00pm", "9:00pm"));
+            if (i % 5 == 0) {
+                snapshot = DealSnapshot.update(snapshot, restaurants, snapshot.getVersion() + 1);
+                assertFalse(snapshot.getDiff().fullRebuild());
+            }
+        }
+        snapshot = DealSnapshot.update(snapshot, restaurants, snapshot.getVersion() + 1);
+        assertTrue(snapshot.getDataOffHeapBytes() > compiled.getDataOffHeapBytes());
+
+        for (int i = 0; i < 40; i++) {
+            assertEquals("new-deal-" + i, snapshot.getDealObjectId(snapshot.findDeal("new-deal-" + i)));
+            assertEquals("deal-" + i, snapshot.getDealObjectId(snapshot.findDeal("deal-" + i)));
+            assertEquals("Restaurant rest-" + i, snapshot.getRestaurantName(snapshot.findRestaurant("rest-" + i)));
+        }
+        assertEquals(DealSnapshot.compile(restaurants, 1L).getContentHash(), snapshot.getContentHash());
+    }
+
+    @Test
+    @DisplayName("Should keep the shared off-heap strings readable until the last snapshot using them is released")
+    void release_whenStringsShared_shouldFreeWithTheLastSnapshot() {
+        List<Restaurant> restaurants = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            restaurants.add(createRestaurant("rest-" + i, createDeal("deal-" + i, "5", "11:00am", "2:00pm")));
+        }
+        DealSnapshot previous = DealSnapshot.compile(restaurants, 1L);
+        restaurants.get(0).getDeals().get(0).setQtyLeft("4");
+        DealSnapshot patched = DealSnapshot.update(previous, restaurants, 2L);
+        assertFalse(patched.getDiff().fullRebuild());
+
+        // A reader still holds the previous snapshot after its owner dropped it.
+        assertTrue(previous.retain());
+        previous.release();
+        assertEquals("Restaurant rest-3", previous.getRestaurantName(previous.findRestaurant("rest-3")));
+        previous.release();
+        assertFalse(previous.retain());
+
+        // The patched snapshot shares the buffer, it is still there.
+        for (int i = 0; i < 10; i++) {
+            assertEquals("deal-" + i, patched.getDealObjectId(patched.findDeal("deal-" + i)));
+        }
+        patched.release();
+        assertFalse(patched.retain());
+        assertThrows(IllegalStateException.class, patched::release);
+    }
+}
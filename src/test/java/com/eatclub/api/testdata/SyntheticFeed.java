@@ -0,0 +1,227 @@
+package com.eatclub.api.testdata;
+
+import com.eatclub.api.model.domain.Deal;
+import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.util.TimeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic upstream feeds for benchmarks and load tests: the same deal count and seed
+ * always give the same restaurants, deals and JSON bytes.
+ * The field shapes follow the real feed:
+ * 1) Every value is a string, objectIds are upper case UUIDs.
+ * 2) Times mix 12-hour ("3:00pm", "11:30 AM") and 24-hour ("15:00", "9:30") formats.
+ * 3) A deal has open/close, start/end, both or neither (then it runs while the restaurant is open).
+ * 4) Some deals are sold out (qtyLeft "0"), restaurants have 1 to 8 deals, suburbs repeat.
+ * Every window is valid: it lies within the opening hours of its restaurant, and never crosses midnight.
+ */
+public final class SyntheticFeed {
+
+    public static final long DEFAULT_SEED = 42L;
+
+    private static final String[] SUBURBS = {
+            "Melbourne CBD", "Southbank", "Docklands", "Carlton", "Fitzroy", "Collingwood", "Richmond",
+            "South Yarra", "Prahran", "St Kilda", "Brunswick", "Footscray", "Hawthorn", "Box Hill",
+            "Sydney CBD", "Surry Hills", "Newtown", "Bondi", "Manly", "Parramatta", "Chatswood", "Glebe",
+            "Brisbane City", "Fortitude Valley", "South Brisbane", "Perth CBD", "Fremantle", "Adelaide CBD"
+    };
+    private static final String[] NAMES = {
+            "Golden Dragon", "Sushi Train", "Pasta Bar", "Taco Shack", "Curry House", "Burger Joint",
+            "Pho Saigon", "Dumpling King", "Pizza Corner", "Kebab Express", "Ramen Ya", "Green Bowl"
+    };
+    private static final String[] STREETS = {
+            "Main Street", "Collins Street", "George Street", "Queen Street", "Chapel Street", "King Street"
+    };
+
+    private SyntheticFeed() {
+    }
+
+    /**
+     * @param dealCount the deals of the feed, shared out over as many restaurants as needed
+     * @param seed      the same seed gives the same feed
+     */
+    public static List<Restaurant> restaurants(int dealCount, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Restaurant> restaurants = new ArrayList<>(dealCount / 4 + 1);
+        int deals = 0;
+        while (deals < dealCount) {
+            Restaurant restaurant = restaurant(random, restaurants.size());
+            int count = Math.min(1 + random.nextInt(8), dealCount - deals);
+            int open = TimeUtils.parseMinuteOfDay(restaurant.getOpen());
+            int close = TimeUtils.parseMinuteOfDay(restaurant.getClose());
+            List<Deal> list = new ArrayList<>(count);
+            for (int d = 0; d < count; d++) {
+                list.add(deal(random, open, close));
+            }
+            restaurant.setDeals(list);
+            restaurants.add(restaurant);
+            deals += count;
+        }
+        return restaurants;
+    }
+
+    /**
+     * Change the deals of a feed in place, as the upstream does between two refreshes:
+     * qtyLeft goes down (or sells out), and now and then a discount changes.
+     * @param changeRate share of the deals which change, between 0 and 1
+     * @return the number of deals changed
+     */
+    public static int mutate(List<Restaurant> restaurants, double changeRate, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int changed = 0;
+        for (Restaurant restaurant : restaurants) {
+            for (Deal deal : restaurant.getDeals()) {
+                if (random.nextDouble() >= changeRate) {
+                    continue;
+                }
+                int qtyLeft = Integer.parseInt(deal.getQtyLeft());
+                deal.setQtyLeft(String.valueOf(qtyLeft > 0 ? qtyLeft - 1 : 5));
+                if (random.nextInt(4) == 0) {
+                    deal.setDiscount(String.valueOf(10 + 5 * random.nextInt(9)));
+                }
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the feed as the upstream sends it, UTF-8 JSON; absent fields are left out, not null
+     */
+    public static byte[] json(List<Restaurant> restaurants) {
+        StringBuilder json = new StringBuilder(restaurants.size() * 1024);
+        json.append("{\"restaurants\":[");
+        for (int r = 0; r < restaurants.size(); r++) {
+            Restaurant restaurant = restaurants.get(r);
+            if (r > 0) json.append(',');
+            json.append('{');
+            field(json, "objectId", restaurant.getObjectId(), true);
+            field(json, "name", restaurant.getName(), false);
+            field(json, "address1", restaurant.getAddress1(), false);
+            field(json, "suburb", restaurant.getSuburb(), false);
+            // Fields the reader does not map, the real feed has them too.
+            json.append(",\"cuisines\":[\"Asian\",\"Takeaway\"],\"imageLink\":\"https://example.com/")
+                    .append(restaurant.getObjectId()).append(".jpg\"");
+            field(json, "open", restaurant.getOpen(), false);
+            field(json, "close", restaurant.getClose(), false);
+            json.append(",\"deals\":[");
+            List<Deal> deals = restaurant.getDeals();
+            for (int d = 0; d < deals.size(); d++) {
+                Deal deal = deals.get(d);
+                if (d > 0) json.append(',');
+                json.append('{');
+                field(json, "objectId", deal.getObjectId(), true);
+                field(json, "discount", deal.getDiscount(), false);
+                field(json, "dineIn", deal.getDineIn(), false);
+                field(json, "lightning", deal.getLightning(), false);
+                field(json, "open", deal.getOpen(), false);
+                field(json, "close", deal.getClose(), false);
+                field(json, "start", deal.getStart(), false);
+                field(json, "end", deal.getEnd(), false);
+                field(json, "qtyLeft", deal.getQtyLeft(), false);
+                json.append('}');
+            }
+            json.append("]}");
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Query times in the formats clients send, spread over the day.
+     */
+    public static String[] queryTimes(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        String[] times = new String[count];
+        for (int i = 0; i < count; i++) {
+            times[i] = format(random, random.nextInt(24 * 60));
+        }
+        return times;
+    }
+
+    private static Restaurant restaurant(SplittableRandom random, int index) {
+        Restaurant restaurant = new Restaurant();
+        restaurant.setObjectId(uuid(random));
+        restaurant.setName(NAMES[random.nextInt(NAMES.length)] + " " + index);
+        restaurant.setAddress1((1 + random.nextInt(400)) + " " + STREETS[random.nextInt(STREETS.length)]);
+        restaurant.setSuburb(SUBURBS[random.nextInt(SUBURBS.length)]);
+        // Opens between 6:00 and 12:00, closes between 20:00 and 23:30, on the half hour.
+        int open = 6 * 60 + 30 * random.nextInt(13);
+        int close = 20 * 60 + 30 * random.nextInt(8);
+        restaurant.setOpen(format(random, open));
+        restaurant.setClose(format(random, close));
+        return restaurant;
+    }
+
+    private static Deal deal(SplittableRandom random, int open, int close) {
+        Deal deal = new Deal();
+        deal.setObjectId(uuid(random));
+        deal.setDiscount(String.valueOf(10 + 5 * random.nextInt(9)));
+        deal.setDineIn(String.valueOf(random.nextBoolean()));
+        deal.setLightning(String.valueOf(random.nextInt(5) == 0));
+        deal.setQtyLeft(String.valueOf(random.nextInt(8) == 0 ? 0 : 1 + random.nextInt(10)));
+
+        // A window of at least 30 minutes within the opening hours, on the quarter hour.
+        int slots = (close - open) / 15;
+        int start = open + 15 * random.nextInt(slots - 1);
+        int end = Math.min(close, start + 15 * (2 + random.nextInt(slots)));
+        switch (random.nextInt(6)) {
+            case 0, 1 -> {
+                deal.setOpen(format(random, start));
+                deal.setClose(format(random, end));
+            }
+            case 2, 3 -> {
+                deal.setStart(format(random, start));
+                deal.setEnd(format(random, end));
+            }
+            case 4 -> {
+                // Both, the window is the intersection.
+                deal.setOpen(format(random, open));
+                deal.setClose(format(random, end));
+                deal.setStart(format(random, start));
+                deal.setEnd(format(random, close));
+            }
+            default -> {
+                // Neither, the deal runs while the restaurant is open.
+            }
+        }
+        return deal;
+    }
+
+    /**
+     * @return the minute in one of the formats of the feed
+     */
+    private static String format(SplittableRandom random, int minuteOfDay) {
+        int hour = minuteOfDay / 60;
+        int minute = minuteOfDay % 60;
+        String mm = (minute < 10 ? "0" : "") + minute;
+        int hour12 = hour % 12 == 0 ? 12 : hour % 12;
+        String meridiem = hour < 12 ? "am" : "pm";
+        return switch (random.nextInt(5)) {
+            case 0, 1 -> hour12 + ":" + mm + meridiem;
+            case 2 -> hour12 + ":" + mm + " " + meridiem.toUpperCase();
+            case 3 -> (hour < 10 ? "0" : "") + hour + ":" + mm;
+            default -> hour + ":" + mm;
+        };
+    }
+
+    private static String uuid(SplittableRandom random) {
+        String hex = Long.toHexString(random.nextLong() | Long.MIN_VALUE).toUpperCase()
+                + Long.toHexString(random.nextLong() | Long.MIN_VALUE).toUpperCase();
+        return hex.substring(0, 8) + "-" + hex.substring(8, 12) + "-" + hex.substring(12, 16)
+                + "-" + hex.substring(16, 20) + "-" + hex.substring(20);
+    }
+
+    private static void field(StringBuilder json, String name, String value, boolean first) {
+        if (value == null) {
+            return;
+        }
+        if (!first) json.append(',');
+        // The generated values never need escaping.
+        json.append('"').append(name).append("\":\"").append(value).append('"');
+    }
+}
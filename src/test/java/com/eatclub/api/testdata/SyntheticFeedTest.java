@@ -0,0 +1,86 @@
+package com.eatclub.api.testdata;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.eatclub.api.model.domain.Deal;
+import com.eatclub.api.model.domain.Restaurant;
+import com.eatclub.api.util.DealUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The benchmarks and the load test rely on the feed being the same on every run, and every deal being valid.
+ */
+class SyntheticFeedTest {
+
+    @Test
+    @DisplayName("Same deal count and seed give the same feed")
+    void restaurants_whenSameSeed_shouldBeDeterministic() {
+        byte[] first = SyntheticFeed.json(SyntheticFeed.restaurants(1000, SyntheticFeed.DEFAULT_SEED));
+        byte[] second = SyntheticFeed.json(SyntheticFeed.restaurants(1000, SyntheticFeed.DEFAULT_SEED));
+        byte[] other = SyntheticFeed.json(SyntheticFeed.restaurants(1000, SyntheticFeed.DEFAULT_SEED + 1));
+
+        assertArrayEquals(first, second);
+        assertFalse(Arrays.equals(first, other));
+    }
+
+    @Test
+    @DisplayName("Every deal has a valid window, some are sold out or have no times")
+    void restaurants_shouldHaveExactDealCountAndValidWindows() {
+        List<Restaurant> restaurants = SyntheticFeed.restaurants(5000, SyntheticFeed.DEFAULT_SEED);
+
+        int deals = 0;
+        int inactive = 0;
+        int withoutTimes = 0;
+        for (Restaurant restaurant : restaurants) {
+            for (Deal deal : restaurant.getDeals()) {
+                deals++;
+                int window = DealUtils.getActiveMinutesOfDeal(restaurant, deal);
+                assertNotEquals(DealUtils.INVALID_WINDOW, window, deal.getObjectId());
+                if (window == DealUtils.NO_WINDOW) inactive++;
+                if (deal.getOpen() == null && deal.getStart() == null) withoutTimes++;
+            }
+        }
+        assertEquals(5000, deals);
+        assertTrue(inactive > 0);
+        assertTrue(withoutTimes > 0);
+    }
+
+    @Test
+    @DisplayName("The JSON has every restaurant and deal, and leaves absent fields out")
+    void json_shouldHoldEveryDeal() {
+        List<Restaurant> restaurants = SyntheticFeed.restaurants(1000, SyntheticFeed.DEFAULT_SEED);
+
+        JSONArray parsed = JSON.parseObject(SyntheticFeed.json(restaurants)).getJSONArray("restaurants");
+
+        assertEquals(restaurants.size(), parsed.size());
+        int deals = 0;
+        for (int r = 0; r < parsed.size(); r++) {
+            JSONArray array = parsed.getJSONObject(r).getJSONArray("deals");
+            for (int d = 0; d < array.size(); d++) {
+                Deal deal = restaurants.get(r).getDeals().get(d);
+                assertEquals(deal.getObjectId(), array.getJSONObject(d).getString("objectId"));
+                assertEquals(deal.getStart() != null, array.getJSONObject(d).containsKey("start"));
+                deals++;
+            }
+        }
+        assertEquals(1000, deals);
+    }
+
+    @Test
+    @DisplayName("Mutating changes about the requested share of the deals")
+    void mutate_shouldChangeRequestedShare() {
+        List<Restaurant> restaurants = SyntheticFeed.restaurants(10000, SyntheticFeed.DEFAULT_SEED);
+        byte[] before = SyntheticFeed.json(restaurants);
+
+        int changed = SyntheticFeed.mutate(restaurants, 0.05, 7L);
+
+        assertTrue(changed > 300 && changed < 700, "changed " + changed);
+        assertFalse(Arrays.equals(before, SyntheticFeed.json(restaurants)));
+    }
+}
@@ -0,0 +1,77 @@
+package com.eatclub.api.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ContentEncodingUtils
+ * Accept-Encoding negotiation and the gzip round trip
+ */
+class ContentEncodingUtilsTest {
+
+    @ParameterizedTest(name = "Accept-Encoding: {0}")
+    @DisplayName("Should accept gzip when listed with a positive weight, or covered by '*'")
+    @ValueSource(strings = {
+            "gzip",
+            "GZIP",
+            "x-gzip",
+            "deflate, gzip, br",
+            "gzip;q=0.5",
+            "gzip ; Q=1",
+            "gzip;q=0.001",
+            "*",
+            "br;q=1, *;q=0.1",
+            "identity, *"
+    })
+    void acceptsGzip_whenAcceptable_shouldReturnTrue(String acceptEncoding) {
+        assertTrue(ContentEncodingUtils.acceptsGzip(acceptEncoding));
+    }
+
+    @ParameterizedTest(name = "Accept-Encoding: {0}")
+    @DisplayName("Should refuse gzip when not listed, weighted 0, or excluded from '*'")
+    @NullAndEmptySource
+    @ValueSource(strings = {
+            "   ",
+            "identity",
+            "deflate, br",
+            "gzip;q=0",
+            "gzip;q=0.0",
+            "gzip;q=abc",
+            "*;q=0",
+            "*, gzip;q=0",
+            "gzip;q=0, *",
+            "gzipped"
+    })
+    void acceptsGzip_whenNotAcceptable_shouldReturnFalse(String acceptEncoding) {
+        assertFalse(ContentEncodingUtils.acceptsGzip(acceptEncoding));
+    }
+
+    @Test
+    @DisplayName("Should compress a body which decompresses back to the same bytes")
+    void gzip_shouldRoundTrip() throws IOException {
+        byte[] body = "{\"deals\":[{\"discount\":\"30\"},{\"discount\":\"30\"}]}".repeat(100)
+                .getBytes(StandardCharsets.UTF_8);
+
+        byte[] compressed = ContentEncodingUtils.gzip(body);
+
+        assertTrue(compressed.length < body.length / 10);
+        assertArrayEquals(body, gunzip(compressed));
+        assertArrayEquals(new byte[0], gunzip(ContentEncodingUtils.gzip(new byte[0])));
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+}
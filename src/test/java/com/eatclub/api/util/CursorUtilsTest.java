@@ -0,0 +1,59 @@
+package com.eatclub.api.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CursorUtils
+ * Page cursors round trip through URL-safe tokens, anything else is not a cursor
+ */
+class CursorUtilsTest {
+
+    @Test
+    @DisplayName("Should decode an encoded cursor back to the same version, query and position")
+    void encode_shouldRoundTrip() {
+        List<CursorUtils.Cursor> cursors = List.of(
+                new CursorUtils.Cursor(1L, 0x9e3779b97f4a7c15L, 0),
+                new CursorUtils.Cursor(42L, -1L, 50),
+                new CursorUtils.Cursor(Long.MAX_VALUE, Long.MIN_VALUE, Integer.MAX_VALUE));
+
+        for (CursorUtils.Cursor cursor : cursors) {
+            String token = CursorUtils.encode(cursor);
+            // Safe in a query string as it is: no '+', '/' or '=' padding.
+            assertTrue(token.matches("[A-Za-z0-9_-]+"), token);
+            assertEquals(cursor, CursorUtils.decode(token));
+        }
+    }
+
+    @Test
+    @DisplayName("Should not decode a cursor pointing before the first deal")
+    void decode_whenNegativePosition_shouldReturnNull() {
+        String token = CursorUtils.encode(new CursorUtils.Cursor(1L, 2L, -1));
+
+        assertNull(CursorUtils.decode(token));
+    }
+
+    @Test
+    @DisplayName("Should not decode a cut or extended cursor")
+    void decode_whenWrongLength_shouldReturnNull() {
+        String token = CursorUtils.encode(new CursorUtils.Cursor(1L, 2L, 3));
+
+        assertNull(CursorUtils.decode(token.substring(0, token.length() - 4)));
+        assertNull(CursorUtils.decode(token + "AAAA"));
+    }
+
+    @ParameterizedTest(name = "cursor: {0}")
+    @DisplayName("Should not decode a token which is not URL-safe base64")
+    @EmptySource
+    @ValueSource(strings = {"not a cursor", "AAAA+AAA/AAA", "%%%", "A"})
+    void decode_whenNotBase64_shouldReturnNull(String token) {
+        assertNull(CursorUtils.decode(token));
+    }
+}
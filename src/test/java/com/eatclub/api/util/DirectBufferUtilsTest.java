@@ -0,0 +1,38 @@
+package com.eatclub.api.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for DirectBufferUtils
+ * Only a direct buffer its owner allocated is freed, views are rejected rather than ignored
+ */
+class DirectBufferUtilsTest {
+
+    @Test
+    @DisplayName("Should free a direct buffer")
+    void free_whenDirect_shouldFree() {
+        assertTrue(DirectBufferUtils.free(ByteBuffer.allocateDirect(1024)));
+    }
+
+    @Test
+    @DisplayName("Should ignore a null or heap buffer")
+    void free_whenNotDirect_shouldIgnore() {
+        assertFalse(DirectBufferUtils.free(null));
+        assertFalse(DirectBufferUtils.free(ByteBuffer.allocate(1024)));
+    }
+
+    @Test
+    @DisplayName("Should reject a view of another buffer")
+    void free_whenView_shouldThrow() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+
+        assertThrows(IllegalArgumentException.class, () -> DirectBufferUtils.free(buffer.slice(0, 512)));
+        assertThrows(IllegalArgumentException.class, () -> DirectBufferUtils.free(buffer.duplicate()));
+        assertTrue(DirectBufferUtils.free(buffer));
+    }
+}
@@ -0,0 +1,77 @@
+package com.eatclub.api.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HttpCacheUtils
+ * The ETag formats, If-None-Match matching and the max-age until the next refresh
+ */
+class HttpCacheUtilsTest {
+
+    private static final String ETAG = "\"3f2a-660\"";
+
+    @Test
+    @DisplayName("Should build quoted ETags from the content hash and the query")
+    void etag_shouldQuoteHashAndQuery() {
+        assertEquals("\"3f2a\"", HttpCacheUtils.etag(0x3f2aL));
+        assertEquals("\"3f2a-660\"", HttpCacheUtils.etag(0x3f2aL, 660));
+        assertEquals("\"3f2a-1020-1170\"", HttpCacheUtils.etag(0x3f2aL, 1020, 1170));
+        assertEquals("\"3f2a-1020-1170-9e37\"", HttpCacheUtils.etag(0x3f2aL, 1020, 1170, 0x9e37L));
+        assertEquals("\"3f2a-q9e37\"", HttpCacheUtils.queryEtag(0x3f2aL, 0x9e37L));
+        // A negative hash is printed unsigned, so it never adds a '-' of its own.
+        assertEquals("\"ffffffffffffffff\"", HttpCacheUtils.etag(-1L));
+        assertEquals("\"3f2a-660-ndjson\"", HttpCacheUtils.variantEtag(ETAG, "ndjson"));
+        assertEquals("\"3f2a-660-gzip\"", HttpCacheUtils.variantEtag(ETAG, ContentEncodingUtils.GZIP));
+    }
+
+    @ParameterizedTest(name = "If-None-Match: {0}")
+    @DisplayName("Should match the ETag exactly, in a list, weakly, or by '*'")
+    @ValueSource(strings = {
+            "\"3f2a-660\"",
+            "  \"3f2a-660\"  ",
+            "\"other\", \"3f2a-660\"",
+            "\"other\",\"3f2a-660\",\"more\"",
+            "W/\"3f2a-660\"",
+            "\"other\", W/\"3f2a-660\"",
+            "*"
+    })
+    void isNotModified_whenMatching_shouldReturnTrue(String ifNoneMatch) {
+        assertTrue(HttpCacheUtils.isNotModified(ifNoneMatch, ETAG));
+    }
+
+    @ParameterizedTest(name = "If-None-Match: {0}")
+    @DisplayName("Should not match another, unquoted or partial ETag, or no header")
+    @NullAndEmptySource
+    @ValueSource(strings = {
+            "   ",
+            "\"3f2a\"",
+            "\"3f2a-660-gzip\"",
+            "3f2a-660",
+            "\"3F2A-660\"",
+            "w/\"3f2a-660\"",
+            "\"other\", \"3f2a-661\""
+    })
+    void isNotModified_whenNotMatching_shouldReturnFalse(String ifNoneMatch) {
+        assertFalse(HttpCacheUtils.isNotModified(ifNoneMatch, ETAG));
+    }
+
+    @Test
+    @DisplayName("Should count the whole seconds until the next refresh, never negative")
+    void secondsUntil_shouldNeverBeNegative() {
+        Instant now = Instant.parse("2024-01-01T12:00:00Z");
+
+        assertEquals(90, HttpCacheUtils.secondsUntil(now.plusMillis(90_500), now));
+        assertEquals(0, HttpCacheUtils.secondsUntil(now.plusMillis(500), now));
+        assertEquals(0, HttpCacheUtils.secondsUntil(now, now));
+        assertEquals(0, HttpCacheUtils.secondsUntil(now.minusSeconds(5), now));
+        assertEquals(0, HttpCacheUtils.secondsUntil(null, now));
+    }
+}
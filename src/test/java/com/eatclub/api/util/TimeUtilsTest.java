@@ -0,0 +1,146 @@
+package com.eatclub.api.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.NullAndEmptySource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TimeUtils
+ * Every accepted and rejected time format of parseMinuteOfDay, and the wrappers built on it,
+ * checked against the regex and LocalTime parser it replaced
+ */
+class TimeUtilsTest {
+
+    /**
+     * The regex and formatters of the parser before parseMinuteOfDay, kept as the reference.
+     */
+    private static final Pattern REG_FORMAT_24H = Pattern.compile("^([01]?\\d|2[0-3]):[0-5]\\d$");
+    private static final Pattern REG_FORMAT_12H = Pattern.compile("^(0?[1-9]|1[0-2]):[0-5]\\d(?i)(am|pm)$");
+    private static final DateTimeFormatter DT_FORMAT_24H = DateTimeFormatter.ofPattern("H:mm");
+    private static final DateTimeFormatter DT_FORMAT_12H = new DateTimeFormatterBuilder()
+            .parseCaseInsensitive()
+            .appendPattern("h:mma")
+            .toFormatter(Locale.ENGLISH);
+
+    private static int parseWithRegex(String time) {
+        if (time == null || time.isBlank()) {
+            return TimeUtils.INVALID_TIME;
+        }
+        time = time.trim().toLowerCase().replace(" ", "");
+        LocalTime parsed;
+        if (REG_FORMAT_24H.matcher(time).matches()) {
+            parsed = LocalTime.parse(time, DT_FORMAT_24H);
+        } else if (REG_FORMAT_12H.matcher(time).matches()) {
+            parsed = LocalTime.parse(time, DT_FORMAT_12H);
+        } else {
+            return TimeUtils.INVALID_TIME;
+        }
+        return TimeUtils.toMinuteOfDay(parsed);
+    }
+
+    @ParameterizedTest(name = "\"{0}\" is minute {1}")
+    @DisplayName("Should parse 24-hour and 12-hour times to the minute of the day")
+    @CsvSource({
+            // 24-hour format, 1 or 2 digit hour
+            "'0:00', 0",
+            "'00:00', 0",
+            "'9:05', 545",
+            "'09:05', 545",
+            "'21:30', 1290",
+            "'23:59', 1439",
+            // 12-hour format, am/pm in any case
+            "'9:05am', 545",
+            "'9:05AM', 545",
+            "'9:05Am', 545",
+            "'9:05aM', 545",
+            "'1:00pm', 780",
+            "'11:59pm', 1439",
+            "'11:59 PM', 1439",
+            // 12am is midnight, 12pm is noon
+            "'12:00am', 0",
+            "'12:30am', 30",
+            "'12:00pm', 720",
+            "'12:59pm', 779",
+            // Whitespace at both ends, and spaces anywhere
+            "'  3:00 pm  ', 900",
+            "' 9 : 05 ', 545",
+            "'1 0:3 0 a m', 630",
+            "'\t17:00\n', 1020"
+    })
+    void parseMinuteOfDay_whenValid_shouldReturnMinute(String time, int expected) {
+        assertEquals(expected, TimeUtils.parseMinuteOfDay(time));
+    }
+
+    @ParameterizedTest(name = "\"{0}\" is invalid")
+    @DisplayName("Should reject out of range, malformed, empty and null times")
+    @NullAndEmptySource
+    @ValueSource(strings = {
+            "   ",
+            // Out of range
+            "24:00", "23:60", "25:00", "100:00", "13:00pm", "0:30am", "00:00am",
+            // Malformed
+            "9", "9:", ":30", "9:5", "9:005", "9-05", "-1:00", "9:05xm", "9:05a", "9:05amx", "9:05 a.m.", "am"
+    })
+    void parseMinuteOfDay_whenInvalid_shouldReturnInvalidTime(String time) {
+        assertEquals(TimeUtils.INVALID_TIME, TimeUtils.parseMinuteOfDay(time));
+    }
+
+    @Test
+    @DisplayName("Should wrap parseMinuteOfDay into LocalTime, and format a minute back to 12-hour")
+    void parseTime_shouldRoundTrip() {
+        assertEquals(LocalTime.of(0, 0), TimeUtils.parseTime("12:00am"));
+        assertEquals(LocalTime.of(17, 30), TimeUtils.parseTime("5:30 PM"));
+        assertEquals("12:00am", TimeUtils.parseTime(0));
+        assertEquals("12:00pm", TimeUtils.parseTime(720));
+        assertEquals("11:59pm", TimeUtils.parseTime(1439));
+        assertThrows(IllegalArgumentException.class, () -> TimeUtils.parseTime("24:00"));
+        assertThrows(IllegalArgumentException.class, () -> TimeUtils.parseTime(" "));
+        assertThrows(IllegalArgumentException.class, () -> TimeUtils.parseTime(1440));
+        assertThrows(IllegalArgumentException.class, () -> TimeUtils.parseTime(-1));
+    }
+
+    @Test
+    @DisplayName("Should parse every well-formed time the same as the regex parser")
+    void parseMinuteOfDay_whenWellFormed_shouldMatchRegexParser() {
+        for (int hour = 0; hour < 100; hour++) {
+            for (int minute = 0; minute < 100; minute++) {
+                for (String format : new String[]{"%d:%02d", "%02d:%02d", "%d:%d"}) {
+                    String time = String.format(format, hour, minute);
+                    for (String suffix : new String[]{"", "am", "pm", "AM", " Pm", "aM "}) {
+                        assertEquals(parseWithRegex(time + suffix), TimeUtils.parseMinuteOfDay(time + suffix),
+                                time + suffix);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Should parse random inputs the same as the regex parser")
+    void parseMinuteOfDay_whenFuzzed_shouldMatchRegexParser() {
+        char[] alphabet = "0123456789012345:: apmAPMx\t-".toCharArray();
+        Random random = new Random(20240101L);
+        StringBuilder time = new StringBuilder();
+        for (int n = 0; n < 200_000; n++) {
+            time.setLength(0);
+            int length = random.nextInt(10);
+            for (int i = 0; i < length; i++) {
+                time.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            String input = time.toString();
+            assertEquals(parseWithRegex(input), TimeUtils.parseMinuteOfDay(input), '"' + input + '"');
+        }
+    }
+}